@@ -76,6 +76,12 @@ extern "C"
     GetMapLayout().CancelDownloading(ToGroup(group), position);
   }
 
+  JNIEXPORT void JNICALL
+  Java_com_mapswithme_country_ActiveCountryTree_pauseDownloadingForIndex(JNIEnv * env, jclass clazz, jobject index)
+  {
+    GetMapLayout().PauseDownloading(storage::ToNative(index));
+  }
+
   JNIEXPORT jboolean JNICALL
   Java_com_mapswithme_country_ActiveCountryTree_isDownloadingActive(JNIEnv * env, jclass clazz)
   {
@@ -19,6 +19,7 @@
 #include "std/string.hpp"
 #include "std/bind.hpp"
 #include "std/shared_ptr.hpp"
+#include "std/sstream.hpp"
 
 
 using namespace downloader;
@@ -40,6 +41,8 @@ struct FileToDownload
   string m_fileName;
   string m_pathOnSdcard;
   uint64_t m_fileSize;
+  // -1 if unknown.
+  int64_t m_crc32;
 };
 
 //static string g_apkPath;
@@ -93,17 +96,19 @@ extern "C"
     ReaderStreamBuf buffer(pl.GetReader("external_resources.txt"));
     istream in(&buffer);
 
-    string name;
-    int size;
-    while (true)
+    // Each line is: name, size and optional CRC32.
+    string line;
+    while (getline(in, line))
     {
-      in >> name;
-      if (!in.good())
-        break;
+      istringstream fields(line);
+      string name;
+      int size;
+      if (!(fields >> name >> size))
+        continue;
 
-      in >> size;
-      if (!in.good())
-        break;
+      int64_t crc32;
+      if (!(fields >> crc32))
+        crc32 = -1;
 
       if (NeedToDownload(pl, name, size))
       {
@@ -113,6 +118,7 @@ extern "C"
         f.m_pathOnSdcard = path + name;
         f.m_fileName = name;
         f.m_fileSize = size;
+        f.m_crc32 = crc32;
 
         g_filesToDownload.push_back(f);
         g_totalBytesToDownload += size;
@@ -212,7 +218,7 @@ extern "C"
     g_currentRequest.reset(HttpRequest::GetFile(
         curFile.m_urls, curFile.m_pathOnSdcard, curFile.m_fileSize,
         onFinish, onProgress,
-        512 * 1024, false));
+        512 * 1024, false, curFile.m_crc32));
   }
 
   JNIEXPORT void JNICALL
@@ -110,11 +110,6 @@ namespace android
     }
   }
 
-  void Framework::UpdateCompassSensor(int ind, float * arr)
-  {
-    m_sensors[ind].Next(arr);
-  }
-
   void Framework::DeleteRenderPolicy()
   {
     m_work.SaveState();
@@ -1438,20 +1433,6 @@ extern "C"
     return g_framework->DeactivatePopup();
   }
 
-  JNIEXPORT jdoubleArray JNICALL
-  Java_com_mapswithme_maps_Framework_predictLocation(JNIEnv * env, jobject thiz, jdouble lat, jdouble lon, jdouble accuracy,
-                                                     jdouble bearing, jdouble speed, jdouble elapsedSeconds)
-  {
-    double latitude = lat;
-    double longitude = lon;
-    ::Framework::PredictLocation(lat, lon, accuracy, bearing, speed, elapsedSeconds);
-    double latlon[] = { lat, lon };
-    jdoubleArray jLatLon = env->NewDoubleArray(2);
-    env->SetDoubleArrayRegion(jLatLon, 0, 2, latlon);
-
-    return jLatLon;
-  }
-
   JNIEXPORT void JNICALL
   Java_com_mapswithme_maps_Framework_setMapStyle(JNIEnv * env, jclass thiz, jint mapStyle)
   {
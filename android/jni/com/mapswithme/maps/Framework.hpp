@@ -8,8 +8,6 @@
 
 #include "platform/country_defines.hpp"
 
-#include "geometry/avg_vector.hpp"
-
 #include "base/deferred_task.hpp"
 #include "base/timer.hpp"
 
@@ -60,7 +58,6 @@ namespace android
     double m_lastY1;
     //@}
 
-    math::LowPassVector<float, 3> m_sensors[2];
     double m_lastCompass;
 
     unique_ptr<DeferredTask> m_deferredTask;
@@ -95,7 +92,6 @@ namespace android
     void OnLocationError(int/* == location::TLocationStatus*/ newStatus);
     void OnLocationUpdated(location::GpsInfo const & info);
     void OnCompassUpdated(location::CompassInfo const & info, bool force);
-    void UpdateCompassSensor(int ind, float * arr);
 
     void Invalidate();
 
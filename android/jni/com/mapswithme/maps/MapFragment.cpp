@@ -74,25 +74,6 @@ extern "C"
 
 #pragma clang pop_options
 
-  JNIEXPORT jfloatArray JNICALL
-  Java_com_mapswithme_maps_location_LocationHelper_nativeUpdateCompassSensor(
-      JNIEnv * env, jobject thiz, jint ind, jfloatArray arr)
-  {
-    int const count = 3;
-
-    // get Java array
-    jfloat buffer[3];
-    env->GetFloatArrayRegion(arr, 0, count, buffer);
-
-    // get the result
-    g_framework->UpdateCompassSensor(ind, buffer);
-
-    // pass result back to Java
-    jfloatArray ret = (jfloatArray)env->NewFloatArray(count);
-    env->SetFloatArrayRegion(ret, 0, count, buffer);
-    return ret;
-  }
-
   void CallOnDownloadCountryClicked(shared_ptr<jobject> const & obj,
                                     storage::TIndex const & idx,
                                     int options,
@@ -2,8 +2,13 @@
 
 #include "base/thread.hpp"
 #include "search/result.hpp"
+#include "std/algorithm.hpp"
 #include "std/atomic.hpp"
+#include "std/cstring.hpp"
 #include "std/mutex.hpp"
+#include "std/vector.hpp"
+
+#include "SearchResultsPacker.hpp"
 
 #include "../core/jni_helper.hpp"
 #include "../platform/Language.hpp"
@@ -19,94 +24,96 @@ namespace
 // Currently we cannot serialize FeatureID of search result properly.
 // Cache is needed to show results on the map after click in the list of results.
 Results g_results;
+// Timestamp of the query g_results belong to.
+long long g_resultsTimestamp;
 mutex g_resultsMutex;
 // Timestamp of last search query. Results with older stamps are ignored.
 atomic<long long> g_queryTimestamp;
-// Implements 'NativeSearchListener' java interface.
+// Java SearchEngine object which receives results.
 jobject g_javaListener;
 jmethodID g_updateResultsId;
 jmethodID g_endResultsId;
-// Cached classes and methods to return results.
-jclass g_resultClass;
-jmethodID g_resultConstructor;
-jmethodID g_suggestConstructor;
-jclass g_descriptionClass;
-jmethodID g_descriptionConstructor;
-
-jobject ToJavaResult(Result result, bool hasPosition, double lat, double lon)
+
+void PackResult(Result result, bool hasPosition, double lat, double lon, android::SearchResultsPacker & packer)
 {
-  JNIEnv * env = jni::GetEnv();
+  using android::SearchResultsPacker;
 
-  jintArray ranges = env->NewIntArray(result.GetHighlightRangesCount() * 2);
-  jint * rawArr = env->GetIntArrayElements(ranges, nullptr);
-  for (int i = 0; i < result.GetHighlightRangesCount(); i++)
+  if (result.IsSuggest())
   {
-    auto const & range = result.GetHighlightRange(i);
-    rawArr[2 * i] = range.first;
-    rawArr[2 * i + 1] = range.second;
+    packer.Add(SearchResultsPacker::TYPE_SUGGEST);
+    packer.SetString(SearchResultsPacker::SUGGESTION, result.GetSuggestionString());
   }
-  env->ReleaseIntArrayElements(ranges, rawArr, 0);
-
-  if (result.IsSuggest())
+  else
   {
-    jstring name = jni::ToJavaString(env, result.GetString());
-    jstring suggest = jni::ToJavaString(env, result.GetSuggestionString());
-    jobject ret = env->NewObject(g_resultClass, g_suggestConstructor, name, suggest, ranges);
-    ASSERT(ret, ());
-    env->DeleteLocalRef(name);
-    env->DeleteLocalRef(suggest);
-    env->DeleteLocalRef(ranges);
-    return ret;
+    string distance;
+    if (hasPosition)
+    {
+      double dummy;
+      (void) g_framework->NativeFramework()->GetDistanceAndAzimut(result.GetFeatureCenter(), lat, lon, 0, distance, dummy);
+    }
+
+    g_framework->NativeFramework()->LoadSearchResultMetadata(result);
+
+    packer.Add(SearchResultsPacker::TYPE_RESULT);
+    packer.SetString(SearchResultsPacker::FEATURE_TYPE, result.GetFeatureType());
+    packer.SetString(SearchResultsPacker::REGION, result.GetRegionString());
+    packer.SetString(SearchResultsPacker::DISTANCE, distance);
+    packer.SetString(SearchResultsPacker::CUISINE, result.GetCuisine());
+    packer.Set(SearchResultsPacker::STARS, result.GetStarsCount());
+    packer.Set(SearchResultsPacker::CLOSED, result.IsClosed() ? 1 : 0);
   }
 
-  string distance;
-  if (hasPosition)
+  packer.SetString(SearchResultsPacker::NAME, result.GetString());
+  for (size_t i = 0; i < result.GetHighlightRangesCount(); ++i)
   {
-    double dummy;
-    (void) g_framework->NativeFramework()->GetDistanceAndAzimut(result.GetFeatureCenter(), lat, lon, 0, distance, dummy);
+    auto const & range = result.GetHighlightRange(i);
+    packer.AddRange(range.first, range.second);
   }
+}
+
+bool IsSameResult(Result const & lhs, Result const & rhs)
+{
+  if (lhs.GetResultType() != rhs.GetResultType() || strcmp(lhs.GetString(), rhs.GetString()) != 0)
+    return false;
 
-  g_framework->NativeFramework()->LoadSearchResultMetadata(result);
-
-  jstring featureType = jni::ToJavaString(env, result.GetFeatureType());
-  jstring region = jni::ToJavaString(env, result.GetRegionString());
-  jstring dist = jni::ToJavaString(env, distance.c_str());
-  jstring cuisine = jni::ToJavaString(env, result.GetCuisine());
-  jobject desc = env->NewObject(g_descriptionClass, g_descriptionConstructor,
-                                featureType, region,
-                                dist, cuisine,
-                                result.GetStarsCount(),
-                                result.IsClosed());
-  ASSERT(desc, ());
-  env->DeleteLocalRef(featureType);
-  env->DeleteLocalRef(region);
-  env->DeleteLocalRef(dist);
-  env->DeleteLocalRef(cuisine);
-
-  jstring name = jni::ToJavaString(env, result.GetString());
-  jobject ret = env->NewObject(g_resultClass, g_resultConstructor, name, desc, ranges);
-  ASSERT(ret, ());
-  env->DeleteLocalRef(name);
-  env->DeleteLocalRef(desc);
-  env->DeleteLocalRef(ranges);
-
-  return ret;
+  if (lhs.IsSuggest())
+    return lhs.IsEqualSuggest(rhs);
+
+  if (lhs.GetResultType() == Result::RESULT_FEATURE)
+    return lhs.GetFeatureID() == rhs.GetFeatureID();
+
+  return lhs.GetFeatureCenter() == rhs.GetFeatureCenter();
 }
 
-jobjectArray BuildJavaResults(Results const & results, bool hasPosition, double lat, double lon)
+// Results of the same query come in growing batches. Only results after the unchanged head
+// of the previous batch are packed, their position is returned in |offset|.
+jbyteArray BuildJavaResults(Results const & results, long long timestamp, bool hasPosition,
+                            double lat, double lon, int & offset)
 {
   JNIEnv * env = jni::GetEnv();
   lock_guard<mutex> guard(g_resultsMutex);
-  g_results = results;
 
-  int const count = g_results.GetCount();
-  jobjectArray const jResults = env->NewObjectArray(count, g_resultClass, 0);
-  for (int i = 0; i < count; i++)
+  size_t unchanged = 0;
+  if (g_resultsTimestamp == timestamp)
   {
-    jobject jRes = ToJavaResult(g_results.GetResult(i), hasPosition, lat, lon);
-    env->SetObjectArrayElement(jResults, i, jRes);
-    env->DeleteLocalRef(jRes);
+    size_t const common = min(g_results.GetCount(), results.GetCount());
+    while (unchanged < common && IsSameResult(g_results.GetResult(unchanged), results.GetResult(unchanged)))
+      ++unchanged;
   }
+
+  g_results = results;
+  g_resultsTimestamp = timestamp;
+  offset = static_cast<int>(unchanged);
+
+  android::SearchResultsPacker packer;
+  for (size_t i = unchanged; i < g_results.GetCount(); ++i)
+    PackResult(g_results.GetResult(i), hasPosition, lat, lon, packer);
+
+  vector<uint8_t> data;
+  packer.Serialize(data);
+
+  jbyteArray const jResults = env->NewByteArray(data.size());
+  env->SetByteArrayRegion(jResults, 0, data.size(), reinterpret_cast<jbyte const *>(data.data()));
   return jResults;
 }
 
@@ -132,8 +139,11 @@ void OnResults(Results const & results, long long timestamp, bool interactive, b
     });
   }
 
-  jobjectArray const & jResults = BuildJavaResults(results, hasPosition, lat, lon);
-  env->CallVoidMethod(g_javaListener, g_updateResultsId, jResults, static_cast<jlong>(timestamp));
+  int offset;
+  jbyteArray const jResults = BuildJavaResults(results, timestamp, hasPosition, lat, lon, offset);
+  // Newer query could be started while results were built.
+  if (g_queryTimestamp <= timestamp)
+    env->CallVoidMethod(g_javaListener, g_updateResultsId, jResults, static_cast<jint>(offset), static_cast<jlong>(timestamp));
   env->DeleteLocalRef(jResults);
 }
 } // namespace
@@ -146,20 +156,10 @@ extern "C"
     if ( g_javaListener )
       env->DeleteGlobalRef(g_javaListener);
     g_javaListener = env->NewGlobalRef(thiz);
-    g_updateResultsId = jni::GetJavaMethodID(env, g_javaListener, "onResultsUpdate", "([Lcom/mapswithme/maps/search/SearchResult;J)V");
+    g_updateResultsId = jni::GetJavaMethodID(env, g_javaListener, "onResultsUpdate", "([BIJ)V");
     ASSERT(g_updateResultsId, ());
     g_endResultsId = jni::GetJavaMethodID(env, g_javaListener, "onResultsEnd", "(J)V");
     ASSERT(g_endResultsId, ());
-    g_resultClass = static_cast<jclass>(env->NewGlobalRef(env->FindClass("com/mapswithme/maps/search/SearchResult")));
-    ASSERT(g_resultClass, ());
-    g_resultConstructor = env->GetMethodID(g_resultClass, "<init>", "(Ljava/lang/String;Lcom/mapswithme/maps/search/SearchResult$Description;[I)V");
-    ASSERT(g_resultConstructor, ());
-    g_suggestConstructor = env->GetMethodID(g_resultClass, "<init>", "(Ljava/lang/String;Ljava/lang/String;[I)V");
-    ASSERT(g_suggestConstructor, ());
-    g_descriptionClass = static_cast<jclass>(env->NewGlobalRef(env->FindClass("com/mapswithme/maps/search/SearchResult$Description")));
-    ASSERT(g_descriptionClass, ());
-    g_descriptionConstructor = env->GetMethodID(g_descriptionClass, "<init>", "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;IZ)V");
-    ASSERT(g_descriptionConstructor, ());
   }
 
   JNIEXPORT jboolean JNICALL
@@ -193,6 +193,37 @@ extern "C"
     g_queryTimestamp = timestamp;
   }
 
+  JNIEXPORT void JNICALL
+  Java_com_mapswithme_maps_search_SearchEngine_nativePrefetch(
+      JNIEnv * env, jclass clazz, jobjectArray queries, jstring lang, jboolean hasPosition, jdouble lat, jdouble lon)
+  {
+    string const locale = ReplaceDeprecatedLanguageCode(jni::ToNativeString(env, lang));
+    jsize const count = env->GetArrayLength(queries);
+
+    // Same params as for nativeRunSearch, so prefetched results are found in the cache.
+    vector<search::SearchParams> params(count);
+    for (jsize i = 0; i < count; ++i)
+    {
+      jstring query = static_cast<jstring>(env->GetObjectArrayElement(queries, i));
+      params[i].m_query = jni::ToNativeString(env, query);
+      env->DeleteLocalRef(query);
+
+      params[i].SetInputLocale(locale);
+      if (hasPosition)
+        params[i].SetPosition(lat, lon);
+    }
+
+    g_framework->NativeFramework()->PrefetchSearch(params);
+  }
+
+  JNIEXPORT void JNICALL
+  Java_com_mapswithme_maps_search_SearchEngine_nativeCancelSearch(JNIEnv * env, jclass clazz, jlong timestamp)
+  {
+    // Results of all queries before the timestamp are ignored from now.
+    g_queryTimestamp = timestamp;
+    g_framework->NativeFramework()->CancelSearch();
+  }
+
   JNIEXPORT void JNICALL
   Java_com_mapswithme_maps_search_SearchEngine_nativeShowResult(JNIEnv * env, jobject thiz, jint index)
   {
@@ -0,0 +1,113 @@
+#pragma once
+
+#include "std/cstdint.hpp"
+#include "std/string.hpp"
+#include "std/unordered_map.hpp"
+#include "std/vector.hpp"
+
+namespace android
+{
+/// Packs search results into one byte array, so a batch crosses JNI as a single object.
+/// Must be kept in sync with PackedSearchResults.java.
+/// Layout, all integers are 32-bit little-endian:
+///   results count;
+///   records of FIELDS_COUNT integers for each result;
+///   number of integers in highlight ranges, ranges as (start, length) pairs;
+///   UTF-8 strings referenced by records as (offset, length) from the beginning of this section.
+/// Equal strings (e.g. feature types and regions) are stored once.
+class SearchResultsPacker
+{
+public:
+  enum Field
+  {
+    TYPE,
+    NAME,
+    NAME_LENGTH,
+    SUGGESTION,
+    SUGGESTION_LENGTH,
+    FEATURE_TYPE,
+    FEATURE_TYPE_LENGTH,
+    REGION,
+    REGION_LENGTH,
+    DISTANCE,
+    DISTANCE_LENGTH,
+    CUISINE,
+    CUISINE_LENGTH,
+    STARS,
+    CLOSED,
+    RANGES,
+    RANGES_COUNT,
+    FIELDS_COUNT
+  };
+
+  enum Type
+  {
+    TYPE_SUGGEST = 0,
+    TYPE_RESULT = 1
+  };
+
+  /// Starts a new record, all its strings are empty and integers are zero.
+  void Add(Type type)
+  {
+    m_records.resize(m_records.size() + FIELDS_COUNT, 0);
+    Set(TYPE, type);
+    Set(RANGES, static_cast<int32_t>(m_ranges.size()));
+  }
+
+  void Set(Field field, int32_t value) { m_records[m_records.size() - FIELDS_COUNT + field] = value; }
+
+  /// @param[in] field one of string fields (NAME, SUGGESTION, ...).
+  void SetString(Field field, string const & s)
+  {
+    if (s.empty())
+      return;
+
+    auto const res = m_offsets.emplace(s, static_cast<int32_t>(m_strings.size()));
+    if (res.second)
+      m_strings.insert(m_strings.end(), s.begin(), s.end());
+
+    Set(field, res.first->second);
+    Set(static_cast<Field>(field + 1), static_cast<int32_t>(s.size()));
+  }
+
+  /// Adds highlighted range of the name to the last record.
+  void AddRange(int32_t start, int32_t length)
+  {
+    m_ranges.push_back(start);
+    m_ranges.push_back(length);
+    int32_t & count = m_records[m_records.size() - FIELDS_COUNT + RANGES_COUNT];
+    count += 2;
+  }
+
+  size_t GetCount() const { return m_records.size() / FIELDS_COUNT; }
+
+  void Serialize(vector<uint8_t> & out) const
+  {
+    out.clear();
+    out.reserve(sizeof(int32_t) * (2 + m_records.size() + m_ranges.size()) + m_strings.size());
+
+    Write(static_cast<int32_t>(GetCount()), out);
+    for (int32_t v : m_records)
+      Write(v, out);
+
+    Write(static_cast<int32_t>(m_ranges.size()), out);
+    for (int32_t v : m_ranges)
+      Write(v, out);
+
+    out.insert(out.end(), m_strings.begin(), m_strings.end());
+  }
+
+private:
+  static void Write(int32_t v, vector<uint8_t> & out)
+  {
+    uint32_t const u = static_cast<uint32_t>(v);
+    for (int i = 0; i < 4; ++i)
+      out.push_back(static_cast<uint8_t>(u >> (8 * i)));
+  }
+
+  vector<int32_t> m_records;
+  vector<int32_t> m_ranges;
+  vector<char> m_strings;
+  unordered_map<string, int32_t> m_offsets;
+};
+}  // namespace android
@@ -1,3 +1,4 @@
+#include "platform/http_request.hpp"
 #include "platform/http_thread_callback.hpp"
 
 #include "../core/jni_helper.hpp"
@@ -24,7 +25,7 @@ public:
     jclass klass = env->FindClass("com/mapswithme/maps/downloader/DownloadChunkTask");
     ASSERT ( klass, () );
 
-    static jmethodID initMethodId = env->GetMethodID(klass, "<init>", "(JLjava/lang/String;JJJ[BLjava/lang/String;)V");
+    static jmethodID initMethodId = env->GetMethodID(klass, "<init>", "(JLjava/lang/String;JJJ[BLjava/lang/String;Z)V");
     ASSERT ( initMethodId, () );
 
     // User id is always the same, so do not waste time on every chunk call
@@ -48,7 +49,8 @@ public:
                                              static_cast<jlong>(end),
                                              static_cast<jlong>(expectedFileSize),
                                              postBody,
-                                             jUserId);
+                                             jUserId,
+                                             static_cast<jboolean>(cb.IsBackgroundWriteSupported()));
     m_self = env->NewGlobalRef(localSelf);
     ASSERT ( m_self, () );
 
@@ -70,10 +72,11 @@ public:
     JNIEnv * env = jni::GetEnv();
     ASSERT ( env, () );
 
-    jmethodID methodId = jni::GetJavaMethodID(env, m_self, "cancel", "(Z)Z");
+    // Waits for the chunk being written from the download thread, so callback is not used after deletion.
+    jmethodID methodId = jni::GetJavaMethodID(env, m_self, "cancelDownload", "()V");
     ASSERT ( methodId, () );
 
-    env->CallBooleanMethod(m_self, methodId, false);
+    env->CallVoidMethod(m_self, methodId);
 
     env->DeleteGlobalRef(m_self);
   }
@@ -100,8 +103,9 @@ namespace downloader
 
 extern "C"
 {
+  // onWrite is overloaded in java, so both functions should have long (with signature) names.
   JNIEXPORT jboolean JNICALL
-  Java_com_mapswithme_maps_downloader_DownloadChunkTask_onWrite(JNIEnv * env, jobject thiz,
+  Java_com_mapswithme_maps_downloader_DownloadChunkTask_onWrite__JJ_3BJ(JNIEnv * env, jobject thiz,
       jlong httpCallbackID, jlong beg, jbyteArray data, jlong size)
   {
     downloader::IHttpThreadCallback * cb = reinterpret_cast<downloader::IHttpThreadCallback*>(httpCallbackID);
@@ -109,10 +113,22 @@ extern "C"
     ASSERT ( buf, () );
 
     bool const ret = cb->OnWrite(beg, buf, size);
-    env->ReleaseByteArrayElements(data, buf, 0);
+    env->ReleaseByteArrayElements(data, buf, JNI_ABORT);
     return ret;
   }
 
+  JNIEXPORT jboolean JNICALL
+  Java_com_mapswithme_maps_downloader_DownloadChunkTask_onWrite__JJLjava_nio_ByteBuffer_2J(JNIEnv * env, jobject thiz,
+      jlong httpCallbackID, jlong beg, jobject data, jlong size)
+  {
+    downloader::IHttpThreadCallback * cb = reinterpret_cast<downloader::IHttpThreadCallback*>(httpCallbackID);
+    void const * buf = env->GetDirectBufferAddress(data);
+    ASSERT ( buf, () );
+    ASSERT_LESS_OR_EQUAL ( size, env->GetDirectBufferCapacity(data), () );
+
+    return cb->OnWrite(beg, buf, size);
+  }
+
   JNIEXPORT void JNICALL
   Java_com_mapswithme_maps_downloader_DownloadChunkTask_onFinish(JNIEnv * env, jobject thiz,
       jlong httpCallbackID, jlong httpCode, jlong beg, jlong end)
@@ -120,4 +136,11 @@ extern "C"
     downloader::IHttpThreadCallback * cb = reinterpret_cast<downloader::IHttpThreadCallback*>(httpCallbackID);
     cb->OnFinish(httpCode, beg, end);
   }
+
+  JNIEXPORT void JNICALL
+  Java_com_mapswithme_maps_downloader_AdaptiveDownloadExecutor_nativeSetMaxChunksInProgress(JNIEnv * env, jclass clazz,
+      jint count)
+  {
+    downloader::HttpRequest::SetMaxChunksInProgress(static_cast<size_t>(count));
+  }
 }
@@ -53,6 +53,11 @@ public class ActiveCountryTree
 
   public static native void cancelDownloading(int group, int position);
 
+  /**
+   * Removes the country from the download queue, partially downloaded file is kept to continue from the same place.
+   */
+  public static native void pauseDownloadingForIndex(Index index);
+
   public static native boolean isDownloadingActive();
 
   public static native void retryDownloading(int group, int position);
@@ -74,10 +79,4 @@ public class ActiveCountryTree
   public static native void removeListener(int slotId);
 
   public static native void downloadMapForIndex(Index index, int options);
-
-  public static void downloadMapsForIndex(Index[] indexes, int options)
-  {
-    for (Index index : indexes)
-      downloadMapForIndex(index, options);
-  }
 }
\ No newline at end of file
@@ -57,6 +57,24 @@ public enum MapStorage
       return ("Index(" + mGroup + ", " + getCountry() + ", " + getRegion() + ")");
     }
 
+    @Override
+    public boolean equals(Object o)
+    {
+      if (this == o)
+        return true;
+      if (!(o instanceof Index))
+        return false;
+
+      final Index other = (Index) o;
+      return (mGroup == other.mGroup && mCountry == other.mCountry && mRegion == other.mRegion);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return 31 * (31 * mGroup + mCountry) + mRegion;
+    }
+
     public int getCountry()
     {
       return mCountry;
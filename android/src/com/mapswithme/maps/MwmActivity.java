@@ -36,6 +36,7 @@ import com.mapswithme.maps.bookmarks.data.BookmarkManager;
 import com.mapswithme.maps.bookmarks.data.MapObject;
 import com.mapswithme.maps.bookmarks.data.MapObject.ApiPoint;
 import com.mapswithme.maps.dialog.RoutingErrorDialogFragment;
+import com.mapswithme.maps.downloader.DownloadScheduler;
 import com.mapswithme.maps.location.LocationHelper;
 import com.mapswithme.maps.location.LocationPredictor;
 import com.mapswithme.maps.routing.RoutingResultCodesProcessor;
@@ -664,10 +665,10 @@ public class MwmActivity extends BaseMwmFragmentActivity
   }
 
   @Override
-  public void onLocationUpdated(final Location l)
+  public void onLocationUpdated(Location l)
   {
     if (!l.getProvider().equals(LocationHelper.LOCATION_PREDICTOR_PROVIDER))
-      mLocationPredictor.reset(l);
+      l = mLocationPredictor.reset(l);
 
     mMapFragment.nativeLocationUpdated(
         l.getTime(),
@@ -1109,9 +1110,9 @@ public class MwmActivity extends BaseMwmFragmentActivity
             {
               mLayoutRouting.setState(RoutingLayout.State.HIDDEN, false);
               if (missingCountries != null && missingCountries.length != 0)
-                ActiveCountryTree.downloadMapsForIndex(missingCountries, StorageOptions.MAP_OPTION_MAP_AND_CAR_ROUTING);
+                DownloadScheduler.INSTANCE.schedule(missingCountries, StorageOptions.MAP_OPTION_MAP_AND_CAR_ROUTING);
               if (missingRoutes != null && missingRoutes.length != 0)
-                ActiveCountryTree.downloadMapsForIndex(missingRoutes, StorageOptions.MAP_OPTION_CAR_ROUTING);
+                DownloadScheduler.INSTANCE.schedule(missingRoutes, StorageOptions.MAP_OPTION_CAR_ROUTING);
               showDownloader(true);
             }
 
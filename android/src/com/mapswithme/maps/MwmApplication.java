@@ -14,6 +14,8 @@ import com.mapswithme.country.CountryItem;
 import com.mapswithme.maps.ads.LikesManager;
 import com.mapswithme.maps.background.Notifier;
 import com.mapswithme.maps.bookmarks.data.BookmarkManager;
+import com.mapswithme.maps.downloader.HttpConnectionManager;
+import com.mapswithme.maps.search.SearchRecents;
 import com.mapswithme.util.Constants;
 import com.mapswithme.util.UiUtils;
 import com.mapswithme.util.Yota;
@@ -97,6 +99,7 @@ public class MwmApplication extends android.app.Application implements ActiveCou
   {
     super.onCreate();
 
+    HttpConnectionManager.setupKeepAlive();
     initParse();
     mPrefs = getSharedPreferences(getString(R.string.pref_file_name), MODE_PRIVATE);
   }
@@ -113,6 +116,7 @@ public class MwmApplication extends android.app.Application implements ActiveCou
     ActiveCountryTree.addListener(this);
     initNativeStrings();
     BookmarkManager.getIcons(); // init BookmarkManager (automatically loads bookmarks)
+    SearchRecents.prefetch();
     mIsFrameworkInitialized = true;
   }
 
@@ -6,6 +6,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 
 import com.mapswithme.maps.MwmApplication;
+import com.mapswithme.maps.downloader.DownloadScheduler;
 import com.mapswithme.util.ConnectionState;
 
 public class ConnectivityChangedReceiver extends BroadcastReceiver
@@ -16,6 +17,8 @@ public class ConnectivityChangedReceiver extends BroadcastReceiver
   @Override
   public void onReceive(Context context, Intent intent)
   {
+    DownloadScheduler.INSTANCE.onConnectivityChanged();
+
     if (ConnectionState.isWifiConnected())
       onWiFiConnected(context);
   }
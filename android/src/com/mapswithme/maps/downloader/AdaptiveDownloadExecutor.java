@@ -0,0 +1,157 @@
+package com.mapswithme.maps.downloader;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor for download tasks, which tunes the number of parallel connections by measured total throughput.
+ * Each measurement window the pool is resized one step in the same direction while total throughput grows,
+ * and direction is reversed when it falls. If throughput doesn't change, the pool is shrunk.
+ * Bytes are counted as they are read, as a window contains only a few finished ranges.
+ * <p/>
+ * Pool size is passed to the native download strategy as the number of ranges downloaded at once,
+ * otherwise it would give out only one range per server.
+ */
+class AdaptiveDownloadExecutor implements Executor
+{
+  private static final int MIN_THREADS = 2;
+  private static final int MAX_THREADS = 8;
+  private static final int INITIAL_THREADS = 4;
+  private static final long WINDOW_MILLIS = 3000;
+  // Throughput changes smaller than this part are treated as noise.
+  private static final double SIGNIFICANT_CHANGE = 0.1;
+  // Weight of the last finished range in per-connection throughput.
+  private static final double CONNECTION_ALPHA = 0.3;
+
+  private final ThreadPoolExecutor mExecutor;
+
+  private int mStep = 1;
+  private long mWindowStart;
+  private long mWindowBytes;
+  // Bytes per millisecond.
+  private double mLastThroughput;
+  private double mConnectionThroughput;
+
+  AdaptiveDownloadExecutor()
+  {
+    mExecutor = new ThreadPoolExecutor(INITIAL_THREADS, INITIAL_THREADS, 60, TimeUnit.SECONDS,
+                                       new LinkedBlockingQueue<Runnable>());
+    mExecutor.allowCoreThreadTimeOut(true);
+    nativeSetMaxChunksInProgress(INITIAL_THREADS);
+  }
+
+  /**
+   * Native strategy applies the new value when it starts the next range.
+   */
+  private static native void nativeSetMaxChunksInProgress(int count);
+
+  @Override
+  public void execute(Runnable task)
+  {
+    mExecutor.execute(task);
+  }
+
+  int getPoolSize()
+  {
+    return mExecutor.getCorePoolSize();
+  }
+
+  /**
+   * @return average throughput of one connection in bytes per millisecond or 0 if nothing was measured yet.
+   */
+  synchronized double getConnectionThroughput()
+  {
+    return mConnectionThroughput;
+  }
+
+  /**
+   * Called by download tasks when range reading is completed (successfully or not).
+   *
+   * @param bytes  bytes received through the connection.
+   * @param millis time spent on reading.
+   */
+  synchronized void onRangeRead(long bytes, long millis)
+  {
+    if (bytes <= 0)
+      return;
+
+    final double rate = (double) bytes / Math.max(millis, 1);
+    mConnectionThroughput = (mConnectionThroughput == 0 ? rate
+                                                        : CONNECTION_ALPHA * rate + (1 - CONNECTION_ALPHA) * mConnectionThroughput);
+  }
+
+  /**
+   * Called by download tasks after each read from a connection.
+   */
+  synchronized void onBytesRead(long bytes)
+  {
+    final long now = SystemClock.elapsedRealtime();
+    final long elapsed = now - mWindowStart;
+    if (elapsed > 2 * WINDOW_MILLIS)
+    {
+      // Nothing was downloaded for a long time, previous measurements are not relevant.
+      mLastThroughput = 0;
+      mWindowStart = now;
+      mWindowBytes = bytes;
+      return;
+    }
+
+    mWindowBytes += bytes;
+    if (elapsed < WINDOW_MILLIS)
+      return;
+
+    final double throughput = (double) mWindowBytes / elapsed;
+    if (mLastThroughput > 0)
+    {
+      if (throughput < mLastThroughput * (1 - SIGNIFICANT_CHANGE))
+      {
+        mStep = -mStep;
+        resize(mStep);
+      }
+      else if (throughput > mLastThroughput * (1 + SIGNIFICANT_CHANGE))
+        resize(mStep);
+      else
+      {
+        // The same throughput with fewer connections is better.
+        mStep = -1;
+        resize(mStep);
+      }
+    }
+    else
+      resize(mStep);
+
+    mLastThroughput = throughput;
+    mWindowStart = now;
+    mWindowBytes = 0;
+  }
+
+  private void resize(int step)
+  {
+    final int current = mExecutor.getCorePoolSize();
+    final int size = Math.max(MIN_THREADS, Math.min(MAX_THREADS, current + step));
+    if (size == current)
+    {
+      // Bounce back from the limit on the next step.
+      mStep = -mStep;
+      return;
+    }
+
+    // Maximum pool size must never be less than core one.
+    if (size > current)
+    {
+      mExecutor.setMaximumPoolSize(size);
+      mExecutor.setCorePoolSize(size);
+    }
+    else
+    {
+      mExecutor.setCorePoolSize(size);
+      mExecutor.setMaximumPoolSize(size);
+    }
+
+    nativeSetMaxChunksInProgress(size);
+  }
+}
@@ -0,0 +1,72 @@
+package com.mapswithme.maps.downloader;
+
+/**
+ * Chooses how many bytes to request from a connection stream in one read.
+ * Size grows while reads fill the whole buffer quickly, which means that data is already waiting in the socket,
+ * and shrinks when reads become slow or time out, so a bad connection delivers data in smaller portions.
+ * Latency is smoothed over recent reads and measuring starts again after each change.
+ */
+class AdaptiveReadSize
+{
+  static final int MIN_SIZE = 1024;
+  private static final long FAST_READ_MILLIS = 50;
+  private static final long SLOW_READ_MILLIS = 1000;
+  // Weight of the last read in smoothed latency.
+  private static final double LATENCY_ALPHA = 0.3;
+  // Number of reads to measure before the next change.
+  private static final int MIN_READS = 4;
+
+  private final int mMaxSize;
+  private int mSize;
+  private double mLatency;
+  private int mReads;
+  private boolean mAllFull;
+
+  AdaptiveReadSize(int initialSize, int maxSize)
+  {
+    mMaxSize = maxSize;
+    mSize = Math.max(MIN_SIZE, Math.min(maxSize, initialSize));
+    reset();
+  }
+
+  int get()
+  {
+    return mSize;
+  }
+
+  /**
+   * @param requested bytes requested from the stream.
+   * @param read      bytes actually read.
+   * @param millis    time spent in read.
+   */
+  void onRead(int requested, int read, long millis)
+  {
+    mLatency = (mReads == 0 ? millis : LATENCY_ALPHA * millis + (1 - LATENCY_ALPHA) * mLatency);
+    mAllFull &= (read == requested);
+    if (++mReads < MIN_READS)
+      return;
+
+    if (mAllFull && mLatency < FAST_READ_MILLIS)
+      resize(mSize * 2);
+    else if (mLatency > SLOW_READ_MILLIS)
+      resize(mSize / 2);
+  }
+
+  void onTimeout()
+  {
+    resize(mSize / 4);
+  }
+
+  private void resize(int size)
+  {
+    mSize = Math.max(MIN_SIZE, Math.min(mMaxSize, size));
+    reset();
+  }
+
+  private void reset()
+  {
+    mReads = 0;
+    mLatency = 0;
+    mAllFull = true;
+  }
+}
@@ -0,0 +1,59 @@
+package com.mapswithme.maps.downloader;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of direct byte buffers of the same capacity.
+ * Buffers are created lazily until the limit is reached, after that callers wait for released ones.
+ */
+class ByteBufferPool
+{
+  private final int mBufferSize;
+  private final int mMaxBuffers;
+  private final BlockingQueue<ByteBuffer> mFree = new LinkedBlockingQueue<>();
+  private final AtomicInteger mAllocated = new AtomicInteger();
+
+  ByteBufferPool(int bufferSize, int maxBuffers)
+  {
+    mBufferSize = bufferSize;
+    mMaxBuffers = maxBuffers;
+  }
+
+  int getBufferSize()
+  {
+    return mBufferSize;
+  }
+
+  /**
+   * Takes free buffer from the pool or creates a new one if pool is not exhausted yet.
+   *
+   * @param timeoutMillis how long to wait for released buffer if all buffers are in use.
+   * @return cleared buffer or null if no buffer became available during timeout.
+   */
+  ByteBuffer acquire(long timeoutMillis) throws InterruptedException
+  {
+    ByteBuffer res = mFree.poll();
+    if (res == null)
+    {
+      if (mAllocated.incrementAndGet() <= mMaxBuffers)
+        return ByteBuffer.allocateDirect(mBufferSize);
+
+      mAllocated.decrementAndGet();
+      res = mFree.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+      if (res == null)
+        return null;
+    }
+
+    res.clear();
+    return res;
+  }
+
+  void release(ByteBuffer buffer)
+  {
+    mFree.offer(buffer);
+  }
+}
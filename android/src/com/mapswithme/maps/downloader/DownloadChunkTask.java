@@ -2,6 +2,7 @@ package com.mapswithme.maps.downloader;
 
 import android.os.AsyncTask;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.mapswithme.util.Constants;
@@ -14,12 +15,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.concurrent.Executor;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-class DownloadChunkTask extends AsyncTask<Void, byte[], Boolean>
+class DownloadChunkTask extends AsyncTask<Void, ByteBuffer, Boolean>
 {
   private static final String TAG = "DownloadChunkTask";
 
@@ -32,6 +41,12 @@ class DownloadChunkTask extends AsyncTask<Void, byte[], Boolean>
   private final long mExpectedFileSize;
   private byte[] mPostBody;
   private final String mUserAgent;
+  // If set, chunks are written right on the download thread and UI thread gets only onFinish() notification.
+  private final boolean mWriteOnWorkerThread;
+  // Prevents cancelling while chunk is being written on the download thread. Shared with the tail task.
+  private final Object mWriteLock;
+  // Slow range downloads can give the second half of the range to a separate tail task.
+  private final boolean mCanSplit;
 
   private final int NOT_SET = -1;
   private final int IO_ERROR = -2;
@@ -41,15 +56,58 @@ class DownloadChunkTask extends AsyncTask<Void, byte[], Boolean>
 
   private int mHttpErrorCode = NOT_SET;
   private long mDownloadedBytes = 0;
-
-  private static Executor sExecutors = Executors.newFixedThreadPool(4);
+  // Buffers passed to publishProgress() and not written yet. Compared by identity, as ByteBuffer equality is by content.
+  private final Set<ByteBuffer> mPublished = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+
+  // Fields below are accessed from the download thread only.
+  // Last byte to read, can be decreased if the range is split.
+  private long mReadEnd;
+  private long mReadBytes;
+  private long mReadStart;
+  private long mLastSplitCheck;
+  // Set if the whole response body was read, so the connection can be kept alive.
+  private boolean mResponseConsumed;
+  // Last byte requested from the current connection.
+  private long mRequestedEnd;
+  // Set if connection was broken while reading, so the rest of the range can be requested again.
+  private boolean mResumable;
+  private int mResumes;
+  private final AdaptiveReadSize mReadSize = new AdaptiveReadSize(MAX_READ_SIZE, MAX_READ_SIZE);
+  private long mTtfbMillis;
+  // Tail task is created under mWriteLock.
+  private DownloadChunkTask mTail;
+  private Future<Boolean> mTailResult;
+
+  private static final AdaptiveDownloadExecutor sExecutor = new AdaptiveDownloadExecutor();
+
+  private static final int MAX_TAIL_TASKS = 2;
+  // Tail tasks never wait for anything, so parent tasks can safely block on them.
+  private static final ExecutorService sTailExecutor = Executors.newFixedThreadPool(MAX_TAIL_TASKS);
+  private static final long SPLIT_CHECK_MILLIS = 1000;
+  private static final long MIN_SPLIT_SIZE = 64 * Constants.KB;
+  // Connection is slow if its throughput is less than this part of the average one.
+  private static final double SLOW_CONNECTION_RATIO = 0.5;
+
+  private static final int MAX_READ_SIZE = 64 * Constants.KB;
+  // Timed out stream stays usable, so reading is retried with smaller size before giving up the connection.
+  private static final int MAX_READ_TIMEOUTS = 2;
+  private static final int MAX_RESUMES = 2;
+  // Enough for all executor threads to keep reading while UI thread writes previous chunks.
+  private static final int MAX_POOLED_BUFFERS = 16;
+  private static final long BUFFER_WAIT_MILLIS = 500;
+  private static final ByteBufferPool sBufferPool = new ByteBufferPool(MAX_READ_SIZE, MAX_POOLED_BUFFERS);
 
   native boolean onWrite(long httpCallbackID, long beg, byte[] data, long size);
 
+  /**
+   * Writes first {@code size} bytes of direct {@code data} buffer without copying them into java array.
+   */
+  native boolean onWrite(long httpCallbackID, long beg, ByteBuffer data, long size);
+
   native void onFinish(long httpCallbackID, long httpCode, long beg, long end);
 
   public DownloadChunkTask(long httpCallbackID, String url, long beg, long end,
-                           long expectedFileSize, byte[] postBody, String userAgent)
+                           long expectedFileSize, byte[] postBody, String userAgent, boolean writeOnWorkerThread)
   {
     mHttpCallbackID = httpCallbackID;
     mUrl = url;
@@ -58,6 +116,29 @@ class DownloadChunkTask extends AsyncTask<Void, byte[], Boolean>
     mExpectedFileSize = expectedFileSize;
     mPostBody = postBody;
     mUserAgent = userAgent;
+    mWriteOnWorkerThread = writeOnWorkerThread;
+    mWriteLock = new Object();
+    // Tail task writes at its own offsets, that is possible on the download thread only.
+    mCanSplit = writeOnWorkerThread && end > 0 && postBody == null;
+    mReadEnd = end;
+  }
+
+  /**
+   * Creates task to download the rest of the parent's range, starting from {@code beg}.
+   * Tail task isn't executed as AsyncTask and doesn't report to native code, parent does it.
+   */
+  private DownloadChunkTask(DownloadChunkTask parent, long beg)
+  {
+    mHttpCallbackID = parent.mHttpCallbackID;
+    mUrl = parent.mUrl;
+    mBeg = beg;
+    mEnd = parent.mReadEnd;
+    mExpectedFileSize = parent.mExpectedFileSize;
+    mUserAgent = parent.mUserAgent;
+    mWriteOnWorkerThread = true;
+    mWriteLock = parent.mWriteLock;
+    mCanSplit = false;
+    mReadEnd = mEnd;
   }
 
   @Override
@@ -82,25 +163,66 @@ class DownloadChunkTask extends AsyncTask<Void, byte[], Boolean>
   }
 
   @Override
-  protected void onProgressUpdate(byte[]... data)
+  protected void onCancelled()
   {
-    if (!isCancelled())
+    // publishProgress() silently drops buffers if task is already cancelled. Progress updates which were posted
+    // are delivered before this call, so all buffers left here are dropped ones and must get back to the pool.
+    synchronized (mPublished)
     {
-      // Use progress event to save downloaded bytes.
-      if (onWrite(mHttpCallbackID, mBeg + mDownloadedBytes, data[0], data[0].length))
-        mDownloadedBytes += data[0].length;
-      else
+      for (final ByteBuffer buffer : mPublished)
+        sBufferPool.release(buffer);
+      mPublished.clear();
+    }
+  }
+
+  @Override
+  protected void onProgressUpdate(ByteBuffer... data)
+  {
+    final ByteBuffer chunk = data[0];
+    synchronized (mPublished)
+    {
+      mPublished.remove(chunk);
+    }
+
+    try
+    {
+      if (!isCancelled())
       {
-        // Cancel downloading and notify about error.
-        cancel(false);
-        onFinish(mHttpCallbackID, WRITE_ERROR, mBeg, mEnd);
+        // Use progress event to save downloaded bytes.
+        final int size = chunk.remaining();
+        if (onWrite(mHttpCallbackID, mBeg + mDownloadedBytes, chunk, size))
+          mDownloadedBytes += size;
+        else
+        {
+          // Cancel downloading and notify about error.
+          cancel(false);
+          onFinish(mHttpCallbackID, WRITE_ERROR, mBeg, mEnd);
+        }
       }
+    } finally
+    {
+      // Posted progress updates are delivered even for cancelled task, dropped ones are released in onCancelled().
+      sBufferPool.release(chunk);
     }
   }
 
   void start()
   {
-    executeOnExecutor(sExecutors, (Void[]) null);
+    executeOnExecutor(sExecutor, (Void[]) null);
+  }
+
+  /**
+   * Called from native code instead of {@link #cancel(boolean)}.
+   * After return native callback is not used anymore, even if chunks are written on the download thread.
+   */
+  void cancelDownload()
+  {
+    synchronized (mWriteLock)
+    {
+      cancel(false);
+      if (mTail != null)
+        mTail.cancel(false);
+    }
   }
 
   static long parseContentRange(String contentRangeValue)
@@ -124,9 +246,73 @@ class DownloadChunkTask extends AsyncTask<Void, byte[], Boolean>
 
   @Override
   protected Boolean doInBackground(Void... p)
+  {
+    return joinTail(download());
+  }
+
+  /**
+   * Waits for the tail task if range was split.
+   *
+   * @param success result of the own part of the range.
+   * @return true if the whole range is downloaded.
+   */
+  private boolean joinTail(boolean success)
+  {
+    synchronized (mWriteLock)
+    {
+      if (mTail == null)
+        return success;
+
+      if (!success)
+        mTail.cancel(false);
+    }
+
+    try
+    {
+      // Wait even if own part failed, so nothing is written after onFinish().
+      final boolean tailSuccess = mTailResult.get();
+      if (success && !tailSuccess)
+        mHttpErrorCode = mTail.mHttpErrorCode;
+
+      return success && tailSuccess;
+    } catch (final InterruptedException | ExecutionException ex)
+    {
+      Log.d(TAG, "Tail download failed for URL: " + mUrl, ex);
+
+      mTail.cancel(false);
+      mHttpErrorCode = IO_ERROR;
+      return false;
+    }
+  }
+
+  private boolean download()
+  {
+    mTtfbMillis = -1;
+    mReadStart = SystemClock.elapsedRealtime();
+
+    boolean success;
+    while (!(success = downloadImpl()) && mResumable && mResumes < MAX_RESUMES && !isCancelled())
+    {
+      // Continue from the current offset instead of failing the whole range.
+      mResumes++;
+      mHttpErrorCode = NOT_SET;
+    }
+
+    final long readMillis = SystemClock.elapsedRealtime() - mReadStart;
+    sExecutor.onRangeRead(mReadBytes, readMillis);
+
+    if (!isCancelled())
+      DownloadMetrics.INSTANCE.onChunkFinished(mUrl, mBeg, mReadEnd, mReadBytes, mTtfbMillis, readMillis,
+                                               mReadSize.get(), mResumes, success ? 0 : mHttpErrorCode);
+    return success;
+  }
+
+  private boolean downloadImpl()
   {
     //Log.i(TAG, "Start downloading chunk " + getChunkID());
 
+    mResumable = false;
+    final boolean canResume = (mPostBody == null);
     HttpURLConnection urlConnection = null;
     /**
      * TODO improve reliability of connections & handle EOF errors.
@@ -136,7 +322,8 @@ class DownloadChunkTask extends AsyncTask<Void, byte[], Boolean>
     try
     {
       final URL url = new URL(mUrl);
-      urlConnection = (HttpURLConnection) url.openConnection();
+      final long openTime = SystemClock.elapsedRealtime();
+      urlConnection = HttpConnectionManager.INSTANCE.open(url);
 
       if (isCancelled())
         return false;
@@ -149,12 +336,15 @@ class DownloadChunkTask extends AsyncTask<Void, byte[], Boolean>
       urlConnection.setRequestProperty("User-Agent", mUserAgent);
 
       // use Range header only if we don't download whole file from start
-      if (!(mBeg == 0 && mEnd < 0))
+      final long from = mBeg + mReadBytes;
+      mRequestedEnd = mReadEnd;
+      final boolean isChunk = !(from == 0 && mReadEnd < 0);
+      if (isChunk)
       {
-        if (mEnd > 0)
-          urlConnection.setRequestProperty("Range", StringUtils.formatUsingUsLocale("bytes=%d-%d", mBeg, mEnd));
+        if (mReadEnd > 0)
+          urlConnection.setRequestProperty("Range", StringUtils.formatUsingUsLocale("bytes=%d-%d", from, mReadEnd));
         else
-          urlConnection.setRequestProperty("Range", StringUtils.formatUsingUsLocale("bytes=%d-", mBeg));
+          urlConnection.setRequestProperty("Range", StringUtils.formatUsingUsLocale("bytes=%d-", from));
       }
 
       final Map<?, ?> requestParams = urlConnection.getRequestProperties();
@@ -175,11 +365,12 @@ class DownloadChunkTask extends AsyncTask<Void, byte[], Boolean>
         return false;
 
       final int err = urlConnection.getResponseCode();
+      mTtfbMillis = SystemClock.elapsedRealtime() - openTime;
+      HttpConnectionManager.INSTANCE.onResponse(urlConnection, mTtfbMillis);
       // @TODO We can handle redirect (301, 302 and 307) here and display redirected page to user,
       // to avoid situation when downloading is always failed by "unknown" reason
       // When we didn't ask for chunks, code should be 200
       // When we asked for a chunk, code should be 206
-      final boolean isChunk = !(mBeg == 0 && mEnd < 0);
       if ((isChunk && err != HttpURLConnection.HTTP_PARTIAL) || (!isChunk && err != HttpURLConnection.HTTP_OK))
       {
         // we've set error code so client should be notified about the error
@@ -210,7 +401,10 @@ class DownloadChunkTask extends AsyncTask<Void, byte[], Boolean>
         // @TODO Else display received web page to user - router is redirecting us to some page
       }
 
-      return downloadFromStream(new BufferedInputStream(urlConnection.getInputStream(), 65536));
+      final int ret = downloadFromStream(new BufferedInputStream(urlConnection.getInputStream(), 65536));
+      // Only connection broken in the middle of the response is resumed, failed requests are retried by native code.
+      mResumable = (ret == -2 && canResume);
+      return (ret == 0);
     } catch (final MalformedURLException ex)
     {
       Log.d(TAG, "Invalid url: " + mUrl);
@@ -226,37 +420,45 @@ class DownloadChunkTask extends AsyncTask<Void, byte[], Boolean>
     } finally
     {
       if (urlConnection != null)
-        urlConnection.disconnect();
+        HttpConnectionManager.INSTANCE.release(urlConnection, mResponseConsumed);
       else
         mHttpErrorCode = IO_ERROR;
     }
   }
 
-  private boolean downloadFromStream(InputStream stream)
+  /**
+   * @return 0 - download successful;
+   * 1 - download canceled;
+   * -1 - some error occurred;
+   * -2 - connection is broken.
+   */
+  private int downloadFromStream(InputStream stream)
   {
-    // Because of timeouts in InputStream.read (for bad connection),
-    // try to introduce dynamic buffer size to read in one query.
-    final int arrSize[] = {64, 32, 1};
-    int ret = -1;
+    if (mReadBytes == 0)
+    {
+      mReadStart = SystemClock.elapsedRealtime();
+      mLastSplitCheck = mReadStart;
+    }
 
-    for (int size : arrSize)
+    int ret;
+    try
     {
-      try
-      {
-        ret = downloadFromStreamImpl(stream, size * Constants.KB);
-        break;
-      } catch (final IOException ex)
-      {
-        Log.d(TAG, "IOException in downloadFromStream for chunk size: " + size, ex);
-      }
+      ret = downloadFromStreamImpl(stream);
+    } catch (final IOException ex)
+    {
+      Log.d(TAG, "IOException in downloadFromStream at " + (mBeg + mReadBytes) + " for URL: " + mUrl, ex);
+      ret = -2;
     }
 
-    if (ret < 0)
+    if (ret < 0 && mHttpErrorCode == NOT_SET)
       mHttpErrorCode = IO_ERROR;
 
+    // Server sends exactly the requested range, so it's consumed unless this task gave part of it to the tail.
+    mResponseConsumed = (ret == 0 && mReadEnd == mRequestedEnd);
+
     Utils.closeStream(stream);
 
-    return (ret == 0);
+    return ret;
   }
 
   /**
@@ -265,23 +467,178 @@ class DownloadChunkTask extends AsyncTask<Void, byte[], Boolean>
    * -1 - some error occurred;
    * @throws IOException
    */
-  private int downloadFromStreamImpl(InputStream stream, int bufferSize) throws IOException
+  private int downloadFromStreamImpl(InputStream stream) throws IOException
   {
-    final byte[] tempBuf = new byte[bufferSize];
+    final byte[] tempBuf = new byte[MAX_READ_SIZE];
+    int timeouts = 0;
 
-    int readBytes;
-    while ((readBytes = stream.read(tempBuf)) > 0)
+    while (true)
     {
+      final int size = getReadSize(mReadSize.get());
+      if (size == 0)
+        return 0;
+
+      final long start = SystemClock.elapsedRealtime();
+      final int readBytes;
+      try
+      {
+        readBytes = stream.read(tempBuf, 0, size);
+      } catch (final SocketTimeoutException ex)
+      {
+        mReadSize.onTimeout();
+        if (++timeouts > MAX_READ_TIMEOUTS)
+          throw ex;
+
+        Log.d(TAG, "Read timeout, read size is decreased to " + mReadSize.get());
+        continue;
+      }
+
+      // -1 - means the end of the stream (success), else - some error occurred
+      if (readBytes <= 0)
+        return (readBytes == -1 ? 0 : -1);
+
+      timeouts = 0;
+      mReadSize.onRead(size, readBytes, SystemClock.elapsedRealtime() - start);
+
       if (isCancelled())
         return 1;
 
-      final byte[] chunk = new byte[readBytes];
-      System.arraycopy(tempBuf, 0, chunk, 0, readBytes);
+      final ByteBuffer chunk = acquireBuffer();
+      if (chunk == null)
+        return 1;
+
+      chunk.put(tempBuf, 0, readBytes);
+      chunk.flip();
+
+      mReadBytes += readBytes;
+      sExecutor.onBytesRead(readBytes);
+
+      if (!mWriteOnWorkerThread)
+      {
+        synchronized (mPublished)
+        {
+          mPublished.add(chunk);
+        }
+        publishProgress(chunk);
+      }
+      else
+      {
+        final int ret = writeOnWorkerThread(chunk);
+        if (ret != 0)
+          return ret;
+      }
+
+      if (mCanSplit)
+        trySplit();
+    }
+  }
+
+  /**
+   * @return how many bytes to read at once, 0 if the range is completely read.
+   */
+  private int getReadSize(int bufferSize)
+  {
+    if (mReadEnd < 0)
+      return bufferSize;
+
+    return (int) Math.min(bufferSize, mReadEnd - (mBeg + mReadBytes) + 1);
+  }
+
+  /**
+   * Gives the second half of the remaining range to a tail task if this connection is much slower than average,
+   * so the whole download doesn't wait for one slow socket.
+   */
+  private void trySplit()
+  {
+    final long now = SystemClock.elapsedRealtime();
+    if (mTail != null || now - mLastSplitCheck < SPLIT_CHECK_MILLIS)
+      return;
+
+    mLastSplitCheck = now;
+
+    final long pos = mBeg + mReadBytes;
+    final long left = mReadEnd - pos + 1;
+    if (left < 2 * MIN_SPLIT_SIZE)
+      return;
+
+    final double average = sExecutor.getConnectionThroughput();
+    final double own = (double) mReadBytes / (now - mReadStart);
+    if (average == 0 || own >= average * SLOW_CONNECTION_RATIO)
+      return;
+
+    final long splitPos = pos + left / 2;
+    synchronized (mWriteLock)
+    {
+      if (isCancelled())
+        return;
 
-      publishProgress(chunk);
+      final DownloadChunkTask tail = new DownloadChunkTask(this, splitPos);
+      mReadEnd = splitPos - 1;
+      mTailResult = sTailExecutor.submit(new Callable<Boolean>()
+      {
+        @Override
+        public Boolean call() throws Exception
+        {
+          return tail.download();
+        }
+      });
+      mTail = tail;
+    }
+  }
+
+  /**
+   * Writes chunk on the download thread and returns buffer to the pool.
+   *
+   * @return 0 - chunk is written;
+   * 1 - download canceled;
+   * -1 - write error occurred;
+   */
+  private int writeOnWorkerThread(ByteBuffer chunk)
+  {
+    try
+    {
+      synchronized (mWriteLock)
+      {
+        if (isCancelled())
+          return 1;
+
+        final int size = chunk.remaining();
+        if (!onWrite(mHttpCallbackID, mBeg + mDownloadedBytes, chunk, size))
+        {
+          // Unlike UI thread writing, error is reported to native code from onPostExecute().
+          mHttpErrorCode = WRITE_ERROR;
+          return -1;
+        }
+
+        mDownloadedBytes += size;
+        return 0;
+      }
+    } finally
+    {
+      sBufferPool.release(chunk);
+    }
+  }
+
+  /**
+   * Waits for a free pooled buffer. If UI thread is slow with writing, this throttles reading from network.
+   *
+   * @return buffer to fill or null if task was cancelled while waiting.
+   */
+  private ByteBuffer acquireBuffer()
+  {
+    try
+    {
+      while (!isCancelled())
+      {
+        final ByteBuffer res = sBufferPool.acquire(BUFFER_WAIT_MILLIS);
+        if (res != null)
+          return res;
+      }
+    } catch (final InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
     }
 
-    // -1 - means the end of the stream (success), else - some error occurred
-    return (readBytes == -1 ? 0 : -1);
+    return null;
   }
 }
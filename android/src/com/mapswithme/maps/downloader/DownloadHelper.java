@@ -19,7 +19,8 @@ public class DownloadHelper
 
   public static boolean canDownloadWithoutWarning(long size)
   {
-    return size < 50 * Constants.MB || ConnectionState.isWifiConnected();
+    return ConnectionState.isWifiConnected() ||
+           (size < 50 * Constants.MB && size <= DownloadScheduler.INSTANCE.getCellularBudgetLeft());
   }
 
   public static void downloadWithCellularCheck(Activity activity, long size, String name, final OnDownloadListener listener)
@@ -0,0 +1,157 @@
+package com.mapswithme.maps.downloader;
+
+import com.mapswithme.util.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects performance of downloaded ranges, so chunk sizes and concurrency can be tuned from field data.
+ * Keeps totals per file and the last {@link #MAX_RECENT_CHUNKS} ranges, everything is lost on process restart.
+ */
+public enum DownloadMetrics
+{
+  INSTANCE;
+
+  private static final int MAX_RECENT_CHUNKS = 200;
+
+  private static class Chunk
+  {
+    String file;
+    long beg;
+    long end;
+    long bytes;
+    long ttfbMillis;
+    long readMillis;
+    int readSize;
+    int resumes;
+    int errorCode;
+  }
+
+  private static class FileStats
+  {
+    int chunks;
+    int responses;
+    int retries;
+    int resumes;
+    long bytes;
+    long readMillis;
+    long ttfbMillis;
+    // Begins of failed ranges, which weren't requested again yet.
+    final Set<Long> failedBegins = new HashSet<>();
+    final Map<Integer, Integer> errors = new HashMap<>();
+  }
+
+  private final ArrayDeque<Chunk> mRecent = new ArrayDeque<>();
+  private final Map<String, FileStats> mFiles = new LinkedHashMap<>();
+
+  /**
+   * Called by download task when it's finished (successfully or not).
+   *
+   * @param url             downloaded url, its last path segment is used as the file name.
+   * @param end             last byte of the range or -1 if the whole file was requested.
+   * @param ttfbMillis      time from opening connection to receiving response headers, -1 if not received.
+   * @param readSize        size of one read from the stream at the end.
+   * @param resumes         how many times broken connection was reopened from the current offset.
+   * @param errorCode       0 on success, otherwise error code reported to the native code.
+   */
+  synchronized void onChunkFinished(String url, long beg, long end, long bytes, long ttfbMillis, long readMillis,
+                                    int readSize, int resumes, int errorCode)
+  {
+    final Chunk chunk = new Chunk();
+    chunk.file = url.substring(url.lastIndexOf('/') + 1);
+    chunk.beg = beg;
+    chunk.end = end;
+    chunk.bytes = bytes;
+    chunk.ttfbMillis = ttfbMillis;
+    chunk.readMillis = readMillis;
+    chunk.readSize = readSize;
+    chunk.resumes = resumes;
+    chunk.errorCode = errorCode;
+
+    if (mRecent.size() == MAX_RECENT_CHUNKS)
+      mRecent.removeFirst();
+    mRecent.addLast(chunk);
+
+    FileStats stats = mFiles.get(chunk.file);
+    if (stats == null)
+    {
+      stats = new FileStats();
+      mFiles.put(chunk.file, stats);
+    }
+
+    stats.chunks++;
+    // Native code requests failed range again from another server. Other repeated ranges come from
+    // a new download of the same file, e.g. after pause or deletion, and aren't retries.
+    if (stats.failedBegins.remove(beg))
+      stats.retries++;
+    if (errorCode != 0)
+      stats.failedBegins.add(beg);
+    stats.resumes += resumes;
+    stats.bytes += bytes;
+    stats.readMillis += readMillis;
+    if (ttfbMillis >= 0)
+    {
+      stats.responses++;
+      stats.ttfbMillis += ttfbMillis;
+    }
+    if (errorCode != 0)
+    {
+      final Integer count = stats.errors.get(errorCode);
+      stats.errors.put(errorCode, count == null ? 1 : count + 1);
+    }
+  }
+
+  public synchronized void clear()
+  {
+    mRecent.clear();
+    mFiles.clear();
+  }
+
+  private static long speed(long bytes, long millis)
+  {
+    return (millis == 0 ? 0 : bytes * 1000 / millis);
+  }
+
+  /**
+   * @return human readable report with per file totals, connection reuse by hosts and the last downloaded ranges.
+   */
+  public String dump()
+  {
+    final StringBuilder res = new StringBuilder();
+
+    synchronized (this)
+    {
+      res.append("Files: name, chunks, retries, resumes, bytes, bytes/s, avg ttfb ms, errors\n");
+      for (Map.Entry<String, FileStats> entry : mFiles.entrySet())
+      {
+        final FileStats stats = entry.getValue();
+        res.append(StringUtils.formatUsingUsLocale("%s, %d, %d, %d, %d, %d, %d, %s\n",
+                                                   entry.getKey(), stats.chunks, stats.retries, stats.resumes,
+                                                   stats.bytes, speed(stats.bytes, stats.readMillis),
+                                                   stats.ttfbMillis / Math.max(stats.responses, 1), stats.errors));
+      }
+
+      res.append("\nLast chunks: name, range, bytes, bytes/s, ttfb ms, read size KB, resumes, error\n");
+      for (Chunk chunk : mRecent)
+        res.append(StringUtils.formatUsingUsLocale("%s, %d-%d, %d, %d, %d, %d, %d, %d\n",
+                                                   chunk.file, chunk.beg, chunk.end, chunk.bytes,
+                                                   speed(chunk.bytes, chunk.readMillis), chunk.ttfbMillis,
+                                                   chunk.readSize / 1024, chunk.resumes, chunk.errorCode));
+    }
+
+    res.append("\nHosts: name, requests, estimated reuse rate, avg ttfb ms\n");
+    for (Map.Entry<String, HttpConnectionManager.HostStats> entry : HttpConnectionManager.INSTANCE.getStats().entrySet())
+    {
+      final HttpConnectionManager.HostStats stats = entry.getValue();
+      res.append(StringUtils.formatUsingUsLocale("%s, %d, %.2f, %d\n", entry.getKey(), stats.getRequests(),
+                                                 stats.getReuseRate(), stats.getAverageTtfb()));
+    }
+
+    return res.toString();
+  }
+}
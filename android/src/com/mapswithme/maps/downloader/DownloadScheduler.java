@@ -0,0 +1,274 @@
+package com.mapswithme.maps.downloader;
+
+import android.content.SharedPreferences;
+import android.text.format.DateUtils;
+
+import com.mapswithme.country.ActiveCountryTree;
+import com.mapswithme.maps.Framework;
+import com.mapswithme.maps.MapStorage;
+import com.mapswithme.maps.MapStorage.Index;
+import com.mapswithme.maps.MwmApplication;
+import com.mapswithme.util.ConnectionState;
+import com.mapswithme.util.Constants;
+
+import java.util.LinkedList;
+
+/**
+ * Queues country downloads and passes them to the core one at a time, when network allows it.
+ * On Wi-Fi queue is downloaded without limits, on cellular network only while daily cellular budget is not spent.
+ * Download interrupted by the lost connection is paused and resumed as soon as the network is back.
+ * If Wi-Fi is lost and the rest of the current download doesn't fit the budget, it's paused till Wi-Fi is back,
+ * and smaller countries which fit are downloaded meanwhile.
+ * Country under the viewport is always downloaded before the rest of the queue.
+ * <p/>
+ * Should be used from UI thread only.
+ */
+public enum DownloadScheduler implements ActiveCountryTree.ActiveCountryListener
+{
+  INSTANCE;
+
+  private static final long DAILY_CELLULAR_BUDGET = 100 * Constants.MB;
+  private static final String PREF_CELLULAR_DAY = "CellularBudgetDay";
+  private static final String PREF_CELLULAR_BYTES = "CellularBudgetBytes";
+  // Cellular bytes are saved to preferences in such portions and when download of the country ends.
+  private static final long CELLULAR_SAVE_BYTES = Constants.MB;
+
+  private static class Task
+  {
+    final Index index;
+    final int options;
+
+    Task(Index index, int options)
+    {
+      this.index = index;
+      this.options = options;
+    }
+  }
+
+  private final LinkedList<Task> mQueue = new LinkedList<>();
+  private Task mCurrent;
+  private boolean mListenerAdded;
+  // Progress of the current country, -1 until the first progress update.
+  private long mLastDownloaded;
+  private long mLeftToDownload;
+  // Received via cellular network and not saved yet.
+  private long mUnsavedCellularBytes;
+
+  /**
+   * Adds countries to the end of the queue and starts downloading if possible.
+   */
+  public void schedule(Index[] indexes, int options)
+  {
+    if (!mListenerAdded)
+    {
+      ActiveCountryTree.addListener(this);
+      mListenerAdded = true;
+    }
+
+    for (Index index : indexes)
+      if (find(index) == null)
+        mQueue.add(new Task(index, options));
+
+    startNext();
+  }
+
+  /**
+   * @return how many bytes may be downloaded via cellular network today.
+   */
+  public long getCellularBudgetLeft()
+  {
+    return Math.max(0, DAILY_CELLULAR_BUDGET - getCellularBytesUsed());
+  }
+
+  public void onConnectivityChanged()
+  {
+    if (mCurrent != null && !ConnectionState.isWifiConnected() && mLeftToDownload > getCellularBudgetLeft())
+      pauseCurrent();
+
+    startNext();
+  }
+
+  /**
+   * Stops current download and returns it to the head of the queue.
+   * Core keeps partially downloaded file and registers completely downloaded ones, so the download continues
+   * from the same place.
+   */
+  private void pauseCurrent()
+  {
+    final Task task = mCurrent;
+    saveCellularBytes();
+    mCurrent = null;
+    mQueue.addFirst(task);
+    ActiveCountryTree.pauseDownloadingForIndex(task.index);
+  }
+
+  private Task find(Index index)
+  {
+    if (mCurrent != null && mCurrent.index.equals(index))
+      return mCurrent;
+
+    for (Task task : mQueue)
+      if (task.index.equals(index))
+        return task;
+
+    return null;
+  }
+
+  private static long today()
+  {
+    return System.currentTimeMillis() / DateUtils.DAY_IN_MILLIS;
+  }
+
+  private static long getSavedCellularBytes()
+  {
+    final SharedPreferences prefs = MwmApplication.prefs();
+    return (prefs.getLong(PREF_CELLULAR_DAY, 0) == today() ? prefs.getLong(PREF_CELLULAR_BYTES, 0) : 0);
+  }
+
+  private long getCellularBytesUsed()
+  {
+    return getSavedCellularBytes() + mUnsavedCellularBytes;
+  }
+
+  private void saveCellularBytes()
+  {
+    if (mUnsavedCellularBytes == 0)
+      return;
+
+    MwmApplication.prefs().edit()
+                  .putLong(PREF_CELLULAR_DAY, today())
+                  .putLong(PREF_CELLULAR_BYTES, getCellularBytesUsed())
+                  .apply();
+    mUnsavedCellularBytes = 0;
+  }
+
+  private static long getSize(Task task)
+  {
+    return MapStorage.INSTANCE.countryRemoteSizeInBytes(task.index, task.options);
+  }
+
+  private boolean canStart(Task task)
+  {
+    if (ConnectionState.isWifiConnected())
+      return true;
+
+    return ConnectionState.is3gConnected() && getSize(task) <= getCellularBudgetLeft();
+  }
+
+  /**
+   * @return country under the viewport if it can be started, otherwise the first one which can.
+   */
+  private Task takeNext()
+  {
+    if (!ConnectionState.isConnected())
+      return null;
+
+    final String viewportCountry = Framework.nativeGetViewportCountryNameIfAbsent();
+    Task res = null;
+    for (Task task : mQueue)
+    {
+      if (!canStart(task))
+        continue;
+
+      if (viewportCountry != null && viewportCountry.equals(MapStorage.INSTANCE.countryName(task.index)))
+      {
+        res = task;
+        break;
+      }
+
+      if (res == null)
+      {
+        res = task;
+        if (viewportCountry == null)
+          break;
+      }
+    }
+
+    if (res != null)
+      mQueue.remove(res);
+
+    return res;
+  }
+
+  private static boolean isDownloading(Task task)
+  {
+    final int status = MapStorage.INSTANCE.countryStatus(task.index);
+    return (status == MapStorage.DOWNLOADING || status == MapStorage.IN_QUEUE);
+  }
+
+  private void startNext()
+  {
+    // Countries downloaded by user directly are not interrupted.
+    if (mCurrent != null || mQueue.isEmpty() || ActiveCountryTree.isDownloadingActive())
+      return;
+
+    Task task;
+    while ((task = takeNext()) != null)
+    {
+      if (isDownloading(task))
+        continue;
+
+      // Country paused after its map was downloaded is on disk, but still needs routing file.
+      // Core skips files which are already on disk and doesn't start anything if nothing is left.
+      mCurrent = task;
+      mLastDownloaded = -1;
+      mLeftToDownload = getSize(task);
+      ActiveCountryTree.downloadMapForIndex(task.index, task.options);
+      if (isDownloading(task))
+        return;
+
+      mCurrent = null;
+    }
+  }
+
+  @Override
+  public void onCountryProgressChanged(int group, int position, long[] sizes)
+  {
+    if (mCurrent == null || !mCurrent.index.equals(ActiveCountryTree.getCoreIndex(group, position)))
+      return;
+
+    // Progress is tracked on Wi-Fi too, so that switch to cellular network doesn't count everything downloaded before.
+    // First update of the resumed download includes previously downloaded part, so it's skipped.
+    final long downloaded = sizes[0];
+    if (mLastDownloaded >= 0 && downloaded > mLastDownloaded && !ConnectionState.isWifiConnected())
+    {
+      mUnsavedCellularBytes += downloaded - mLastDownloaded;
+      if (mUnsavedCellularBytes >= CELLULAR_SAVE_BYTES)
+        saveCellularBytes();
+    }
+
+    mLastDownloaded = downloaded;
+    mLeftToDownload = sizes[1] - downloaded;
+  }
+
+  @Override
+  public void onCountryStatusChanged(int group, int position, int oldStatus, int newStatus)
+  {
+    if (mCurrent != null && mCurrent.index.equals(ActiveCountryTree.getCoreIndex(group, position)))
+    {
+      switch (newStatus)
+      {
+      case MapStorage.DOWNLOADING:
+      case MapStorage.IN_QUEUE:
+        return;
+
+      case MapStorage.DOWNLOAD_FAILED:
+        // Partially downloaded files are kept by the core on failure, so download will continue from the same place.
+        if (!ConnectionState.isConnected())
+          mQueue.addFirst(mCurrent);
+        break;
+      }
+
+      saveCellularBytes();
+      mCurrent = null;
+    }
+
+    startNext();
+  }
+
+  @Override
+  public void onCountryGroupChanged(int oldGroup, int oldPosition, int newGroup, int newPosition) {}
+
+  @Override
+  public void onCountryOptionsChanged(int group, int position, int newOptions, int requestOptions) {}
+}
@@ -0,0 +1,186 @@
+package com.mapswithme.maps.downloader;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Opens download connections so that sockets are reused across chunks and files of the same host.
+ * Sockets are kept by the platform HTTP keep-alive pool, which is configured by {@link #setupKeepAlive()}.
+ * Connection whose response was completely read is returned to that pool, otherwise it's disconnected.
+ * <p/>
+ * HttpURLConnection doesn't report whether the socket was reused, so reuse is only estimated by tracking
+ * sockets released to the pool per host. The estimate is too high if the pool drops sockets on its own,
+ * e.g. when the server closes them or network changes.
+ */
+public enum HttpConnectionManager
+{
+  INSTANCE;
+
+  // Should not be less than maximum number of parallel download connections.
+  private static final int MAX_IDLE_CONNECTIONS = 8;
+  private static final long KEEP_ALIVE_MILLIS = 5 * 60 * 1000;
+
+  public static class HostStats
+  {
+    private int mRequests;
+    private int mReused;
+    private long mTotalTtfbMillis;
+    private int mResponses;
+    // Release times of connections which are believed to be idle in the pool.
+    private final long[] mIdle = new long[MAX_IDLE_CONNECTIONS];
+    private int mIdleCount;
+
+    public int getRequests()
+    {
+      return mRequests;
+    }
+
+    /**
+     * @return estimated number of requests made through reused sockets.
+     */
+    public int getReused()
+    {
+      return mReused;
+    }
+
+    /**
+     * @return estimated part of requests made through reused sockets.
+     */
+    public double getReuseRate()
+    {
+      return (mRequests == 0 ? 0 : (double) mReused / mRequests);
+    }
+
+    /**
+     * @return average time from opening connection to receiving response headers in milliseconds.
+     */
+    public long getAverageTtfb()
+    {
+      return (mResponses == 0 ? 0 : mTotalTtfbMillis / mResponses);
+    }
+
+    private boolean takeIdle(long now)
+    {
+      while (mIdleCount > 0)
+      {
+        // Take the most recently released connection, the same way platform pool does.
+        mIdleCount--;
+        if (now - mIdle[mIdleCount] < KEEP_ALIVE_MILLIS)
+          return true;
+      }
+
+      return false;
+    }
+
+    private void putIdle(long now)
+    {
+      if (mIdleCount == mIdle.length)
+      {
+        // Pool evicts the oldest connection.
+        System.arraycopy(mIdle, 1, mIdle, 0, mIdle.length - 1);
+        mIdleCount--;
+      }
+
+      mIdle[mIdleCount++] = now;
+    }
+  }
+
+  private final Map<String, HostStats> mStats = new HashMap<>();
+
+  /**
+   * Configures the platform keep-alive pool. Should be called before any HTTP connection is opened in the process,
+   * as the pool reads these properties when it's created.
+   */
+  public static void setupKeepAlive()
+  {
+    System.setProperty("http.keepAlive", "true");
+    System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+    System.setProperty("http.keepAliveDuration", String.valueOf(KEEP_ALIVE_MILLIS));
+  }
+
+  HttpURLConnection open(URL url) throws IOException
+  {
+    final HttpURLConnection res = (HttpURLConnection) url.openConnection();
+
+    synchronized (mStats)
+    {
+      final HostStats stats = getStats(url.getHost());
+      stats.mRequests++;
+      if (stats.takeIdle(SystemClock.elapsedRealtime()))
+        stats.mReused++;
+    }
+
+    return res;
+  }
+
+  /**
+   * Records time to first byte, call it right after response code is received.
+   */
+  void onResponse(HttpURLConnection connection, long ttfbMillis)
+  {
+    synchronized (mStats)
+    {
+      final HostStats stats = getStats(connection.getURL().getHost());
+      stats.mResponses++;
+      stats.mTotalTtfbMillis += ttfbMillis;
+    }
+  }
+
+  /**
+   * @param responseConsumed whether response body was read till the end and stream was closed.
+   *                         Only such connections can be reused, others are disconnected.
+   */
+  void release(HttpURLConnection connection, boolean responseConsumed)
+  {
+    if (!responseConsumed)
+    {
+      connection.disconnect();
+      return;
+    }
+
+    synchronized (mStats)
+    {
+      getStats(connection.getURL().getHost()).putIdle(SystemClock.elapsedRealtime());
+    }
+  }
+
+  private HostStats getStats(String host)
+  {
+    HostStats res = mStats.get(host);
+    if (res == null)
+    {
+      res = new HostStats();
+      mStats.put(host, res);
+    }
+
+    return res;
+  }
+
+  /**
+   * @return copy of connection statistics by host names.
+   */
+  public Map<String, HostStats> getStats()
+  {
+    final Map<String, HostStats> res = new HashMap<>();
+    synchronized (mStats)
+    {
+      for (Map.Entry<String, HostStats> entry : mStats.entrySet())
+      {
+        final HostStats src = entry.getValue();
+        final HostStats copy = new HostStats();
+        copy.mRequests = src.mRequests;
+        copy.mReused = src.mReused;
+        copy.mTotalTtfbMillis = src.mTotalTtfbMillis;
+        copy.mResponses = src.mResponses;
+        res.put(entry.getKey(), copy);
+      }
+    }
+
+    return res;
+  }
+}
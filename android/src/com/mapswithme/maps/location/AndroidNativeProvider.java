@@ -16,6 +16,7 @@ public class AndroidNativeProvider extends BaseLocationProvider implements andro
 {
   private LocationManager mLocationManager;
   private boolean mIsActive;
+  private List<String> mProviders;
 
   public AndroidNativeProvider()
   {
@@ -35,8 +36,8 @@ public class AndroidNativeProvider extends BaseLocationProvider implements andro
     else
     {
       mIsActive = true;
-      for (final String provider : providers)
-        mLocationManager.requestLocationUpdates(provider, LOCATION_UPDATE_INTERVAL, 0, this);
+      mProviders = providers;
+      requestUpdates();
 
       LocationHelper.INSTANCE.registerSensorListeners();
 
@@ -60,6 +61,21 @@ public class AndroidNativeProvider extends BaseLocationProvider implements andro
     mIsActive = false;
   }
 
+  @Override
+  protected void onPowerModeChanged()
+  {
+    // New request replaces the previous one for the same listener and provider, GPS is not turned off meanwhile.
+    if (mIsActive)
+      requestUpdates();
+  }
+
+  private void requestUpdates()
+  {
+    final long interval = getPowerMode().interval;
+    for (final String provider : mProviders)
+      mLocationManager.requestLocationUpdates(provider, interval, 0, this);
+  }
+
   private Location findBestNotExpiredLocation(List<String> providers)
   {
     Location res = null;
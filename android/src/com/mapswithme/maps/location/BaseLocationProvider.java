@@ -9,7 +9,6 @@ import com.mapswithme.util.log.SimpleLogger;
 
 public abstract class BaseLocationProvider
 {
-  protected static final long LOCATION_UPDATE_INTERVAL = 500;
   public static final double DEFAULT_SPEED_MPS = 5;
   public static final float DISTANCE_TO_RECREATE_MAGNETIC_FIELD_M = 1000;
 
@@ -19,6 +18,27 @@ public abstract class BaseLocationProvider
 
   protected abstract void stopUpdates();
 
+  private LocationPowerManager.Mode mPowerMode = LocationPowerManager.Mode.DRIVING;
+
+  protected LocationPowerManager.Mode getPowerMode()
+  {
+    return mPowerMode;
+  }
+
+  void setPowerMode(LocationPowerManager.Mode mode)
+  {
+    if (mode == mPowerMode)
+      return;
+
+    mPowerMode = mode;
+    onPowerModeChanged();
+  }
+
+  /**
+   * Should re-request running updates with interval and accuracy of the new {@link #getPowerMode()}.
+   */
+  protected abstract void onPowerModeChanged();
+
   protected boolean isLocationBetterThanLast(Location newLocation)
   {
     if (newLocation == null)
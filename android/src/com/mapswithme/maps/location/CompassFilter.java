@@ -0,0 +1,101 @@
+package com.mapswithme.maps.location;
+
+import android.hardware.SensorManager;
+
+import com.mapswithme.util.LocationUtils;
+
+/**
+ * Turns raw accelerometer and magnetometer readings into magnetic heading.
+ * Readings are smoothed by low-pass filter: O(n) = O(n - 1) + k * (I - O(n - 1)),
+ * heading is reported only when it differs from the last reported one by more than the threshold.
+ * <p/>
+ * Doesn't allocate. Not thread-safe, should be used from the sensor thread only.
+ */
+class CompassFilter
+{
+  private final float mSmoothing;
+  private final double mThreshold;
+
+  private final float[] mGravity = new float[3];
+  private final float[] mGeomagnetic = new float[3];
+  private boolean mHasGravity;
+  private boolean mHasGeomagnetic;
+
+  private final float[] mR = new float[9];
+  private final float[] mI = new float[9];
+  private final float[] mOrientation = new float[3];
+
+  private double mHeading;
+  private boolean mHasHeading;
+
+  /**
+   * @param smoothing factor k of the low-pass filter in (0, 1], 1 turns the filter off.
+   * @param thresholdDegrees minimal change of heading to report.
+   */
+  CompassFilter(float smoothing, double thresholdDegrees)
+  {
+    mSmoothing = smoothing;
+    mThreshold = Math.toRadians(thresholdDegrees);
+  }
+
+  void reset()
+  {
+    mHasGravity = false;
+    mHasGeomagnetic = false;
+    mHasHeading = false;
+  }
+
+  private void smooth(float[] values, float[] state, boolean initialized)
+  {
+    for (int i = 0; i < state.length; i++)
+      state[i] = (initialized ? state[i] + mSmoothing * (values[i] - state[i]) : values[i]);
+  }
+
+  void onAccelerometer(float[] values)
+  {
+    smooth(values, mGravity, mHasGravity);
+    mHasGravity = true;
+  }
+
+  /**
+   * Heading is recalculated on magnetometer readings only: gravity alone just tilts the device
+   * and both sensors are delivered at the same rate, so this halves the work.
+   *
+   * @return true if heading has changed significantly, new value is returned by {@link #getHeading()}.
+   */
+  boolean onMagnetometer(float[] values)
+  {
+    smooth(values, mGeomagnetic, mHasGeomagnetic);
+    mHasGeomagnetic = true;
+
+    if (!mHasGravity || !SensorManager.getRotationMatrix(mR, mI, mGravity, mGeomagnetic))
+      return false;
+
+    SensorManager.getOrientation(mR, mOrientation);
+    final double heading = LocationUtils.correctAngle(mOrientation[0], 0.0);
+    if (mHasHeading && Math.abs(getShortestDistance(mHeading, heading)) < mThreshold)
+      return false;
+
+    mHeading = heading;
+    mHasHeading = true;
+    return true;
+  }
+
+  private static double getShortestDistance(double from, double to)
+  {
+    final double diff = (to - from) % (2.0 * Math.PI);
+    if (diff > Math.PI)
+      return diff - 2.0 * Math.PI;
+    if (diff < -Math.PI)
+      return diff + 2.0 * Math.PI;
+    return diff;
+  }
+
+  /**
+   * @return magnetic heading in radians, [0, 2PI).
+   */
+  double getHeading()
+  {
+    return mHeading;
+  }
+}
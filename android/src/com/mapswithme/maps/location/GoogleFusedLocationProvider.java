@@ -30,8 +30,14 @@ public class GoogleFusedLocationProvider extends BaseLocationProvider
 
     mLocationRequest = LocationRequest.create();
     mLocationRequest.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
-    mLocationRequest.setInterval(LOCATION_UPDATE_INTERVAL);
-    mLocationRequest.setFastestInterval(LOCATION_UPDATE_INTERVAL / 2);
+    setupLocationRequest();
+  }
+
+  private void setupLocationRequest()
+  {
+    final long interval = getPowerMode().interval;
+    mLocationRequest.setInterval(interval);
+    mLocationRequest.setFastestInterval(interval / 2);
   }
 
   @Override
@@ -52,6 +58,15 @@ public class GoogleFusedLocationProvider extends BaseLocationProvider
     }
   }
 
+  @Override
+  protected void onPowerModeChanged()
+  {
+    setupLocationRequest();
+    // New request replaces the previous one for the same listener.
+    if (mGoogleApiClient != null && mGoogleApiClient.isConnected())
+      LocationServices.FusedLocationApi.requestLocationUpdates(mGoogleApiClient, mLocationRequest, this);
+  }
+
   @Override
   protected boolean isLocationBetterThanLast(Location newLocation)
   {
@@ -0,0 +1,163 @@
+package com.mapswithme.maps.location;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary GPS trace.
+ * Header: magic "MWMT", version byte, start time (long, UTC milliseconds).
+ * Then 18 bytes per fix, big endian:
+ * <ul>
+ * <li>int: milliseconds since the previous fix (since start for the first one);</li>
+ * <li>int, int: latitude and longitude in 1e-7 degrees;</li>
+ * <li>short: accuracy in decimeters;</li>
+ * <li>short: speed in cm/s, -1 if unknown;</li>
+ * <li>short: bearing in tenths of degree, -1 if unknown.</li>
+ * </ul>
+ * Doesn't depend on Android, so traces can be read by tools on a desktop JVM.
+ */
+public class GpsTrace
+{
+  public static final String EXTENSION = ".mwmtrace";
+
+  private static final int MAGIC = 0x4D574D54;
+  private static final int VERSION = 1;
+  private static final double COORD_FACTOR = 1e7;
+
+  public static class Fix
+  {
+    // UTC milliseconds.
+    public final long time;
+    public final double lat;
+    public final double lon;
+    public final double accuracy;
+    // Negative if unknown.
+    public final double speed;
+    public final double bearing;
+
+    public Fix(long time, double lat, double lon, double accuracy, double speed, double bearing)
+    {
+      this.time = time;
+      this.lat = lat;
+      this.lon = lon;
+      this.accuracy = accuracy;
+      this.speed = speed;
+      this.bearing = bearing;
+    }
+
+    public boolean hasSpeed()
+    {
+      return speed >= 0;
+    }
+
+    public boolean hasBearing()
+    {
+      return bearing >= 0;
+    }
+  }
+
+  public static class Writer
+  {
+    private final DataOutputStream mOut;
+    private long mLastTime;
+
+    /**
+     * @param startTime UTC milliseconds, usually time of the first fix.
+     */
+    public Writer(OutputStream out, long startTime) throws IOException
+    {
+      mOut = new DataOutputStream(out);
+      mOut.writeInt(MAGIC);
+      mOut.writeByte(VERSION);
+      mOut.writeLong(startTime);
+      mLastTime = startTime;
+    }
+
+    private static short clamp(long value)
+    {
+      return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    /**
+     * Fixes should go in order of time, negative speed or bearing mean unknown.
+     */
+    public void write(long time, double lat, double lon, double accuracy, double speed, double bearing) throws IOException
+    {
+      mOut.writeInt((int) Math.max(0, time - mLastTime));
+      mOut.writeInt((int) Math.round(lat * COORD_FACTOR));
+      mOut.writeInt((int) Math.round(lon * COORD_FACTOR));
+      mOut.writeShort(clamp(Math.round(accuracy * 10)));
+      mOut.writeShort(speed < 0 ? -1 : clamp(Math.round(speed * 100)));
+      mOut.writeShort(bearing < 0 ? -1 : clamp(Math.round(bearing * 10)) % 3600);
+      mLastTime = Math.max(mLastTime, time);
+    }
+
+    public void flush() throws IOException
+    {
+      mOut.flush();
+    }
+
+    public void close() throws IOException
+    {
+      mOut.close();
+    }
+  }
+
+  /**
+   * Reads all fixes of the trace. Truncated last fix, left by interrupted recording, is ignored.
+   *
+   * @throws IOException if stream is not a trace.
+   */
+  public static List<Fix> read(InputStream in) throws IOException
+  {
+    final DataInputStream data = new DataInputStream(in);
+    if (data.readInt() != MAGIC)
+      throw new IOException("Not a GPS trace");
+
+    final int version = data.readUnsignedByte();
+    if (version != VERSION)
+      throw new IOException("Unsupported GPS trace version " + version);
+
+    long time = data.readLong();
+    final List<Fix> res = new ArrayList<>();
+    try
+    {
+      while (true)
+      {
+        time += data.readInt();
+        final double lat = data.readInt() / COORD_FACTOR;
+        final double lon = data.readInt() / COORD_FACTOR;
+        final double accuracy = data.readShort() / 10.0;
+        final short speed = data.readShort();
+        final short bearing = data.readShort();
+        res.add(new Fix(time, lat, lon, accuracy, speed < 0 ? -1 : speed / 100.0, bearing < 0 ? -1 : bearing / 10.0));
+      }
+    } catch (EOFException ignored) {}
+
+    return res;
+  }
+
+  /**
+   * @return true if the stream starts with trace header. Stream should support mark.
+   */
+  public static boolean isTrace(InputStream in) throws IOException
+  {
+    in.mark(4);
+    try
+    {
+      return new DataInputStream(in).readInt() == MAGIC;
+    } catch (EOFException e)
+    {
+      return false;
+    } finally
+    {
+      in.reset();
+    }
+  }
+}
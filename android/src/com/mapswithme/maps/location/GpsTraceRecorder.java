@@ -0,0 +1,140 @@
+package com.mapswithme.maps.location;
+
+import android.location.Location;
+import android.preference.PreferenceManager;
+
+import com.mapswithme.maps.MwmApplication;
+import com.mapswithme.maps.R;
+import com.mapswithme.util.concurrency.ThreadPool;
+import com.mapswithme.util.log.Logger;
+import com.mapswithme.util.log.SimpleLogger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Writes received fixes to {@link GpsTrace} files in {@link #getTracesDir()}, a file per location session.
+ * Enabled from debug settings. Files are written on the storage thread.
+ */
+public enum GpsTraceRecorder
+{
+  INSTANCE;
+
+  private static final Logger sLogger = SimpleLogger.get(GpsTraceRecorder.class.getName());
+  // Fixes are flushed to the file so often, so that a crash or kill loses only a few seconds of the trace.
+  private static final int FLUSH_FIXES = 10;
+
+  private Boolean mEnabled;
+  // Used on the storage thread only.
+  private GpsTrace.Writer mWriter;
+  private int mUnflushedFixes;
+
+  public static File getTracesDir()
+  {
+    return new File(MwmApplication.get().getDataStoragePath(), "gps_traces");
+  }
+
+  public boolean isEnabled()
+  {
+    if (mEnabled == null)
+    {
+      final MwmApplication app = MwmApplication.get();
+      mEnabled = PreferenceManager.getDefaultSharedPreferences(app)
+                                  .getBoolean(app.getString(R.string.pref_gps_trace_record), false);
+    }
+
+    return mEnabled;
+  }
+
+  public void setEnabled(boolean enabled)
+  {
+    mEnabled = enabled;
+    if (!enabled)
+      stop();
+  }
+
+  void onLocation(Location location)
+  {
+    if (!isEnabled())
+      return;
+
+    final long time = location.getTime();
+    final double lat = location.getLatitude();
+    final double lon = location.getLongitude();
+    final double accuracy = location.getAccuracy();
+    final double speed = location.hasSpeed() ? location.getSpeed() : -1;
+    final double bearing = location.hasBearing() ? location.getBearing() : -1;
+
+    ThreadPool.getStorage().execute(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          if (mWriter == null)
+            mWriter = open(time);
+
+          mWriter.write(time, lat, lon, accuracy, speed, bearing);
+          if (++mUnflushedFixes >= FLUSH_FIXES)
+          {
+            mWriter.flush();
+            mUnflushedFixes = 0;
+          }
+        } catch (IOException e)
+        {
+          sLogger.e("Failed to write GPS trace: ", e);
+          closeWriter();
+        }
+      }
+    });
+  }
+
+  private static GpsTrace.Writer open(long startTime) throws IOException
+  {
+    final File dir = getTracesDir();
+    if (!dir.exists() && !dir.mkdirs())
+      throw new IOException("Can't create " + dir);
+
+    final String name = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date(startTime));
+    final File file = new File(dir, name + GpsTrace.EXTENSION);
+    sLogger.d("Recording GPS trace to ", file);
+    return new GpsTrace.Writer(new BufferedOutputStream(new FileOutputStream(file)), startTime);
+  }
+
+  private void closeWriter()
+  {
+    if (mWriter == null)
+      return;
+
+    try
+    {
+      mWriter.close();
+    } catch (IOException e)
+    {
+      sLogger.e("Failed to close GPS trace: ", e);
+    }
+    mWriter = null;
+    mUnflushedFixes = 0;
+  }
+
+  /**
+   * Finishes the current file, the next fix starts a new one.
+   */
+  void stop()
+  {
+    ThreadPool.getStorage().execute(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        closeWriter();
+      }
+    });
+  }
+}
@@ -0,0 +1,298 @@
+package com.mapswithme.maps.location;
+
+/**
+ * Constant velocity Kalman filter of location fixes.
+ * Fuses positions with their accuracy and, when available, velocity given by speed and bearing.
+ * Filter works in a local plane (meters to the east and to the north of the first fix),
+ * where both axes are filtered independently.
+ * <p/>
+ * Updates and predictions don't allocate, so predictions can be requested at display rate.
+ * Not thread-safe.
+ */
+public class LocationFilter
+{
+  private static final double EARTH_RADIUS = 6378137.0;
+  // Spectral density of acceleration noise, (m/s^2)^2/Hz. Higher values follow turns and braking faster.
+  private static final double ACCELERATION_NOISE = 3.0;
+  private static final double SPEED_ERROR = 1.0;
+  private static final double BEARING_ERROR = Math.toRadians(10.0);
+  // Fix further than this number of standard deviations from the prediction restarts the filter.
+  private static final double MAX_INNOVATION = 6.0;
+  // Filter restarts after such pause between fixes.
+  private static final long MAX_GAP_MILLIS = 10000;
+  // Origin of the local plane is moved when position is so far from it.
+  private static final double MAX_OFFSET = 10000.0;
+  // Bearing of slower movement is not reliable and is taken from the last fix.
+  private static final double MIN_SPEED_FOR_BEARING = 1.0;
+
+  /**
+   * Position and velocity along one axis with their covariance.
+   */
+  private static class Axis
+  {
+    double position;
+    double velocity;
+    double pp;
+    double pv;
+    double vv;
+
+    void reset(double position, double positionVariance, double velocity, double velocityVariance)
+    {
+      this.position = position;
+      this.velocity = velocity;
+      pp = positionVariance;
+      pv = 0.0;
+      vv = velocityVariance;
+    }
+
+    void predict(double dt)
+    {
+      final double q = ACCELERATION_NOISE;
+      position += velocity * dt;
+      pp += 2.0 * dt * pv + dt * dt * vv + q * dt * dt * dt / 3.0;
+      pv += dt * vv + q * dt * dt / 2.0;
+      vv += q * dt;
+    }
+
+    /**
+     * @return distance from the predicted position to the measured one, in standard deviations.
+     */
+    double getInnovation(double z, double variance)
+    {
+      return (z - position) / Math.sqrt(pp + variance);
+    }
+
+    void updatePosition(double z, double variance)
+    {
+      final double s = pp + variance;
+      final double k0 = pp / s;
+      final double k1 = pv / s;
+      final double y = z - position;
+
+      position += k0 * y;
+      velocity += k1 * y;
+      vv -= k1 * pv;
+      pv *= 1.0 - k0;
+      pp *= 1.0 - k0;
+    }
+
+    void updateVelocity(double z, double variance)
+    {
+      final double s = vv + variance;
+      final double k0 = pv / s;
+      final double k1 = vv / s;
+      final double y = z - velocity;
+
+      position += k0 * y;
+      velocity += k1 * y;
+      pp -= k0 * pv;
+      pv *= 1.0 - k1;
+      vv *= 1.0 - k1;
+    }
+  }
+
+  private final Axis mEast = new Axis();
+  private final Axis mNorth = new Axis();
+
+  private boolean mInitialized;
+  private long mTime;
+  private double mOriginLat;
+  private double mOriginLon;
+  private double mMetersPerLon;
+  private double mLastBearing;
+
+  // Result of the last prediction.
+  private double mLatitude;
+  private double mLongitude;
+  private double mAccuracy;
+  private double mSpeed;
+  private double mBearing;
+
+  public void reset()
+  {
+    mInitialized = false;
+  }
+
+  public boolean isInitialized()
+  {
+    return mInitialized;
+  }
+
+  private void setOrigin(double lat, double lon)
+  {
+    mOriginLat = lat;
+    mOriginLon = lon;
+    mMetersPerLon = EARTH_RADIUS * Math.cos(Math.toRadians(lat)) * Math.PI / 180.0;
+  }
+
+  private double toEast(double lon)
+  {
+    return (lon - mOriginLon) * mMetersPerLon;
+  }
+
+  private double toNorth(double lat)
+  {
+    return (lat - mOriginLat) * EARTH_RADIUS * Math.PI / 180.0;
+  }
+
+  private double toLat(double north)
+  {
+    return mOriginLat + north / (EARTH_RADIUS * Math.PI / 180.0);
+  }
+
+  private double toLon(double east)
+  {
+    return mOriginLon + east / mMetersPerLon;
+  }
+
+  /**
+   * Adds a fix.
+   *
+   * @param timeMillis  time of the fix, in the same monotonic clock as passed to {@link #predict(long)}.
+   * @param accuracy    horizontal accuracy in meters.
+   * @param hasVelocity whether speed (m/s) and bearing (degrees) are known.
+   */
+  public void update(long timeMillis, double lat, double lon, double accuracy,
+                     boolean hasVelocity, double speed, double bearing)
+  {
+    final double variance = Math.max(accuracy * accuracy, 1.0);
+    final double east;
+    final double north;
+    final double velocityVariance;
+
+    if (hasVelocity)
+    {
+      mLastBearing = bearing;
+      final double lateralError = speed * BEARING_ERROR;
+      velocityVariance = SPEED_ERROR * SPEED_ERROR + lateralError * lateralError;
+    }
+    else
+      velocityVariance = 0.0;
+
+    final long gap = timeMillis - mTime;
+    if (mInitialized && gap >= 0 && gap <= MAX_GAP_MILLIS)
+    {
+      if (Math.abs(toEast(lon)) > MAX_OFFSET || Math.abs(toNorth(lat)) > MAX_OFFSET)
+        moveOrigin(lat, lon);
+
+      east = toEast(lon);
+      north = toNorth(lat);
+
+      final double dt = gap / 1000.0;
+      mEast.predict(dt);
+      mNorth.predict(dt);
+
+      if (Math.abs(mEast.getInnovation(east, variance)) <= MAX_INNOVATION &&
+          Math.abs(mNorth.getInnovation(north, variance)) <= MAX_INNOVATION)
+      {
+        mTime = timeMillis;
+        mEast.updatePosition(east, variance);
+        mNorth.updatePosition(north, variance);
+        if (hasVelocity)
+        {
+          final double b = Math.toRadians(bearing);
+          mEast.updateVelocity(speed * Math.sin(b), velocityVariance);
+          mNorth.updateVelocity(speed * Math.cos(b), velocityVariance);
+        }
+        return;
+      }
+    }
+
+    // First fix, long pause or a jump which doesn't fit the movement: start from scratch.
+    setOrigin(lat, lon);
+    mTime = timeMillis;
+    mInitialized = true;
+
+    if (hasVelocity)
+    {
+      final double b = Math.toRadians(bearing);
+      mEast.reset(0.0, variance, speed * Math.sin(b), velocityVariance);
+      mNorth.reset(0.0, variance, speed * Math.cos(b), velocityVariance);
+    }
+    else
+    {
+      // Unknown velocity, let the following fixes define it.
+      final double unknownVelocityVariance = 100.0;
+      mEast.reset(0.0, variance, 0.0, unknownVelocityVariance);
+      mNorth.reset(0.0, variance, 0.0, unknownVelocityVariance);
+    }
+  }
+
+  private void moveOrigin(double lat, double lon)
+  {
+    final double currentLat = toLat(mNorth.position);
+    final double currentLon = toLon(mEast.position);
+    setOrigin(lat, lon);
+    mEast.position = toEast(currentLon);
+    mNorth.position = toNorth(currentLat);
+  }
+
+  /**
+   * Estimates location at the given time, results are returned by getters. State of the filter is not changed.
+   *
+   * @return false if there were no fixes since the last reset.
+   */
+  public boolean predict(long timeMillis)
+  {
+    if (!mInitialized)
+      return false;
+
+    final double dt = Math.max(0, timeMillis - mTime) / 1000.0;
+    final double east = mEast.position + mEast.velocity * dt;
+    final double north = mNorth.position + mNorth.velocity * dt;
+
+    mLatitude = toLat(north);
+    mLongitude = toLon(east);
+
+    final double dt2 = dt * dt;
+    final double eastVariance = mEast.pp + 2.0 * dt * mEast.pv + dt2 * mEast.vv;
+    final double northVariance = mNorth.pp + 2.0 * dt * mNorth.pv + dt2 * mNorth.vv;
+    mAccuracy = Math.sqrt(eastVariance + northVariance);
+
+    mSpeed = Math.hypot(mEast.velocity, mNorth.velocity);
+    if (mSpeed < MIN_SPEED_FOR_BEARING)
+      mBearing = mLastBearing;
+    else
+    {
+      mBearing = Math.toDegrees(Math.atan2(mEast.velocity, mNorth.velocity));
+      if (mBearing < 0.0)
+        mBearing += 360.0;
+    }
+
+    return true;
+  }
+
+  public double getLatitude()
+  {
+    return mLatitude;
+  }
+
+  public double getLongitude()
+  {
+    return mLongitude;
+  }
+
+  /**
+   * @return estimated position error in meters.
+   */
+  public double getAccuracy()
+  {
+    return mAccuracy;
+  }
+
+  /**
+   * @return speed in m/s.
+   */
+  public double getSpeed()
+  {
+    return mSpeed;
+  }
+
+  /**
+   * @return bearing in degrees clockwise from the north, [0, 360).
+   */
+  public double getBearing()
+  {
+    return mBearing;
+  }
+}
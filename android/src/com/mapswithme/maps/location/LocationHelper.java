@@ -9,6 +9,10 @@ import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.location.Location;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.provider.Settings;
 import android.support.annotation.NonNull;
@@ -17,14 +21,16 @@ import android.util.Log;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
+import com.mapswithme.maps.Framework;
 import com.mapswithme.maps.MwmApplication;
 import com.mapswithme.maps.R;
+import com.mapswithme.util.Listeners;
 import com.mapswithme.util.LocationUtils;
+import com.mapswithme.util.Proc;
 import com.mapswithme.util.concurrency.UiThread;
 import com.mapswithme.util.log.Logger;
 import com.mapswithme.util.log.SimpleLogger;
-
-import java.util.HashSet;
+import com.mapswithme.util.statistics.Statistics;
 
 public enum LocationHelper implements SensorEventListener
 {
@@ -39,6 +45,9 @@ public enum LocationHelper implements SensorEventListener
 
   public static final String LOCATION_PREDICTOR_PROVIDER = "LocationPredictorProvider";
   private static final long STOP_DELAY = 5000;
+  // Low-pass factor of sensor readings and minimal heading change to notify about.
+  private static final float COMPASS_SMOOTHING = 0.15f;
+  private static final double COMPASS_THRESHOLD_DEGREES = 1.0;
 
   public interface LocationListener
   {
@@ -49,7 +58,62 @@ public enum LocationHelper implements SensorEventListener
     void onLocationError(int errorCode);
   }
 
-  private final HashSet<LocationListener> mListeners = new HashSet<>();
+  // Listeners may be added and removed from any thread, they are notified on UI thread.
+  private final Listeners<LocationListener> mListeners = new Listeners<>();
+  // Whether providers were started for the listeners, used on UI thread only.
+  private boolean mUpdatesStarted;
+
+  // Arguments of notifications for reused procedures below, used on UI thread only.
+  private int mErrorCode;
+  private long mNotifyCompassTime;
+  private double mMagneticNorth;
+  private double mTrueNorth;
+  private double mCompassAccuracy;
+
+  private final Proc<LocationListener> mLocationUpdatedProc = new Proc<LocationListener>()
+  {
+    @Override
+    public void invoke(LocationListener listener)
+    {
+      listener.onLocationUpdated(mLastLocation);
+    }
+  };
+
+  private final Proc<LocationListener> mLocationErrorProc = new Proc<LocationListener>()
+  {
+    @Override
+    public void invoke(LocationListener listener)
+    {
+      listener.onLocationError(mErrorCode);
+    }
+  };
+
+  private final Proc<LocationListener> mCompassUpdatedProc = new Proc<LocationListener>()
+  {
+    @Override
+    public void invoke(LocationListener listener)
+    {
+      listener.onCompassUpdated(mNotifyCompassTime, mMagneticNorth, mTrueNorth, mCompassAccuracy);
+    }
+  };
+
+  private final Runnable mListenerAddedTask = new UiThread.UiRunnable()
+  {
+    @Override
+    protected void runUi()
+    {
+      onListenerAdded();
+    }
+  };
+
+  private final Runnable mListenerRemovedTask = new UiThread.UiRunnable()
+  {
+    @Override
+    protected void runUi()
+    {
+      onListenerRemoved();
+    }
+  };
 
   private Location mLastLocation;
   private long mLastLocationTime;
@@ -59,21 +123,61 @@ public enum LocationHelper implements SensorEventListener
   private Sensor mMagnetometer;
   private GeomagneticField mMagneticField;
   private BaseLocationProvider mLocationProvider;
+  private final LocationPowerManager mPowerManager = new LocationPowerManager();
+
+  // Sensor events are delivered and filtered on this thread, listeners are notified on UI thread.
+  private Handler mSensorHandler;
+  private final CompassFilter mCompassFilter = new CompassFilter(COMPASS_SMOOTHING, COMPASS_THRESHOLD_DEGREES);
+  // Last heading passed from the sensor thread, guarded by mNotifyCompassTask.
+  private long mCompassTime;
+  private double mCompassHeading;
+  private boolean mCompassPending;
 
-  private float[] mGravity;
-  private float[] mGeomagnetic;
-  private final float[] mR = new float[9];
-  private final float[] mI = new float[9];
-  private final float[] mOrientation = new float[3];
+  private final Runnable mNotifyCompassTask = new Runnable()
+  {
+    @Override
+    public void run()
+    {
+      final long time;
+      final double heading;
+      synchronized (this)
+      {
+        time = mCompassTime;
+        heading = mCompassHeading;
+        mCompassPending = false;
+      }
+
+      notifyCompassUpdated(time, heading);
+    }
+  };
+
+  private final Runnable mResetCompassTask = new Runnable()
+  {
+    @Override
+    public void run()
+    {
+      mCompassFilter.reset();
+    }
+  };
 
   private Runnable mStopLocationTask = new Runnable() {
     @Override
     public void run()
     {
+      if (!mListeners.isEmpty() || !mUpdatesStarted)
+        return;
+
+      mUpdatesStarted = false;
       mLocationProvider.stopUpdates();
       mMagneticField = null;
+      reportPowerStatistics();
+      GpsTraceRecorder.INSTANCE.stop();
       if (mSensorManager != null)
+      {
         mSensorManager.unregisterListener(LocationHelper.this);
+        if (mSensorHandler != null)
+          mSensorHandler.post(mResetCompassTask);
+      }
     }
   };
 
@@ -115,7 +219,13 @@ public enum LocationHelper implements SensorEventListener
       }
     }
 
-    if (isLocationTurnedOn &&
+    final ReplayLocationProvider replayProvider = ReplayLocationProvider.create();
+    if (replayProvider != null)
+    {
+      mLogger.d("Use replay provider.");
+      mLocationProvider = replayProvider;
+    }
+    else if (isLocationTurnedOn &&
         !forceNativeProvider &&
         GoogleApiAvailability.getInstance().isGooglePlayServicesAvailable(application) == ConnectionResult.SUCCESS &&
         PreferenceManager.getDefaultSharedPreferences(application).getBoolean(application.getString(R.string.pref_play_services), false))
@@ -129,6 +239,7 @@ public enum LocationHelper implements SensorEventListener
       mLocationProvider = new AndroidNativeProvider();
     }
 
+    mLocationProvider.setPowerMode(mPowerManager.getMode());
     if (!mListeners.isEmpty())
       mLocationProvider.startUpdates();
   }
@@ -141,46 +252,117 @@ public enum LocationHelper implements SensorEventListener
   {
     mLastLocation = loc;
     mLastLocationTime = System.currentTimeMillis();
+    if (!(mLocationProvider instanceof ReplayLocationProvider))
+      GpsTraceRecorder.INSTANCE.onLocation(loc);
+    if (mPowerManager.onLocation(SystemClock.elapsedRealtime(), loc.hasSpeed(), loc.getSpeed(),
+                                 Framework.nativeIsRoutingActive()))
+      applyPowerMode();
+
     notifyLocationUpdated();
   }
 
+  /**
+   * Should be called when route following starts or stops, so that location rate is changed without delay.
+   */
+  public void onRoutingStateChanged()
+  {
+    if (mPowerManager.setRoutingActive(SystemClock.elapsedRealtime(), Framework.nativeIsRoutingActive()))
+      applyPowerMode();
+  }
+
+  private void applyPowerMode()
+  {
+    mLogger.d("Location power mode: ", mPowerManager.getMode());
+    mLocationProvider.setPowerMode(mPowerManager.getMode());
+  }
+
+  private void reportPowerStatistics()
+  {
+    final long now = SystemClock.elapsedRealtime();
+    if (mPowerManager.getTotalFixes() > 0)
+      Statistics.INSTANCE.trackLocationPower(mPowerManager, now);
+    mPowerManager.clearStatistics(now);
+  }
+
   void notifyLocationUpdated()
   {
     if (mLastLocation == null)
       return;
 
-    for (LocationListener listener : mListeners)
-      listener.onLocationUpdated(mLastLocation);
+    mListeners.forEach(mLocationUpdatedProc);
   }
 
   void notifyLocationError(int errCode)
   {
-    for (LocationListener listener : mListeners)
-      listener.onLocationError(errCode);
+    mErrorCode = errCode;
+    mListeners.forEach(mLocationErrorProc);
   }
 
   private void notifyCompassUpdated(long time, double magneticNorth, double trueNorth, double accuracy)
   {
-    for (LocationListener listener : mListeners)
-      listener.onCompassUpdated(time, magneticNorth, trueNorth, accuracy);
+    mNotifyCompassTime = time;
+    mMagneticNorth = magneticNorth;
+    mTrueNorth = trueNorth;
+    mCompassAccuracy = accuracy;
+    mListeners.forEach(mCompassUpdatedProc);
+  }
+
+  private void notifyCompassUpdated(long time, double magneticHeading)
+  {
+    if (mMagneticField == null)
+      notifyCompassUpdated(time, magneticHeading, -1.0, -1.0); // -1.0 - as default parameters
+    else
+    {
+      // positive 'offset' means the magnetic field is rotated east that match from true north
+      final double offset = Math.toRadians(mMagneticField.getDeclination());
+      final double trueHeading = LocationUtils.correctAngle(magneticHeading, offset);
+
+      notifyCompassUpdated(time, magneticHeading, trueHeading, offset);
+    }
   }
 
+  /**
+   * May be called from any thread. If called from UI thread, the last location is delivered before return.
+   */
   public void addLocationListener(LocationListener listener)
   {
-    UiThread.cancelDelayedTasks(mStopLocationTask);
-    if (mListeners.isEmpty())
-      mLocationProvider.startUpdates();
     mListeners.add(listener);
-    notifyLocationUpdated();
+    mListenerAddedTask.run();
   }
 
+  /**
+   * May be called from any thread. Notifications started after return don't reach the listener.
+   */
   public void removeLocationListener(LocationListener listener)
   {
-    mListeners.remove(listener);
+    if (mListeners.remove(listener))
+      mListenerRemovedTask.run();
+  }
+
+  private void onListenerAdded()
+  {
     if (mListeners.isEmpty())
-      // Make a delay with disconnection from location providers, so that orientation changes and short app sleeps
-      // doesn't take long time to connect again.
-      UiThread.runLater(mStopLocationTask, STOP_DELAY);
+      return;
+
+    UiThread.cancelDelayedTasks(mStopLocationTask);
+    if (!mUpdatesStarted)
+    {
+      mUpdatesStarted = true;
+      mLocationProvider.startUpdates();
+    }
+
+    notifyLocationUpdated();
+  }
+
+  private void onListenerRemoved()
+  {
+    if (!mListeners.isEmpty() || !mUpdatesStarted)
+      return;
+
+    // Make a delay with disconnection from location providers, so that orientation changes and short app sleeps
+    // doesn't take long time to connect again.
+    UiThread.cancelDelayedTasks(mStopLocationTask);
+    UiThread.runLater(mStopLocationTask, STOP_DELAY);
   }
 
   void registerSensorListeners()
@@ -189,55 +371,53 @@ public enum LocationHelper implements SensorEventListener
     {
       final int COMPASS_REFRESH_MKS = SensorManager.SENSOR_DELAY_UI;
 
+      if (mSensorHandler == null)
+      {
+        final HandlerThread thread = new HandlerThread("Compass", Process.THREAD_PRIORITY_DISPLAY);
+        thread.start();
+        mSensorHandler = new Handler(thread.getLooper());
+      }
+
       if (mAccelerometer != null)
-        mSensorManager.registerListener(this, mAccelerometer, COMPASS_REFRESH_MKS);
+        mSensorManager.registerListener(this, mAccelerometer, COMPASS_REFRESH_MKS, mSensorHandler);
       if (mMagnetometer != null)
-        mSensorManager.registerListener(this, mMagnetometer, COMPASS_REFRESH_MKS);
+        mSensorManager.registerListener(this, mMagnetometer, COMPASS_REFRESH_MKS, mSensorHandler);
     }
   }
 
+  /**
+   * Called on the sensor thread.
+   */
   @Override
   public void onSensorChanged(SensorEvent event)
   {
-    boolean hasOrientation = false;
-
     switch (event.sensor.getType())
     {
     case Sensor.TYPE_ACCELEROMETER:
-      mGravity = nativeUpdateCompassSensor(0, event.values);
+      mCompassFilter.onAccelerometer(event.values);
       break;
     case Sensor.TYPE_MAGNETIC_FIELD:
-      mGeomagnetic = nativeUpdateCompassSensor(1, event.values);
+      if (mCompassFilter.onMagnetometer(event.values))
+        postCompassUpdated(event.timestamp, mCompassFilter.getHeading());
       break;
     }
+  }
 
-    if (mGravity != null && mGeomagnetic != null)
-    {
-      if (SensorManager.getRotationMatrix(mR, mI, mGravity, mGeomagnetic))
-      {
-        hasOrientation = true;
-        SensorManager.getOrientation(mR, mOrientation);
-      }
-    }
-
-    if (hasOrientation)
+  private void postCompassUpdated(long time, double heading)
+  {
+    synchronized (mNotifyCompassTask)
     {
-      final double magneticHeading = LocationUtils.correctAngle(mOrientation[0], 0.0);
-
-      if (mMagneticField == null)
-        notifyCompassUpdated(event.timestamp, magneticHeading, -1.0, -1.0); // -1.0 - as default parameters
-      else
-      {
-        // positive 'offset' means the magnetic field is rotated east that match from true north
-        final double offset = Math.toRadians(mMagneticField.getDeclination());
-        final double trueHeading = LocationUtils.correctAngle(magneticHeading, offset);
+      mCompassTime = time;
+      mCompassHeading = heading;
+      // UI thread will pick up the latest heading, if it hasn't yet handled the previous one.
+      if (mCompassPending)
+        return;
 
-        notifyCompassUpdated(event.timestamp, magneticHeading, trueHeading, offset);
-      }
+      mCompassPending = true;
     }
-  }
 
-  private native float[] nativeUpdateCompassSensor(int ind, float[] arr);
+    UiThread.run(mNotifyCompassTask);
+  }
 
   @Override
   public void onAccuracyChanged(Sensor sensor, int accuracy) {}
@@ -0,0 +1,165 @@
+package com.mapswithme.maps.location;
+
+/**
+ * Chooses interval of location updates from the observed speed and routing state.
+ * Accuracy is always high: network fixes usually lack speed, so GPS is needed to notice that the user starts moving,
+ * and turning it off and on would cause a new fix to be acquired.
+ * Faster modes are entered on the first fix which requires them, slower ones only after
+ * {@link #SLOWDOWN_DELAY} of slower movement, so that short stops at traffic lights don't reduce the rate.
+ * <p/>
+ * Also counts fixes and time spent in each mode to compare with fixed rate updates.
+ * All times are in milliseconds of a monotonic clock. Not thread-safe.
+ */
+public class LocationPowerManager
+{
+  public enum Mode
+  {
+    NAVIGATION(500),
+    DRIVING(1000),
+    WALKING(2000),
+    STATIONARY(5000);
+
+    public final long interval;
+
+    Mode(long interval)
+    {
+      this.interval = interval;
+    }
+  }
+
+  // Update interval used for all modes before.
+  public static final long FIXED_INTERVAL = Mode.NAVIGATION.interval;
+
+  private static final double DRIVING_SPEED = 4.0;
+  private static final double WALKING_SPEED = 0.7;
+  private static final long SLOWDOWN_DELAY = 20000;
+
+  private Mode mMode = Mode.DRIVING;
+  private Mode mSpeedMode = Mode.DRIVING;
+  private long mSlowerSince = -1;
+  private boolean mRoutingActive;
+
+  private final int[] mFixes = new int[Mode.values().length];
+  private final long[] mDurations = new long[Mode.values().length];
+  private long mModeStart = -1;
+
+  public Mode getMode()
+  {
+    return mMode;
+  }
+
+  private static Mode getModeForSpeed(double speed)
+  {
+    if (speed >= DRIVING_SPEED)
+      return Mode.DRIVING;
+    if (speed >= WALKING_SPEED)
+      return Mode.WALKING;
+    return Mode.STATIONARY;
+  }
+
+  /**
+   * @return true if mode has changed.
+   */
+  public boolean onLocation(long timeMillis, boolean hasSpeed, double speed, boolean routingActive)
+  {
+    mFixes[mMode.ordinal()]++;
+    mRoutingActive = routingActive;
+
+    if (hasSpeed)
+    {
+      final Mode observed = getModeForSpeed(speed);
+      if (observed.ordinal() <= mSpeedMode.ordinal())
+      {
+        mSpeedMode = observed;
+        mSlowerSince = -1;
+      }
+      else if (mSlowerSince < 0)
+        mSlowerSince = timeMillis;
+      else if (timeMillis - mSlowerSince >= SLOWDOWN_DELAY)
+      {
+        mSpeedMode = observed;
+        mSlowerSince = -1;
+      }
+    }
+
+    return updateMode(timeMillis);
+  }
+
+  /**
+   * @return true if mode has changed.
+   */
+  public boolean setRoutingActive(long timeMillis, boolean active)
+  {
+    mRoutingActive = active;
+    return updateMode(timeMillis);
+  }
+
+  private boolean updateMode(long timeMillis)
+  {
+    final Mode mode = (mRoutingActive ? Mode.NAVIGATION : mSpeedMode);
+
+    if (mModeStart < 0)
+      mModeStart = timeMillis;
+
+    if (mode == mMode)
+      return false;
+
+    mDurations[mMode.ordinal()] += timeMillis - mModeStart;
+    mModeStart = timeMillis;
+    mMode = mode;
+    return true;
+  }
+
+  /**
+   * Time spent in the mode, including the current one up to the given time.
+   */
+  public long getDuration(Mode mode, long timeMillis)
+  {
+    long res = mDurations[mode.ordinal()];
+    if (mode == mMode && mModeStart >= 0)
+      res += timeMillis - mModeStart;
+    return res;
+  }
+
+  public int getFixes(Mode mode)
+  {
+    return mFixes[mode.ordinal()];
+  }
+
+  public int getTotalFixes()
+  {
+    int res = 0;
+    for (int fixes : mFixes)
+      res += fixes;
+    return res;
+  }
+
+  public long getTotalDuration(long timeMillis)
+  {
+    long res = 0;
+    for (Mode mode : Mode.values())
+      res += getDuration(mode, timeMillis);
+    return res;
+  }
+
+  /**
+   * @return number of fixes which would be requested with {@link #FIXED_INTERVAL} for the same time.
+   */
+  public long getFixedRateFixes(long timeMillis)
+  {
+    return getTotalDuration(timeMillis) / FIXED_INTERVAL;
+  }
+
+  /**
+   * Starts counting from scratch, current mode is kept.
+   */
+  public void clearStatistics(long timeMillis)
+  {
+    for (int i = 0; i < mFixes.length; i++)
+    {
+      mFixes[i] = 0;
+      mDurations[i] = 0;
+    }
+    mModeStart = timeMillis;
+  }
+}
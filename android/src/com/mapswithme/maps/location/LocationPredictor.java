@@ -2,22 +2,33 @@ package com.mapswithme.maps.location;
 
 import android.location.Location;
 import android.os.Handler;
+import android.os.SystemClock;
 
-import com.mapswithme.maps.Framework;
 import com.mapswithme.maps.LocationState;
 
+/**
+ * Generates predicted locations between real fixes in ROTATE_AND_FOLLOW mode, so that position moves smoothly.
+ * Fixes are fused by {@link LocationFilter}, predictions are delivered to the listener in a reused {@link Location}
+ * with {@link LocationHelper#LOCATION_PREDICTOR_PROVIDER} provider, listener must not keep it.
+ * Real fixes should be replaced with the filtered ones returned by {@link #reset(Location)},
+ * otherwise position jumps back to the raw fix after predictions made from the filtered one.
+ */
 public class LocationPredictor
 {
-  private static final long PREDICTION_INTERVAL = 200;
-  private static final long MAX_PREDICTION_COUNT = 20;
+  private static final long PREDICTION_INTERVAL = 100;
+  // Predictions stop if there were no fixes for that long.
+  private static final long MAX_PREDICTION_TIME = 4000;
 
   private final Runnable mRunnable;
   private final Handler mHandler;
 
   private final LocationHelper.LocationListener mListener;
-  private Location mLastLocation;
+  private final LocationFilter mFilter = new LocationFilter();
+  private final Location mPrediction = new Location(LocationHelper.LOCATION_PREDICTOR_PROVIDER);
+  private final Location mFiltered = new Location("");
+  private long mLastFixTime;
+  private boolean mHasMovement;
   private boolean mGeneratePredictions;
-  private int mPredictionCount;
   private int mConnectionSlot = LocationState.SLOT_UNDEFINED;
 
   public LocationPredictor(Handler handler, LocationHelper.LocationListener listener)
@@ -46,22 +57,48 @@ public class LocationPredictor
   {
     LocationState.INSTANCE.removeLocationStateModeListener(mConnectionSlot);
     mGeneratePredictions = false;
-    mLastLocation = null;
+    resetFilter();
     resetHandler();
   }
 
-  public void reset(Location location)
+  /**
+   * Adds a real fix to the filter.
+   *
+   * @return filtered estimate of the fix, in a reused {@link Location} with the provider of the fix.
+   */
+  public Location reset(Location location)
   {
-    if (location.hasBearing() && location.hasSpeed())
+    mLastFixTime = SystemClock.elapsedRealtime();
+    // Fixes without movement data still refine position, but predictions are made only while moving.
+    mHasMovement = location.hasBearing() && location.hasSpeed();
+    mFilter.update(mLastFixTime, location.getLatitude(), location.getLongitude(), location.getAccuracy(),
+                   mHasMovement, location.getSpeed(), location.getBearing());
+
+    mFiltered.set(location);
+    if (mFilter.predict(mLastFixTime))
     {
-      mLastLocation = new Location(location);
-      mLastLocation.setTime(System.currentTimeMillis());
-      mLastLocation.setProvider(LocationHelper.LOCATION_PREDICTOR_PROVIDER);
+      mFiltered.setLatitude(mFilter.getLatitude());
+      mFiltered.setLongitude(mFilter.getLongitude());
+      mFiltered.setAccuracy((float) mFilter.getAccuracy());
+      // Velocity estimated from positions only is too noisy to be shown.
+      if (mHasMovement)
+      {
+        mFiltered.setSpeed((float) mFilter.getSpeed());
+        mFiltered.setBearing((float) mFilter.getBearing());
+      }
     }
-    else
-      mLastLocation = null;
+
+    mPrediction.set(mFiltered);
+    mPrediction.setProvider(LocationHelper.LOCATION_PREDICTOR_PROVIDER);
 
     resetHandler();
+    return mFiltered;
+  }
+
+  private void resetFilter()
+  {
+    mFilter.reset();
+    mHasMovement = false;
   }
 
   private void onLocationStateModeChangedCallback(final int mode)
@@ -79,7 +116,7 @@ public class LocationPredictor
   private void onLocationStateModeChangedCallbackImpl(int mode)
   {
     if (mode < LocationState.NOT_FOLLOW)
-      mLastLocation = null;
+      resetFilter();
 
     mGeneratePredictions = (mode == LocationState.ROTATE_AND_FOLLOW);
     resetHandler();
@@ -87,13 +124,11 @@ public class LocationPredictor
 
   private boolean isPredict()
   {
-    return mLastLocation != null && mGeneratePredictions;
+    return mHasMovement && mGeneratePredictions && mFilter.isInitialized();
   }
 
   private void resetHandler()
   {
-    mPredictionCount = 0;
-
     mHandler.removeCallbacks(mRunnable);
 
     if (isPredict())
@@ -105,25 +140,18 @@ public class LocationPredictor
     if (!isPredict())
       return false;
 
-    if (mPredictionCount < MAX_PREDICTION_COUNT)
-    {
-      ++mPredictionCount;
-
-      Location info = new Location(mLastLocation);
-      info.setTime(System.currentTimeMillis());
-
-      final long elapsedMillis = info.getTime() - mLastLocation.getTime();
-
-      double[] newLatLon = Framework.predictLocation(info.getLatitude(), info.getLongitude(),
-              info.getAccuracy(), info.getBearing(),
-              info.getSpeed(), elapsedMillis / 1000.0);
-      info.setLatitude(newLatLon[0]);
-      info.setLongitude(newLatLon[1]);
+    final long now = SystemClock.elapsedRealtime();
+    if (now - mLastFixTime > MAX_PREDICTION_TIME || !mFilter.predict(now))
+      return false;
 
-      mListener.onLocationUpdated(info);
-      return true;
-    }
+    mPrediction.setLatitude(mFilter.getLatitude());
+    mPrediction.setLongitude(mFilter.getLongitude());
+    mPrediction.setAccuracy((float) mFilter.getAccuracy());
+    mPrediction.setSpeed((float) mFilter.getSpeed());
+    mPrediction.setBearing((float) mFilter.getBearing());
+    mPrediction.setTime(System.currentTimeMillis());
 
-    return false;
+    mListener.onLocationUpdated(mPrediction);
+    return true;
   }
 }
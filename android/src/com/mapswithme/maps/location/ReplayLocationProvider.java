@@ -0,0 +1,147 @@
+package com.mapswithme.maps.location;
+
+import android.location.Location;
+import android.os.Build;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+
+import com.mapswithme.maps.BuildConfig;
+import com.mapswithme.maps.MwmApplication;
+import com.mapswithme.maps.R;
+import com.mapswithme.util.concurrency.UiThread;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Replays {@link #getTraceFile()} instead of real location, to reproduce field problems of navigation
+ * and to benchmark it on the same route. Fixes go with recorded intervals divided by the speed factor
+ * and get the current time. Replay stops at the end of the trace.
+ * Enabled from debug settings, the choice is applied on the next start of the app.
+ */
+class ReplayLocationProvider extends BaseLocationProvider
+{
+  private static final String PROVIDER = "replay";
+
+  private final int mSpeedFactor;
+  private List<GpsTrace.Fix> mFixes;
+  private int mNext;
+  private boolean mIsActive;
+
+  private final Runnable mDeliverTask = new Runnable()
+  {
+    @Override
+    public void run()
+    {
+      deliverNext();
+    }
+  };
+
+  private ReplayLocationProvider(int speedFactor)
+  {
+    mSpeedFactor = speedFactor;
+  }
+
+  static File getTraceFile()
+  {
+    return new File(GpsTraceRecorder.getTracesDir(), "replay" + GpsTrace.EXTENSION);
+  }
+
+  /**
+   * @return provider if replay is chosen in debug settings and trace file exists, null otherwise.
+   */
+  static ReplayLocationProvider create()
+  {
+    if (!BuildConfig.DEBUG)
+      return null;
+
+    final MwmApplication app = MwmApplication.get();
+    final int speedFactor = Integer.parseInt(PreferenceManager.getDefaultSharedPreferences(app)
+                                                              .getString(app.getString(R.string.pref_gps_trace_replay), "0"));
+    if (speedFactor <= 0 || !getTraceFile().exists())
+      return null;
+
+    return new ReplayLocationProvider(speedFactor);
+  }
+
+  @Override
+  protected void startUpdates()
+  {
+    if (mIsActive)
+      return;
+
+    if (mFixes == null)
+    {
+      try
+      {
+        mFixes = readTrace();
+        mLogger.d("Replaying GPS trace of ", mFixes.size(), " fixes at ", mSpeedFactor, "x");
+      } catch (IOException e)
+      {
+        mLogger.e("Failed to read GPS trace: ", e);
+        LocationHelper.INSTANCE.notifyLocationError(LocationHelper.ERROR_NOT_SUPPORTED);
+        return;
+      }
+    }
+
+    mIsActive = true;
+    LocationHelper.INSTANCE.registerSensorListeners();
+    deliverNext();
+  }
+
+  private static List<GpsTrace.Fix> readTrace() throws IOException
+  {
+    final InputStream in = new BufferedInputStream(new FileInputStream(getTraceFile()));
+    try
+    {
+      return GpsTrace.read(in);
+    } finally
+    {
+      in.close();
+    }
+  }
+
+  @Override
+  protected void stopUpdates()
+  {
+    mIsActive = false;
+    UiThread.cancelDelayedTasks(mDeliverTask);
+  }
+
+  @Override
+  protected void onPowerModeChanged()
+  {
+    // Trace is replayed at its own rate, so that runs are comparable.
+  }
+
+  private void deliverNext()
+  {
+    if (!mIsActive || mNext >= mFixes.size())
+      return;
+
+    final GpsTrace.Fix fix = mFixes.get(mNext++);
+    final Location location = new Location(PROVIDER);
+    location.setLatitude(fix.lat);
+    location.setLongitude(fix.lon);
+    location.setAccuracy((float) fix.accuracy);
+    if (fix.hasSpeed())
+      location.setSpeed((float) fix.speed);
+    if (fix.hasBearing())
+      location.setBearing((float) fix.bearing);
+    location.setTime(System.currentTimeMillis());
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1)
+      location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+
+    LocationHelper.INSTANCE.initMagneticField(location);
+    LocationHelper.INSTANCE.setLastLocation(location);
+
+    if (mNext < mFixes.size())
+      UiThread.runLater(mDeliverTask, (mFixes.get(mNext).time - fix.time) / mSpeedFactor);
+    else
+      mLogger.d("GPS trace replay finished");
+  }
+}
@@ -73,9 +73,23 @@ public class CategoriesAdapter extends RecyclerView.Adapter<CategoriesAdapter.Vi
     return mCategoryResIds.length;
   }
 
-  private String getSuggestionFromCategory(int resId)
+  private static String getSuggestionFromCategory(Resources resources, int resId)
   {
-    return mResources.getString(resId) + ' ';
+    return resources.getString(resId) + ' ';
+  }
+
+  /**
+   * @return queries which are run when categories are selected.
+   */
+  static String[] getCategoryQueries(Resources resources)
+  {
+    final TypedArray categories = resources.obtainTypedArray(R.array.search_category_name_ids);
+    final String[] res = new String[categories.length()];
+    for (int i = 0; i < res.length; i++)
+      res[i] = getSuggestionFromCategory(resources, categories.getResourceId(i, 0));
+
+    categories.recycle();
+    return res;
   }
 
   public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener
@@ -97,7 +111,7 @@ public class CategoriesAdapter extends RecyclerView.Adapter<CategoriesAdapter.Vi
       final int position = getAdapterPosition();
       Statistics.INSTANCE.trackSearchCategoryClicked(mResources.getResourceEntryName(mCategoryResIds[position]));
       if (mListener != null)
-        mListener.onCategorySelected(getSuggestionFromCategory(mCategoryResIds[position]));
+        mListener.onCategorySelected(getSuggestionFromCategory(mResources, mCategoryResIds[position]));
     }
   }
 }
\ No newline at end of file
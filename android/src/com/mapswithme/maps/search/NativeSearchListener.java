@@ -7,7 +7,8 @@ package com.mapswithme.maps.search;
 public interface NativeSearchListener
 {
   /**
-   * @param results Search results.
+   * @param results Search results. Results which didn't change since the previous update of the same request
+   *                are the same objects, so they can be compared by reference.
    * @param timestamp Timestamp of search request.
    */
   void onResultsUpdate(SearchResult[] results, long timestamp);
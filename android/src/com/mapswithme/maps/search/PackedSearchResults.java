@@ -0,0 +1,90 @@
+package com.mapswithme.maps.search;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Batch of search results packed by native code into one array, see SearchResultsPacker.hpp for the layout.
+ * Fields are decoded on request, so strings of results which are never shown are not created.
+ * Immutable and thread-safe.
+ */
+final class PackedSearchResults
+{
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  static final int TYPE = 0;
+  static final int NAME = 1;
+  static final int SUGGESTION = 3;
+  static final int FEATURE_TYPE = 5;
+  static final int REGION = 7;
+  static final int DISTANCE = 9;
+  static final int CUISINE = 11;
+  static final int STARS = 13;
+  static final int CLOSED = 14;
+  private static final int RANGES = 15;
+  private static final int RANGES_COUNT = 16;
+  private static final int FIELDS_COUNT = 17;
+
+  private static final int[] NO_RANGES = new int[0];
+
+  private final byte[] mData;
+  private final ByteBuffer mBuffer;
+  private final int mCount;
+  private final int mRangesStart;
+  private final int mStringsStart;
+
+  PackedSearchResults(byte[] data)
+  {
+    mData = data;
+    mBuffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    mCount = mBuffer.getInt(0);
+    final int rangesCountPos = 4 * (1 + mCount * FIELDS_COUNT);
+    mRangesStart = rangesCountPos + 4;
+    mStringsStart = mRangesStart + 4 * mBuffer.getInt(rangesCountPos);
+  }
+
+  int getCount()
+  {
+    return mCount;
+  }
+
+  /**
+   * @return number of results in packed data without decoding it.
+   */
+  static int getCount(byte[] data)
+  {
+    return (data[0] & 0xFF) | (data[1] & 0xFF) << 8 | (data[2] & 0xFF) << 16 | (data[3] & 0xFF) << 24;
+  }
+
+  int getInt(int index, int field)
+  {
+    return mBuffer.getInt(4 * (1 + index * FIELDS_COUNT + field));
+  }
+
+  String getString(int index, int field)
+  {
+    final int length = getInt(index, field + 1);
+    if (length == 0)
+      return "";
+
+    return new String(mData, mStringsStart + getInt(index, field), length, UTF_8);
+  }
+
+  /**
+   * @return consecutive pairs of (start, length) of highlighted parts of the name.
+   */
+  int[] getHighlightRanges(int index)
+  {
+    final int count = getInt(index, RANGES_COUNT);
+    if (count == 0)
+      return NO_RANGES;
+
+    final int start = mRangesStart + 4 * getInt(index, RANGES);
+    final int[] res = new int[count];
+    for (int i = 0; i < count; i++)
+      res[i] = mBuffer.getInt(start + 4 * i);
+
+    return res;
+  }
+}
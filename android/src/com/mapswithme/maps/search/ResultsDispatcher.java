@@ -0,0 +1,128 @@
+package com.mapswithme.maps.search;
+
+/**
+ * Passes search results from native threads to UI thread.
+ * While UI thread is busy only the latest update is kept, so a burst of native callbacks is delivered once.
+ * Task posted to UI thread is reused, dispatching doesn't allocate.
+ *
+ * @param <T> type of results.
+ */
+abstract class ResultsDispatcher<T>
+{
+  // Guarded by this.
+  private T mPendingResults;
+  private long mPendingResultsTimestamp;
+  private boolean mPendingEnd;
+  private long mPendingEndTimestamp;
+  private boolean mPosted;
+
+  private final Runnable mDispatch = new Runnable()
+  {
+    @Override
+    public void run()
+    {
+      dispatch();
+    }
+  };
+
+  /**
+   * Runs the task on UI thread.
+   */
+  protected abstract void post(Runnable task);
+
+  /**
+   * @return true if results of the request should not be delivered anymore.
+   */
+  protected abstract boolean isStale(long timestamp);
+
+  /**
+   * Called on UI thread.
+   */
+  protected abstract void deliverUpdate(T results, long timestamp);
+
+  /**
+   * Called on UI thread after the last update of the request.
+   */
+  protected abstract void deliverEnd(long timestamp);
+
+  /**
+   * Called instead of {@link #deliverUpdate(Object, long)} for results of a stale request. May be called from any thread.
+   */
+  protected void dropUpdate(T results) {}
+
+  void update(T results, long timestamp)
+  {
+    if (isStale(timestamp))
+    {
+      dropUpdate(results);
+      return;
+    }
+
+    synchronized (this)
+    {
+      mPendingResults = results;
+      mPendingResultsTimestamp = timestamp;
+      // End marker of another request must not be delivered after these results.
+      if (mPendingEnd && mPendingEndTimestamp != timestamp)
+        mPendingEnd = false;
+
+      if (mPosted)
+        return;
+
+      mPosted = true;
+    }
+
+    post(mDispatch);
+  }
+
+  void end(long timestamp)
+  {
+    if (isStale(timestamp))
+      return;
+
+    synchronized (this)
+    {
+      mPendingEnd = true;
+      mPendingEndTimestamp = timestamp;
+
+      if (mPosted)
+        return;
+
+      mPosted = true;
+    }
+
+    post(mDispatch);
+  }
+
+  private void dispatch()
+  {
+    final T results;
+    final long resultsTimestamp;
+    final boolean end;
+    final long endTimestamp;
+
+    synchronized (this)
+    {
+      results = mPendingResults;
+      resultsTimestamp = mPendingResultsTimestamp;
+      end = mPendingEnd;
+      endTimestamp = mPendingEndTimestamp;
+
+      mPendingResults = null;
+      mPendingEnd = false;
+      mPosted = false;
+    }
+
+    // Newer request could be made while this one was waiting in UI queue.
+    if (results != null)
+    {
+      if (isStale(resultsTimestamp))
+        dropUpdate(results);
+      else
+        deliverUpdate(results, resultsTimestamp);
+    }
+
+    if (end && !isStale(endTimestamp))
+      deliverEnd(endTimestamp);
+  }
+}
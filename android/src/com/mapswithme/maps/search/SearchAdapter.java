@@ -1,13 +1,11 @@
 package com.mapswithme.maps.search;
 
-import android.graphics.Typeface;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
 import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.style.ForegroundColorSpan;
-import android.text.style.StyleSpan;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -77,23 +75,7 @@ class SearchAdapter extends RecyclerView.Adapter<SearchAdapter.BaseViewHolder>
     void bind(@NonNull SearchResult result, int order)
     {
       super.bind(result, order);
-
-      SpannableStringBuilder builder = new SpannableStringBuilder(result.name);
-      if (result.highlightRanges != null)
-      {
-        final int size = result.highlightRanges.length / 2;
-        int index = 0;
-
-        for (int i = 0; i < size; i++)
-        {
-          final int start = result.highlightRanges[index++];
-          final int len = result.highlightRanges[index++];
-
-          builder.setSpan(new StyleSpan(Typeface.BOLD), start, start + len, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-        }
-      }
-
-      getTitleView().setText(builder);
+      getTitleView().setText(result.getDisplayName());
     }
 
     abstract TextView getTitleView();
@@ -117,7 +99,7 @@ class SearchAdapter extends RecyclerView.Adapter<SearchAdapter.BaseViewHolder>
     @Override
     void processClick(SearchResult result, int order)
     {
-      mSearchFragment.setQuery(result.suggestion);
+      mSearchFragment.setQuery(result.getSuggestion());
     }
   }
 
@@ -131,12 +113,12 @@ class SearchAdapter extends RecyclerView.Adapter<SearchAdapter.BaseViewHolder>
 
 
     // FIXME: Better format based on result type
-    private CharSequence formatDescription(SearchResult result)
+    private CharSequence formatDescription(SearchResult.Description description)
     {
-      final SpannableStringBuilder res = new SpannableStringBuilder(result.description.featureType);
+      final SpannableStringBuilder res = new SpannableStringBuilder(description.featureType);
       final SpannableStringBuilder tail = new SpannableStringBuilder();
 
-      final int stars = Math.min(result.description.stars, 5);
+      final int stars = Math.min(description.stars, 5);
       if (stars > 0)
       {
         // Colorize last dimmed stars
@@ -150,8 +132,8 @@ class SearchAdapter extends RecyclerView.Adapter<SearchAdapter.BaseViewHolder>
 
         tail.append(sb);
       }
-      else if (!TextUtils.isEmpty(result.description.cuisine))
-        tail.append(result.description.cuisine);
+      else if (!TextUtils.isEmpty(description.cuisine))
+        tail.append(description.cuisine);
 
       if (!TextUtils.isEmpty(tail))
         res.append(" • ")
@@ -182,10 +164,14 @@ class SearchAdapter extends RecyclerView.Adapter<SearchAdapter.BaseViewHolder>
     {
       super.bind(result, order);
 
-      UiUtils.showIf(result.description.closedNow, mClosedMarker);
-      UiUtils.setTextAndHideIfEmpty(mDescription, formatDescription(result));
-      UiUtils.setTextAndHideIfEmpty(mRegion, result.description.region);
-      UiUtils.setTextAndHideIfEmpty(mDistance, result.description.distance);
+      final SearchResult.Description description = result.getDescription();
+      UiUtils.showIf(description.closedNow, mClosedMarker);
+      if (description.formatted == null)
+        description.formatted = formatDescription(description);
+
+      UiUtils.setTextAndHideIfEmpty(mDescription, description.formatted);
+      UiUtils.setTextAndHideIfEmpty(mRegion, description.region);
+      UiUtils.setTextAndHideIfEmpty(mDistance, description.distance);
     }
 
     @Override
@@ -292,7 +278,29 @@ class SearchAdapter extends RecyclerView.Adapter<SearchAdapter.BaseViewHolder>
 
   public void refreshData(SearchResult[] results)
   {
+    final SearchResult[] old = mResults;
+    final boolean hadButton = showPopulateButton();
     mResults = results;
-    notifyDataSetChanged();
+
+    if (old == null || results == null || hadButton != showPopulateButton())
+    {
+      notifyDataSetChanged();
+      return;
+    }
+
+    // Unchanged results of the same request are the same objects, so only the changed tail is rebound.
+    final int shift = (hadButton ? 1 : 0);
+    final int common = Math.min(old.length, results.length);
+    int unchanged = 0;
+    while (unchanged < common && old[unchanged] == results[unchanged])
+      unchanged++;
+
+    if (unchanged < common)
+      notifyItemRangeChanged(shift + unchanged, common - unchanged);
+
+    if (results.length > old.length)
+      notifyItemRangeInserted(shift + old.length, results.length - old.length);
+    else if (results.length < old.length)
+      notifyItemRangeRemoved(shift + results.length, old.length - results.length);
   }
 }
@@ -1,43 +1,131 @@
 package com.mapswithme.maps.search;
 
+import com.mapswithme.util.Listeners;
+import com.mapswithme.util.Proc;
 import com.mapswithme.util.concurrency.UiThread;
 
-import java.util.ArrayList;
-import java.util.List;
-
-public enum SearchEngine implements NativeSearchListener
+public enum SearchEngine
 {
   INSTANCE;
 
-  @Override
-  public void onResultsUpdate(final SearchResult[] results, final long timestamp)
+  // Number of results which fit the screen.
+  private static final int PREPARED_RESULTS = 20;
+
+  // Results of the last request assembled from partial updates, guarded by this.
+  private SearchResult[] mResults = new SearchResult[0];
+  private long mResultsTimestamp;
+
+  /**
+   * Called from native code. Results before the offset are the same as in the previous update of this request,
+   * so listeners get them as the same objects.
+   *
+   * @param packed    results starting from the offset, packed by native code.
+   * @param offset    number of unchanged results.
+   * @param timestamp timestamp of search request.
+   */
+  @SuppressWarnings("unused")
+  synchronized void onResultsUpdate(byte[] packed, int offset, long timestamp)
   {
-    UiThread.run(new Runnable()
+    if (isStale(timestamp))
     {
-      @Override
-      public void run()
-      {
-        for (NativeSearchListener listener : mListeners)
-          listener.onResultsUpdate(results, timestamp);
-      }
-    });
+      SearchLatency.INSTANCE.onResultsDropped(PackedSearchResults.getCount(packed));
+      return;
+    }
+
+    final SearchResult[] changed = SearchResult.unpack(packed);
+
+    if (timestamp != mResultsTimestamp)
+    {
+      mResults = new SearchResult[0];
+      mResultsTimestamp = timestamp;
+    }
+
+    if (offset > mResults.length)
+      return;
+
+    final SearchResult[] results = new SearchResult[offset + changed.length];
+    System.arraycopy(mResults, 0, results, 0, offset);
+    System.arraycopy(changed, 0, results, offset, changed.length);
+    mResults = results;
+
+    // Prepare highlighted names of the first screen here, so binding list items on UI thread doesn't allocate.
+    // Other results are decoded when they are scrolled to.
+    for (int i = offset; i < Math.min(results.length, PREPARED_RESULTS); i++)
+      results[i].prepareDisplayName();
+
+    mDispatcher.update(results, timestamp);
   }
 
-  @Override
-  public void onResultsEnd(final long timestamp)
+  @SuppressWarnings("unused")
+  void onResultsEnd(long timestamp)
   {
-    UiThread.run(new Runnable()
-    {
-      @Override
-      public void run()
-      {
-        for (NativeSearchListener listener : mListeners)
-          listener.onResultsEnd(timestamp);
-      }
-    });
+    mDispatcher.end(timestamp);
   }
 
-  private List<NativeSearchListener> mListeners = new ArrayList<>();
+  private final Listeners<NativeSearchListener> mListeners = new Listeners<>();
+  // Timestamp of the last request. Results of earlier requests are not delivered to listeners.
+  private volatile long mLastTimestamp;
+
+  // Arguments of the current delivery. Used on UI thread only.
+  private SearchResult[] mDeliveredResults;
+  private long mDeliveredTimestamp;
+
+  private final Proc<NativeSearchListener> mUpdateProc = new Proc<NativeSearchListener>()
+  {
+    @Override
+    public void invoke(NativeSearchListener listener)
+    {
+      listener.onResultsUpdate(mDeliveredResults, mDeliveredTimestamp);
+    }
+  };
+
+  private final Proc<NativeSearchListener> mEndProc = new Proc<NativeSearchListener>()
+  {
+    @Override
+    public void invoke(NativeSearchListener listener)
+    {
+      listener.onResultsEnd(mDeliveredTimestamp);
+    }
+  };
+
+  private final ResultsDispatcher<SearchResult[]> mDispatcher = new ResultsDispatcher<SearchResult[]>()
+  {
+    @Override
+    protected void post(Runnable task)
+    {
+      UiThread.run(task);
+    }
+
+    @Override
+    protected boolean isStale(long timestamp)
+    {
+      return SearchEngine.this.isStale(timestamp);
+    }
+
+    @Override
+    protected void deliverUpdate(SearchResult[] results, long timestamp)
+    {
+      SearchLatency.INSTANCE.onResultsDelivered(timestamp);
+      mDeliveredResults = results;
+      mDeliveredTimestamp = timestamp;
+      mListeners.forEach(mUpdateProc);
+      mDeliveredResults = null;
+    }
+
+    @Override
+    protected void deliverEnd(long timestamp)
+    {
+      SearchLatency.INSTANCE.onEndDelivered(timestamp);
+      mDeliveredTimestamp = timestamp;
+      mListeners.forEach(mEndProc);
+    }
+
+    @Override
+    protected void dropUpdate(SearchResult[] results)
+    {
+      SearchLatency.INSTANCE.onResultsDropped(results.length);
+    }
+  };
 
   public void addListener(NativeSearchListener listener)
   {
@@ -54,6 +142,20 @@ public enum SearchEngine implements NativeSearchListener
     nativeInit();
   }
 
+  private boolean isStale(long timestamp)
+  {
+    return timestamp < mLastTimestamp;
+  }
+
+  /**
+   * Stops search running in the core and drops all results of requests made before the timestamp.
+   */
+  void cancel(long timestamp)
+  {
+    mLastTimestamp = timestamp;
+    nativeCancelSearch(timestamp);
+  }
+
   private native void nativeInit();
 
   /**
@@ -65,6 +167,14 @@ public enum SearchEngine implements NativeSearchListener
 
   public static native void nativeRunInteractiveSearch(String query, String language, long timestamp);
 
+  /**
+   * Runs given queries in background and caches their results, so the same {@link #nativeRunSearch} around
+   * the same place finishes immediately. Stopped by any other search request or cancellation.
+   */
+  public static native void nativePrefetch(String[] queries, String language, boolean hasLocation, double lat, double lon);
+
+  private static native void nativeCancelSearch(long timestamp);
+
   public static native void nativeShowResult(int index);
 
   public static native void nativeShowAllResults();
@@ -15,9 +15,11 @@ import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 
 import com.mapswithme.country.ActiveCountryTree;
 import com.mapswithme.country.CountrySuggestFragment;
+import com.mapswithme.maps.BuildConfig;
 import com.mapswithme.maps.Framework;
 import com.mapswithme.maps.MwmActivity;
 import com.mapswithme.maps.R;
@@ -45,7 +47,6 @@ public class SearchFragment extends BaseMwmFragment
                                     CategoriesAdapter.OnCategorySelectedListener
 {
   private static final int RC_VOICE_RECOGNITION = 0xCA11;
-  private long mLastQueryTimestamp;
 
   private static class LastPosition
   {
@@ -77,7 +78,7 @@ public class SearchFragment extends BaseMwmFragment
       if (TextUtils.isEmpty(query))
       {
         mSearchAdapter.clear();
-        stopSearch();
+        cancelSearch();
         return;
       }
 
@@ -133,6 +134,8 @@ public class SearchFragment extends BaseMwmFragment
   private View mResultsFrame;
   private RecyclerView mResults;
   private View mResultsPlaceholder;
+  // Shows search timings in debug builds, null otherwise.
+  private TextView mLatencyOverlay;
 
   private View mTabsFrame;
 
@@ -154,6 +157,7 @@ public class SearchFragment extends BaseMwmFragment
 
   private final LastPosition mLastPosition = new LastPosition();
   private boolean mSearchRunning;
+  private final SearchPipeline mPipeline = new SearchPipeline();
 
   private boolean doShowDownloadSuggest()
   {
@@ -228,6 +232,12 @@ public class SearchFragment extends BaseMwmFragment
     mResults = (RecyclerView) mResultsFrame.findViewById(R.id.recycler);
     setRecyclerScrollListener(mResults);
     mResultsPlaceholder = mResultsFrame.findViewById(R.id.placeholder);
+    if (BuildConfig.DEBUG)
+    {
+      mLatencyOverlay = (TextView) mResultsFrame.findViewById(R.id.latency_overlay);
+      UiUtils.show(mLatencyOverlay);
+      updateLatencyOverlay();
+    }
 
     if (mSearchAdapter == null)
     {
@@ -239,6 +249,18 @@ public class SearchFragment extends BaseMwmFragment
         {
           updateResultsPlaceholder();
         }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount)
+        {
+          updateResultsPlaceholder();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount)
+        {
+          updateResultsPlaceholder();
+        }
       });
     }
 
@@ -269,6 +291,7 @@ public class SearchFragment extends BaseMwmFragment
   {
     super.onResume();
     LocationHelper.INSTANCE.addLocationListener(this);
+    prefetchCategories();
   }
 
   @Override
@@ -285,7 +308,10 @@ public class SearchFragment extends BaseMwmFragment
       v.removeOnScrollListener(mRecyclerListener);
 
     mAttachedRecyclers.clear();
+    // Interactive search started by "show on map" should survive the fragment.
+    mPipeline.dropPending();
     SearchEngine.INSTANCE.removeListener(this);
+    SearchLatency.INSTANCE.report();
     super.onDestroy();
   }
 
@@ -374,8 +400,14 @@ public class SearchFragment extends BaseMwmFragment
   protected void showAllResultsOnMap()
   {
     final String query = getQuery();
-    mLastQueryTimestamp = System.nanoTime();
-    SearchEngine.nativeRunInteractiveSearch(query, Language.getKeyboardLocale(), mLastQueryTimestamp);
+    mPipeline.runNow(new SearchPipeline.Request()
+    {
+      @Override
+      public void run(long timestamp)
+      {
+        SearchEngine.nativeRunInteractiveSearch(query, Language.getKeyboardLocale(), timestamp);
+      }
+    });
     SearchEngine.nativeShowAllResults();
     FloatingSearchToolbarController.saveQuery(query);
     Utils.navigateToParent(getActivity());
@@ -386,7 +418,11 @@ public class SearchFragment extends BaseMwmFragment
   @Override
   public void onLocationUpdated(final Location l)
   {
+    final boolean hadPosition = mLastPosition.valid;
     mLastPosition.set(l.getLatitude(), l.getLongitude());
+    // Results are ranked around the position, so they should be fetched again.
+    if (!hadPosition)
+      prefetchCategories();
 
     if (!TextUtils.isEmpty(getQuery()))
       mSearchAdapter.notifyDataSetChanged();
@@ -398,6 +434,12 @@ public class SearchFragment extends BaseMwmFragment
   @Override
   public void onLocationError(int errorCode) {}
 
+  private void cancelSearch()
+  {
+    mPipeline.cancel();
+    stopSearch();
+  }
+
   private void stopSearch()
   {
     mSearchRunning = false;
@@ -408,17 +450,26 @@ public class SearchFragment extends BaseMwmFragment
 
   private void runSearch()
   {
-    mLastQueryTimestamp = System.nanoTime();
+    final String query = getQuery();
     // TODO @yunitsky Implement more elegant solution.
-    if (getActivity() instanceof MwmActivity)
-      SearchEngine.nativeRunInteractiveSearch(getQuery(), Language.getKeyboardLocale(), mLastQueryTimestamp);
-    else
+    final boolean interactive = (getActivity() instanceof MwmActivity);
+    mPipeline.post(new SearchPipeline.Request()
     {
-      final boolean searchStarted = SearchEngine.nativeRunSearch(getQuery(), Language.getKeyboardLocale(), mLastQueryTimestamp, true,
-                                                                 mLastPosition.valid, mLastPosition.lat, mLastPosition.lon);
-      if (!searchStarted)
-        return;
-    }
+      @Override
+      public void run(long timestamp)
+      {
+        if (interactive)
+        {
+          SearchEngine.nativeRunInteractiveSearch(query, Language.getKeyboardLocale(), timestamp);
+          return;
+        }
+
+        final boolean searchStarted = SearchEngine.nativeRunSearch(query, Language.getKeyboardLocale(), timestamp, true,
+                                                                   mLastPosition.valid, mLastPosition.lat, mLastPosition.lon);
+        if (!searchStarted && isAdded())
+          stopSearch();
+      }
+    });
 
     mSearchRunning = true;
     mToolbarController.showProgress(true);
@@ -437,19 +488,48 @@ public class SearchFragment extends BaseMwmFragment
     updateFrames();
     mSearchAdapter.refreshData(results);
     mToolbarController.showProgress(true);
+    updateLatencyOverlay();
   }
 
   @Override
   public void onResultsEnd(long timestamp)
   {
-    if (mSearchRunning && isAdded())
+    if (!isAdded())
+      return;
+
+    if (mSearchRunning)
       stopSearch();
+
+    updateLatencyOverlay();
+  }
+
+  private void updateLatencyOverlay()
+  {
+    if (mLatencyOverlay != null)
+      mLatencyOverlay.setText(SearchLatency.INSTANCE.getSummary());
+  }
+
+  /**
+   * Warms up results of categories around current viewport, so selecting a category shows them immediately.
+   */
+  private void prefetchCategories()
+  {
+    // On tablets the fragment is embedded into MwmActivity, where categories are searched interactively
+    // in the viewport (see runSearch()), so cached results of nativeRunSearch() would never be used.
+    final boolean interactive = (getActivity() instanceof MwmActivity);
+    if (interactive || searchActive())
+      return;
+
+    SearchEngine.nativePrefetch(CategoriesAdapter.getCategoryQueries(getResources()), Language.getKeyboardLocale(),
+                                mLastPosition.valid, mLastPosition.lat, mLastPosition.lon);
   }
 
   @Override
   public void onCategorySelected(String category)
   {
     mToolbarController.setQuery(category);
+    // No need to wait for more input.
+    mPipeline.flush();
   }
 
   @Override
@@ -58,7 +58,6 @@ class SearchHistoryAdapter extends RecyclerView.Adapter<SearchHistoryAdapter.Vie
           public void onClick(View v)
           {
             SearchRecents.clear();
-            notifyDataSetChanged();
           }
         });
         break;
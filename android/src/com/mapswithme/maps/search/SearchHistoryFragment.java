@@ -13,6 +13,7 @@ import com.mapswithme.maps.widget.SearchToolbarController;
 import com.mapswithme.util.UiUtils;
 
 public class SearchHistoryFragment extends BaseMwmRecyclerFragment
+                                implements SearchRecents.Listener
 {
   private SearchHistoryAdapter mAdapter;
   private View mPlaceHolder;
@@ -55,6 +56,20 @@ public class SearchHistoryFragment extends BaseMwmRecyclerFragment
 
     getRecyclerView().setAdapter(mAdapter);
     updatePlaceholder();
+    SearchRecents.addListener(this);
+  }
+
+  @Override
+  public void onDestroyView()
+  {
+    SearchRecents.removeListener(this);
+    super.onDestroyView();
+  }
+
+  @Override
+  public void onRecentsChanged()
+  {
+    mAdapter.notifyDataSetChanged();
   }
 
   @Override
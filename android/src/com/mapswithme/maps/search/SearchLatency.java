@@ -0,0 +1,109 @@
+package com.mapswithme.maps.search;
+
+import com.mapswithme.util.statistics.Histogram;
+import com.mapswithme.util.statistics.Statistics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects timings of search requests, all in milliseconds since the keystroke which made the request:
+ * <ul>
+ * <li>queue wait: until the request is passed to the core (debounce delay included);</li>
+ * <li>first batch: until the first results are delivered to UI;</li>
+ * <li>completion: until the end of search is delivered to UI.</li>
+ * </ul>
+ * Also counts delivered batches per request, requests superseded before completion and results dropped as stale.
+ * <p/>
+ * Request events should be reported from UI thread, drops may be reported from any thread.
+ */
+enum SearchLatency
+{
+  INSTANCE;
+
+  // Last bucket collects everything above 16 seconds.
+  private static final int TIME_BUCKETS = 16;
+  private static final int BATCH_BUCKETS = 8;
+
+  private final Histogram mQueueWait = new Histogram(TIME_BUCKETS);
+  private final Histogram mFirstBatch = new Histogram(TIME_BUCKETS);
+  private final Histogram mCompletion = new Histogram(TIME_BUCKETS);
+  private final Histogram mBatches = new Histogram(BATCH_BUCKETS);
+  private final AtomicInteger mSuperseded = new AtomicInteger();
+  private final AtomicInteger mDroppedResults = new AtomicInteger();
+
+  // Current request, used on UI thread only.
+  private long mTimestamp;
+  private boolean mRunning;
+  private int mBatchesDelivered;
+
+  // Request timestamps are System.nanoTime() of the keystroke.
+  private static long millisSince(long timestamp)
+  {
+    return (System.nanoTime() - timestamp) / 1000000;
+  }
+
+  void onRequestStarted(long timestamp)
+  {
+    if (mRunning)
+      mSuperseded.incrementAndGet();
+
+    mTimestamp = timestamp;
+    mRunning = true;
+    mBatchesDelivered = 0;
+    mQueueWait.add(millisSince(timestamp));
+  }
+
+  void onResultsDelivered(long timestamp)
+  {
+    if (!mRunning || timestamp != mTimestamp)
+      return;
+
+    if (mBatchesDelivered == 0)
+      mFirstBatch.add(millisSince(timestamp));
+
+    mBatchesDelivered++;
+  }
+
+  void onEndDelivered(long timestamp)
+  {
+    if (!mRunning || timestamp != mTimestamp)
+      return;
+
+    mRunning = false;
+    mCompletion.add(millisSince(timestamp));
+    mBatches.add(mBatchesDelivered);
+  }
+
+  void onResultsDropped(int count)
+  {
+    mDroppedResults.addAndGet(count);
+  }
+
+  /**
+   * @return multiline summary for debug overlay.
+   */
+  String getSummary()
+  {
+    return "wait " + mQueueWait +
+           "\nfirst " + mFirstBatch +
+           "\nend " + mCompletion +
+           "\nbatches " + mBatches +
+           "\nsuperseded " + mSuperseded.get() + " dropped " + mDroppedResults.get();
+  }
+
+  /**
+   * Sends collected timings to statistics and starts collecting from scratch.
+   */
+  void report()
+  {
+    if (mCompletion.getCount() == 0 && mFirstBatch.getCount() == 0)
+      return;
+
+    Statistics.INSTANCE.trackSearchLatency(mQueueWait, mFirstBatch, mCompletion, mBatches,
+                                           mSuperseded.getAndSet(0), mDroppedResults.getAndSet(0));
+    mQueueWait.clear();
+    mFirstBatch.clear();
+    mCompletion.clear();
+    mBatches.clear();
+  }
+}
@@ -0,0 +1,102 @@
+package com.mapswithme.maps.search;
+
+import com.mapswithme.util.concurrency.UiThread;
+
+/**
+ * Passes search requests from UI to the core.
+ * Requests made in quick succession (while user is typing) are coalesced, so only the last one is run.
+ * Each new request cancels the query running in the core and all results of older requests are dropped.
+ * <p/>
+ * Should be used from UI thread only.
+ */
+class SearchPipeline
+{
+  private static final long DEBOUNCE_MILLIS = 200;
+
+  interface Request
+  {
+    /**
+     * Starts search in the core.
+     *
+     * @param timestamp identifies the request, should be passed to native search.
+     */
+    void run(long timestamp);
+  }
+
+  private Request mPending;
+  private long mPendingTimestamp;
+
+  private final Runnable mRunPending = new Runnable()
+  {
+    @Override
+    public void run()
+    {
+      final Request request = mPending;
+      mPending = null;
+      if (request != null)
+        start(request, mPendingTimestamp);
+    }
+  };
+
+  private static long invalidateResults()
+  {
+    final long timestamp = System.nanoTime();
+    SearchEngine.INSTANCE.cancel(timestamp);
+    return timestamp;
+  }
+
+  private static void start(Request request, long timestamp)
+  {
+    SearchLatency.INSTANCE.onRequestStarted(timestamp);
+    request.run(timestamp);
+  }
+
+  /**
+   * Runs request after a short delay unless another one is posted before.
+   */
+  void post(Request request)
+  {
+    UiThread.cancelDelayedTasks(mRunPending);
+    mPending = request;
+    mPendingTimestamp = invalidateResults();
+    UiThread.runLater(mRunPending, DEBOUNCE_MILLIS);
+  }
+
+  /**
+   * Runs pending request, if any, without waiting for the delay.
+   */
+  void flush()
+  {
+    UiThread.cancelDelayedTasks(mRunPending);
+    mRunPending.run();
+  }
+
+  /**
+   * Drops pending request and runs given one immediately.
+   */
+  void runNow(Request request)
+  {
+    UiThread.cancelDelayedTasks(mRunPending);
+    mPending = null;
+    start(request, invalidateResults());
+  }
+
+  /**
+   * Drops pending request, search already passed to the core goes on.
+   */
+  void dropPending()
+  {
+    UiThread.cancelDelayedTasks(mRunPending);
+    mPending = null;
+  }
+
+  /**
+   * Drops pending request and stops current search.
+   */
+  void cancel()
+  {
+    UiThread.cancelDelayedTasks(mRunPending);
+    mPending = null;
+    invalidateResults();
+  }
+}
@@ -3,34 +3,166 @@ package com.mapswithme.maps.search;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 import android.util.Pair;
+
 import com.mapswithme.util.Language;
+import com.mapswithme.util.Listeners;
+import com.mapswithme.util.Proc;
+import com.mapswithme.util.concurrency.ThreadPool;
+import com.mapswithme.util.concurrency.UiThread;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+/**
+ * Recent search queries kept in memory, newest first.
+ * List is loaded from the core in background on first use, changes are written back in batches on worker thread,
+ * so UI never waits for the storage.
+ * <p/>
+ * Should be used from UI thread only, except {@link #prefetch()}.
+ */
 public final class SearchRecents
 {
+  public interface Listener
+  {
+    void onRecentsChanged();
+  }
+
+  // Same as kMaxSuggestionsCount in search/query_saver.cpp.
+  private static final int MAX_SIZE = 10;
+
   private static final List<String> sRecents = new ArrayList<>();
+  // Trimmed queries from sRecents for duplicates check.
+  private static final Set<String> sKeys = new HashSet<>();
+
+  private static boolean sLoadStarted;
+  private static boolean sLoaded;
+  // Recents were cleared before the saved list was loaded, so loaded items should be dropped.
+  private static boolean sClearedBeforeLoad;
 
-  static
+  // Changes not written to the core yet. Guarded by sPending.
+  private static final List<Pair<String, String>> sPending = new ArrayList<>();
+  private static boolean sClearPending;
+  private static boolean sFlushScheduled;
+
+  private static final Listeners<Listener> sListeners = new Listeners<>();
+  private static final Proc<Listener> sNotifyProc = new Proc<Listener>()
   {
-    refresh();
-  }
+    @Override
+    public void invoke(Listener listener)
+    {
+      listener.onRecentsChanged();
+    }
+  };
+
+  private static final Runnable sLoadTask = new Runnable()
+  {
+    @Override
+    public void run()
+    {
+      final List<Pair<String, String>> pairs = new ArrayList<>();
+      nativeGetList(pairs);
+
+      UiThread.run(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          onLoaded(pairs);
+        }
+      });
+    }
+  };
+
+  private static final Runnable sFlushTask = new Runnable()
+  {
+    @Override
+    public void run()
+    {
+      final List<Pair<String, String>> pending;
+      final boolean clear;
+      synchronized (sPending)
+      {
+        pending = new ArrayList<>(sPending);
+        clear = sClearPending;
+        sPending.clear();
+        sClearPending = false;
+        sFlushScheduled = false;
+      }
+
+      if (clear)
+        nativeClear();
+
+      for (Pair<String, String> query : pending)
+        nativeAdd(query.first, query.second);
+    }
+  };
 
   private SearchRecents() {}
 
-  public static void refresh()
+  /**
+   * Starts loading of recents, so they are ready when search is opened. May be called from any thread.
+   */
+  public static void prefetch()
   {
-    final List<Pair<String, String>> pairs = new ArrayList<>();
-    nativeGetList(pairs);
-    sRecents.clear();
+    UiThread.run(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        ensureLoaded();
+      }
+    });
+  }
 
+  private static void ensureLoaded()
+  {
+    if (sLoadStarted)
+      return;
+
+    sLoadStarted = true;
+    // Worker thread is single, so the list is loaded before any pending change is written.
+    ThreadPool.getWorker().execute(sLoadTask);
+  }
+
+  private static void onLoaded(List<Pair<String, String>> pairs)
+  {
+    sLoaded = true;
+    if (sClearedBeforeLoad)
+      return;
+
+    // Queries added before the list was loaded are newer.
     for (Pair<String, String> pair : pairs)
-      sRecents.add(pair.second);
+    {
+      if (sRecents.size() >= MAX_SIZE)
+        break;
+
+      if (sKeys.add(pair.second.trim()))
+        sRecents.add(pair.second);
+    }
+
+    sListeners.forEach(sNotifyProc);
+  }
+
+  public static boolean isLoaded()
+  {
+    return sLoaded;
+  }
+
+  public static void addListener(Listener listener)
+  {
+    sListeners.add(listener);
+  }
+
+  public static void removeListener(Listener listener)
+  {
+    sListeners.remove(listener);
   }
 
   public static int getSize()
   {
+    ensureLoaded();
     return sRecents.size();
   }
 
@@ -41,18 +173,51 @@ public final class SearchRecents
 
   public static boolean add(@NonNull String query)
   {
-    if (TextUtils.isEmpty(query) || sRecents.contains(query))
+    ensureLoaded();
+    if (TextUtils.isEmpty(query) || !sKeys.add(query.trim()))
       return false;
 
-    nativeAdd(Language.getKeyboardLocale(), query);
-    refresh();
+    sRecents.add(0, query);
+    if (sRecents.size() > MAX_SIZE)
+      sKeys.remove(sRecents.remove(sRecents.size() - 1).trim());
+
+    synchronized (sPending)
+    {
+      sPending.add(new Pair<>(Language.getKeyboardLocale(), query));
+      scheduleFlush();
+    }
+
+    sListeners.forEach(sNotifyProc);
     return true;
   }
 
   public static void clear()
   {
-    nativeClear();
+    ensureLoaded();
+    if (!sLoaded)
+      sClearedBeforeLoad = true;
+
     sRecents.clear();
+    sKeys.clear();
+
+    synchronized (sPending)
+    {
+      sPending.clear();
+      sClearPending = true;
+      scheduleFlush();
+    }
+
+    sListeners.forEach(sNotifyProc);
+  }
+
+  // Should be called under sPending lock.
+  private static void scheduleFlush()
+  {
+    if (sFlushScheduled)
+      return;
+
+    sFlushScheduled = true;
+    ThreadPool.getWorker().execute(sFlushTask);
   }
 
   private static native void nativeGetList(List<Pair<String, String>> result);
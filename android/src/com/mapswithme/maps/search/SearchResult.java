@@ -1,9 +1,14 @@
 package com.mapswithme.maps.search;
 
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.text.style.StyleSpan;
+
 /**
- * Class instances are created from native code.
+ * View of one result in a batch packed by native code. Fields are decoded on first access.
  */
-@SuppressWarnings("unused")
 public class SearchResult
 {
   public static final int TYPE_SUGGEST = 0;
@@ -17,6 +22,8 @@ public class SearchResult
     public final String cuisine;
     public final int stars;
     public final boolean closedNow;
+    // Formatted by the adapter on the first bind and reused while scrolling.
+    CharSequence formatted;
 
     public Description(String featureType, String region, String distance, String cuisine, int stars, boolean closedNow)
     {
@@ -29,31 +36,107 @@ public class SearchResult
     }
   }
 
-  public final String name;
-  public final String suggestion;
-
   public final int type;
-  public final Description description;
 
-  // Consecutive pairs of indexes (each pair contains : start index, length), specifying highlighted matches of original query in result
-  public final int[] highlightRanges;
+  private final PackedSearchResults mPacked;
+  private final int mIndex;
+
+  private String mName;
+  private Description mDescription;
+  // Name with highlighted matches. Immutable, so it's built once off UI thread and shared by all binds.
+  private CharSequence mDisplayName;
+
+  private SearchResult(PackedSearchResults packed, int index)
+  {
+    mPacked = packed;
+    mIndex = index;
+    type = packed.getInt(index, PackedSearchResults.TYPE);
+  }
+
+  /**
+   * Creates views of all results in the batch received from native code.
+   */
+  static SearchResult[] unpack(byte[] data)
+  {
+    final PackedSearchResults packed = new PackedSearchResults(data);
+    final SearchResult[] res = new SearchResult[packed.getCount()];
+    for (int i = 0; i < res.length; i++)
+      res[i] = new SearchResult(packed, i);
+
+    return res;
+  }
+
+  public String getName()
+  {
+    if (mName == null)
+      mName = mPacked.getString(mIndex, PackedSearchResults.NAME);
+
+    return mName;
+  }
+
+  public String getSuggestion()
+  {
+    return (type == TYPE_SUGGEST ? mPacked.getString(mIndex, PackedSearchResults.SUGGESTION) : null);
+  }
 
-  public SearchResult(String name, String suggestion, int[] highlightRanges)
+  public Description getDescription()
   {
-    this.name = name;
-    this.suggestion = suggestion;
-    description = null;
-    type = TYPE_SUGGEST;
+    if (type != TYPE_RESULT)
+      return null;
+
+    if (mDescription == null)
+      mDescription = new Description(mPacked.getString(mIndex, PackedSearchResults.FEATURE_TYPE),
+                                     mPacked.getString(mIndex, PackedSearchResults.REGION),
+                                     mPacked.getString(mIndex, PackedSearchResults.DISTANCE),
+                                     mPacked.getString(mIndex, PackedSearchResults.CUISINE),
+                                     mPacked.getInt(mIndex, PackedSearchResults.STARS),
+                                     mPacked.getInt(mIndex, PackedSearchResults.CLOSED) != 0);
+
+    return mDescription;
+  }
+
+  /**
+   * @return consecutive pairs of indexes (each pair contains : start index, length), specifying highlighted matches
+   * of original query in result.
+   */
+  public int[] getHighlightRanges()
+  {
+    return mPacked.getHighlightRanges(mIndex);
+  }
+
+  /**
+   * Builds name with highlighted matches. Called by {@link SearchEngine} before results are passed to UI.
+   */
+  void prepareDisplayName()
+  {
+    if (mDisplayName != null)
+      return;
+
+    final int[] highlightRanges = getHighlightRanges();
+    if (highlightRanges.length == 0)
+    {
+      mDisplayName = getName();
+      return;
+    }
+
+    final SpannableStringBuilder builder = new SpannableStringBuilder(getName());
+    final int size = highlightRanges.length / 2;
+    int index = 0;
+
+    for (int i = 0; i < size; i++)
+    {
+      final int start = highlightRanges[index++];
+      final int len = highlightRanges[index++];
+
+      builder.setSpan(new StyleSpan(Typeface.BOLD), start, start + len, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+    }
 
-    this.highlightRanges = highlightRanges;
+    mDisplayName = new SpannedString(builder);
   }
 
-  public SearchResult(String name, Description description, int[] highlightRanges)
+  CharSequence getDisplayName()
   {
-    this.name = name;
-    suggestion = null;
-    type = TYPE_RESULT;
-    this.description = description;
-    this.highlightRanges = highlightRanges;
+    prepareDisplayName();
+    return mDisplayName;
   }
-}
\ No newline at end of file
+}
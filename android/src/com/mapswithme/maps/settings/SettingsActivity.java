@@ -30,6 +30,8 @@ import com.mapswithme.country.ActiveCountryTree;
 import com.mapswithme.maps.BuildConfig;
 import com.mapswithme.maps.MwmApplication;
 import com.mapswithme.maps.R;
+import com.mapswithme.maps.downloader.DownloadMetrics;
+import com.mapswithme.maps.location.GpsTraceRecorder;
 import com.mapswithme.util.Constants;
 import com.mapswithme.util.UiUtils;
 import com.mapswithme.util.Utils;
@@ -104,6 +106,22 @@ public class SettingsActivity extends PreferenceActivity implements OnPreference
     findPreference(getString(R.string.pref_report_bug)).setOnPreferenceClickListener(this);
     findPreference(getString(R.string.pref_subscribe)).setOnPreferenceClickListener(this);
     findPreference(getString(R.string.pref_help)).setOnPreferenceClickListener(this);
+
+    final Preference metricsPreference = findPreference(getString(R.string.pref_download_metrics));
+    final Preference recordTracePreference = findPreference(getString(R.string.pref_gps_trace_record));
+    final Preference replayTracePreference = findPreference(getString(R.string.pref_gps_trace_replay));
+    if (BuildConfig.DEBUG)
+    {
+      metricsPreference.setOnPreferenceClickListener(this);
+      recordTracePreference.setOnPreferenceChangeListener(this);
+    }
+    else
+    {
+      final PreferenceScreen screen = (PreferenceScreen) findPreference(getString(R.string.pref_settings));
+      screen.removePreference(metricsPreference);
+      screen.removePreference(recordTracePreference);
+      screen.removePreference(replayTracePreference);
+    }
   }
 
   @SuppressWarnings("deprecation")
@@ -306,6 +324,36 @@ public class SettingsActivity extends PreferenceActivity implements OnPreference
         .show();
   }
 
+  private void showDownloadMetrics()
+  {
+    final String dump = DownloadMetrics.INSTANCE.dump();
+    new AlertDialog.Builder(this)
+        .setTitle(R.string.download_metrics)
+        .setMessage(dump)
+        .setPositiveButton(R.string.share, new DialogInterface.OnClickListener()
+        {
+          @Override
+          public void onClick(DialogInterface dialog, int which)
+          {
+            final Intent intent = new Intent(Intent.ACTION_SEND);
+            intent.setType("text/plain");
+            intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.download_metrics));
+            intent.putExtra(Intent.EXTRA_TEXT, dump);
+            startActivity(Intent.createChooser(intent, getString(R.string.share)));
+          }
+        })
+        .setNegativeButton(R.string.close, new DialogInterface.OnClickListener()
+        {
+          @Override
+          public void onClick(DialogInterface dialog, int which)
+          {
+            dialog.dismiss();
+          }
+        })
+        .create()
+        .show();
+  }
+
   @Override
   public boolean onPreferenceClick(Preference preference)
   {
@@ -395,6 +443,8 @@ public class SettingsActivity extends PreferenceActivity implements OnPreference
         return true;
       }
     }
+    else if (key.equals(getString(R.string.pref_download_metrics)))
+      showDownloadMetrics();
     else if (key.equals(getString(R.string.pref_community)))
     {
       Statistics.INSTANCE.trackSimpleNamedEvent(Statistics.EventName.SETTINGS_COMMUNITY);
@@ -419,6 +469,8 @@ public class SettingsActivity extends PreferenceActivity implements OnPreference
       Statistics.INSTANCE.setStatEnabled((Boolean) newValue);
     else if (key.equals(getString(R.string.pref_zoom_btns_enabled)))
       MwmApplication.get().nativeSetBoolean(ZOOM_BUTTON_ENABLED, (Boolean) newValue);
+    else if (key.equals(getString(R.string.pref_gps_trace_record)))
+      GpsTraceRecorder.INSTANCE.setEnabled((Boolean) newValue);
 
     return true;
   }
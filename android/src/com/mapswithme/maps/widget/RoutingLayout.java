@@ -177,6 +177,7 @@ public class RoutingLayout extends RelativeLayout implements View.OnClickListene
       AlohaHelper.logClick(AlohaHelper.ROUTING_GO);
       setState(State.TURN_INSTRUCTIONS, true);
       Framework.nativeFollowRoute();
+      LocationHelper.INSTANCE.onRoutingStateChanged();
       mListener.onStartRouteFollow();
       break;
     case R.id.rb__pedestrian:
@@ -207,6 +208,7 @@ public class RoutingLayout extends RelativeLayout implements View.OnClickListene
         UiUtils.hide(this);
       UiUtils.hide(mBtnStart);
       Framework.nativeCloseRouting();
+      LocationHelper.INSTANCE.onRoutingStateChanged();
       mEndPoint = null;
       break;
     case PREPARING:
@@ -0,0 +1,77 @@
+package com.mapswithme.util;
+
+/**
+ * Copy-on-write set of listeners.
+ * Adding or removing a listener copies the array, so listeners are notified from any thread
+ * without locks and allocations, and may unregister themselves while being notified.
+ */
+public class Listeners<T>
+{
+  private static final Object[] EMPTY = new Object[0];
+
+  private volatile Object[] mListeners = EMPTY;
+
+  /**
+   * @return false if the listener is already registered.
+   */
+  public synchronized boolean add(T listener)
+  {
+    if (indexOf(listener) >= 0)
+      return false;
+
+    final Object[] listeners = new Object[mListeners.length + 1];
+    System.arraycopy(mListeners, 0, listeners, 0, mListeners.length);
+    listeners[mListeners.length] = listener;
+    mListeners = listeners;
+    return true;
+  }
+
+  public synchronized boolean remove(T listener)
+  {
+    final int index = indexOf(listener);
+    if (index < 0)
+      return false;
+
+    if (mListeners.length == 1)
+    {
+      mListeners = EMPTY;
+      return true;
+    }
+
+    final Object[] listeners = new Object[mListeners.length - 1];
+    System.arraycopy(mListeners, 0, listeners, 0, index);
+    System.arraycopy(mListeners, index + 1, listeners, index, listeners.length - index);
+    mListeners = listeners;
+    return true;
+  }
+
+  public boolean isEmpty()
+  {
+    return mListeners.length == 0;
+  }
+
+  public int size()
+  {
+    return mListeners.length;
+  }
+
+  /**
+   * Calls the procedure for each listener registered at the moment of the call.
+   * Reuse the procedure object to avoid allocations.
+   */
+  @SuppressWarnings("unchecked")
+  public void forEach(Proc<T> proc)
+  {
+    for (Object listener : mListeners)
+      proc.invoke((T) listener);
+  }
+
+  private int indexOf(T listener)
+  {
+    for (int i = 0; i < mListeners.length; i++)
+      if (mListeners[i] == listener)
+        return i;
+
+    return -1;
+  }
+}
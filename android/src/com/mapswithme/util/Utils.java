@@ -20,6 +20,7 @@ import android.widget.Toast;
 import com.mapswithme.maps.BuildConfig;
 import com.mapswithme.maps.MwmApplication;
 import com.mapswithme.maps.activity.CustomNavigateUpListener;
+import com.mapswithme.maps.downloader.DownloadMetrics;
 import com.mapswithme.util.statistics.AlohaHelper;
 
 import java.io.*;
@@ -194,6 +195,8 @@ public class Utils
       for (NetworkInfo info : manager.getAllNetworkInfo())
         writer.write(info.toString());
       writer.write("\n\n");
+      writer.write(DownloadMetrics.INSTANCE.dump());
+      writer.write("\n");
 
       String cmd = "logcat -d -v time";
       Process process = Runtime.getRuntime().exec(cmd);
@@ -0,0 +1,89 @@
+package com.mapswithme.util.statistics;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock-free histogram of non-negative values with power-of-two buckets: [0, 1], (1, 2], (2, 4], ..., (2^(n-2), inf).
+ * Adding a value doesn't allocate, so it can be used on hot paths and from any thread.
+ * Percentiles are estimated by upper bounds of the buckets.
+ */
+public class Histogram
+{
+  private final AtomicIntegerArray mBuckets;
+
+  /**
+   * @param bucketsCount number of buckets, the last one collects all values above 2^(bucketsCount - 2).
+   */
+  public Histogram(int bucketsCount)
+  {
+    mBuckets = new AtomicIntegerArray(bucketsCount);
+  }
+
+  private int getBucket(long value)
+  {
+    final int bucket = (value <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(value - 1));
+    return Math.min(bucket, mBuckets.length() - 1);
+  }
+
+  private long getUpperBound(int bucket)
+  {
+    return (bucket == mBuckets.length() - 1 ? Long.MAX_VALUE : 1L << bucket);
+  }
+
+  public void add(long value)
+  {
+    mBuckets.incrementAndGet(getBucket(value));
+  }
+
+  public int getCount()
+  {
+    int res = 0;
+    for (int i = 0; i < mBuckets.length(); i++)
+      res += mBuckets.get(i);
+
+    return res;
+  }
+
+  /**
+   * @param percent value from 0 to 100.
+   * @return upper bound of the bucket containing the percentile, 0 if histogram is empty,
+   * {@link Long#MAX_VALUE} if the percentile falls into the last bucket.
+   */
+  public long getPercentile(int percent)
+  {
+    final int count = getCount();
+    if (count == 0)
+      return 0;
+
+    final long rank = Math.max(1, ((long) count * percent + 99) / 100);
+    long seen = 0;
+    for (int i = 0; i < mBuckets.length(); i++)
+    {
+      seen += mBuckets.get(i);
+      if (seen >= rank)
+        return getUpperBound(i);
+    }
+
+    return getUpperBound(mBuckets.length() - 1);
+  }
+
+  public void clear()
+  {
+    for (int i = 0; i < mBuckets.length(); i++)
+      mBuckets.set(i, 0);
+  }
+
+  /**
+   * @return short description like "p50<=64 p90<=256 n=12", "inf" stands for the last bucket.
+   */
+  @Override
+  public String toString()
+  {
+    return "p50<=" + format(getPercentile(50)) + " p90<=" + format(getPercentile(90)) + " n=" + getCount();
+  }
+
+  public static String format(long bound)
+  {
+    return (bound == Long.MAX_VALUE ? "inf" : String.valueOf(bound));
+  }
+}
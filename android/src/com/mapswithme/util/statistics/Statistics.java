@@ -10,6 +10,7 @@ import com.mapswithme.maps.BuildConfig;
 import com.mapswithme.maps.MwmApplication;
 import com.mapswithme.maps.PrivateVariables;
 import com.mapswithme.maps.api.ParsedMwmRequest;
+import com.mapswithme.maps.location.LocationPowerManager;
 import com.mapswithme.util.log.Logger;
 import com.mapswithme.util.log.SimpleLogger;
 import com.mapswithme.util.log.StubLogger;
@@ -63,6 +64,8 @@ public enum Statistics
     public static final String SEARCH_KEY_CLICKED = "Search key pressed.";
     public static final String SEARCH_ON_MAP_CLICKED = "Search on map clicked.";
     public static final String STATISTICS_STATUS_CHANGED = "Statistics status changed";
+    public static final String SEARCH_LATENCY = "Search latency";
+    public static final String LOCATION_POWER = "Location power";
     //
     public static final String PLUS_DIALOG_LATER = "GPlus dialog cancelled.";
     public static final String RATE_DIALOG_LATER = "GPlay dialog cancelled.";
@@ -85,6 +88,16 @@ public enum Statistics
     public static final String DELAY_MILLIS = "Delay in milliseconds";
     public static final String ENABLED = "Enabled";
     public static final String RATING = "Rating";
+    public static final String QUEUE_WAIT_P50 = "Queue wait p50";
+    public static final String FIRST_RESULT_P50 = "First result p50";
+    public static final String FIRST_RESULT_P90 = "First result p90";
+    public static final String COMPLETION_P50 = "Completion p50";
+    public static final String COMPLETION_P90 = "Completion p90";
+    public static final String BATCHES_P50 = "Batches p50";
+    public static final String SUPERSEDED = "Superseded";
+    public static final String DROPPED = "Dropped";
+    public static final String FIXED_RATE_COUNT = "Fixed rate count";
+    public static final String SECONDS = "Seconds";
   }
 
   private static class MyTrackerParams
@@ -222,6 +235,46 @@ public enum Statistics
     post(EventName.RATE_DIALOG_RATED, new String[]{EventParam.RATING, String.valueOf(rating)});
   }
 
+  /**
+   * Times are in milliseconds, percentiles are rounded up to powers of two.
+   */
+  public void trackSearchLatency(Histogram queueWait, Histogram firstResult, Histogram completion, Histogram batches,
+                                 int superseded, int dropped)
+  {
+    post(EventName.SEARCH_LATENCY, new String[]{EventParam.COUNT, String.valueOf(completion.getCount()),
+                                                EventParam.QUEUE_WAIT_P50, Histogram.format(queueWait.getPercentile(50)),
+                                                EventParam.FIRST_RESULT_P50, Histogram.format(firstResult.getPercentile(50)),
+                                                EventParam.FIRST_RESULT_P90, Histogram.format(firstResult.getPercentile(90)),
+                                                EventParam.COMPLETION_P50, Histogram.format(completion.getPercentile(50)),
+                                                EventParam.COMPLETION_P90, Histogram.format(completion.getPercentile(90)),
+                                                EventParam.BATCHES_P50, Histogram.format(batches.getPercentile(50)),
+                                                EventParam.SUPERSEDED, String.valueOf(superseded),
+                                                EventParam.DROPPED, String.valueOf(dropped)});
+  }
+
+  /**
+   * Location fixes received since the last report, fixes which would be requested at fixed rate for the same time
+   * and seconds spent in each power mode, named by the mode.
+   */
+  public void trackLocationPower(LocationPowerManager manager, long timeMillis)
+  {
+    final LocationPowerManager.Mode[] modes = LocationPowerManager.Mode.values();
+    final String[] params = new String[6 + 2 * modes.length];
+    params[0] = EventParam.COUNT;
+    params[1] = String.valueOf(manager.getTotalFixes());
+    params[2] = EventParam.FIXED_RATE_COUNT;
+    params[3] = String.valueOf(manager.getFixedRateFixes(timeMillis));
+    params[4] = EventParam.SECONDS;
+    params[5] = String.valueOf(manager.getTotalDuration(timeMillis) / 1000);
+    for (int i = 0; i < modes.length; i++)
+    {
+      params[6 + 2 * i] = modes[i].name();
+      params[7 + 2 * i] = String.valueOf(manager.getDuration(modes[i], timeMillis) / 1000);
+    }
+
+    post(EventName.LOCATION_POWER, params);
+  }
+
   public void trackSimpleNamedEvent(String eventName)
   {
     post(eventName);
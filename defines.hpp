@@ -37,6 +37,8 @@
 #define READY_FILE_EXTENSION ".ready"
 #define RESUME_FILE_EXTENSION ".resume3"
 #define DOWNLOADING_FILE_EXTENSION ".downloading3"
+#define JOURNAL_FILE_EXTENSION ".journal3"
+#define PATCH_FILE_EXTENSION ".mwmpatch"
 #define BOOKMARKS_FILE_EXTENSION ".kml"
 #define ROUTING_FILE_EXTENSION ".routing"
 
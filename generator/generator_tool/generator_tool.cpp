@@ -21,6 +21,8 @@
 
 #include "coding/file_name_utils.hpp"
 
+#include "base/stl_add.hpp"
+#include "base/string_utils.hpp"
 #include "base/timer.hpp"
 
 #include "defines.hpp"
@@ -37,6 +39,9 @@
 
 DEFINE_bool(generate_update, false,
               "If specified, update.maps file will be generated from cells in the data path");
+DEFINE_string(update_patch_from, "",
+              "Comma-separated directories with mwm files of previous data versions, named by version. "
+              "Patches from them are made when update is generated.");
 
 DEFINE_bool(generate_classif, false, "Generate classificator.");
 
@@ -206,7 +211,9 @@ int main(int argc, char ** argv)
   if (FLAGS_generate_update)
   {
     LOG(LINFO, ("Updating countries file..."));
-    update::UpdateCountries(path);
+    vector<string> oldDataDirs;
+    strings::Tokenize(FLAGS_update_patch_from, ",", MakeBackInsertFunctor(oldDataDirs));
+    update::UpdateCountries(path, oldDataDirs);
   }
 
   string const datFile = path + FLAGS_output + DATA_FILE_EXTENSION;
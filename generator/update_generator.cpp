@@ -5,8 +5,12 @@
 #include "platform/platform.hpp"
 
 #include "storage/country.hpp"
+#include "storage/map_patch.hpp"
 
+#include "coding/file_name_utils.hpp"
+#include "coding/file_reader.hpp"
 #include "coding/file_writer.hpp"
+#include "coding/internal/file_data.hpp"
 
 #include "base/string_utils.hpp"
 #include "base/logging.hpp"
@@ -14,6 +18,10 @@
 #include "base/timer.hpp"
 
 #include "std/iterator.hpp"
+#include "std/utility.hpp"
+#include "std/vector.hpp"
+
+#include <boost/crc.hpp>
 
 using namespace storage;
 
@@ -37,11 +45,16 @@ namespace update
   }
   */
 
+  /// Directories with files of previous data versions by version.
+  typedef vector<pair<int64_t, string> > OldDataDirsT;
+
   class SizeUpdater
   {
     size_t m_processedFiles;
+    size_t m_patches;
     string m_dataDir;
     Platform::FilesList & m_files;
+    OldDataDirsT const & m_oldDataDirs;
 
     uint64_t GetFileSize(platform::CountryFile const & cnt, MapOptions opt) const
     {
@@ -57,14 +70,68 @@ namespace update
       return sz;
     }
 
+    /// @returns -1 if file doesn't exist, as the checksum is unknown.
+    int64_t GetFileCrc32(platform::CountryFile const & cnt, MapOptions opt) const
+    {
+      string const path = m_dataDir + cnt.GetNameWithExt(opt);
+      if (!GetPlatform().IsFileExistsByFullPath(path))
+        return -1;
+
+      FileReader const reader(path);
+      uint64_t const fileSize = reader.Size();
+      boost::crc_32_type crc;
+      vector<char> buffer(1024 * 1024);
+      for (uint64_t pos = 0; pos < fileSize; pos += buffer.size())
+      {
+        size_t const size = static_cast<size_t>(min<uint64_t>(buffer.size(), fileSize - pos));
+        reader.Read(pos, &buffer[0], size);
+        crc.process_bytes(&buffer[0], size);
+      }
+      return crc.checksum();
+    }
+
+    /// Makes patches from files of previous data versions, if they are smaller than the file.
+    /// Patches are named as storage expects them on a server.
+    void MakePatches(platform::CountryFile & cnt, MapOptions opt, uint64_t fileSize)
+    {
+      string const fName = cnt.GetNameWithExt(opt);
+      for (auto const & oldDataDir : m_oldDataDirs)
+      {
+        string const oldPath = oldDataDir.second + fName;
+        if (fileSize == 0 || !GetPlatform().IsFileExistsByFullPath(oldPath))
+          continue;
+
+        string const patchPath = m_dataDir + fName + "." + strings::to_string(oldDataDir.first) +
+                                 PATCH_FILE_EXTENSION;
+        uint64_t patchSize = 0;
+        if (!MakeMapPatch(oldPath, m_dataDir + fName, patchPath) ||
+            !GetPlatform().GetFileSizeByFullPath(patchPath, patchSize))
+        {
+          LOG(LWARNING, ("Can't make patch", patchPath));
+          continue;
+        }
+
+        if (patchSize >= fileSize)
+        {
+          LOG(LINFO, ("Patch is not smaller than the file:", patchPath));
+          (void)my::DeleteFileX(patchPath);
+          continue;
+        }
+
+        cnt.SetPatchSize(opt, oldDataDir.first, static_cast<uint32_t>(patchSize));
+        ++m_patches;
+      }
+    }
+
   public:
-    SizeUpdater(string const & dataDir, Platform::FilesList & files)
-      : m_processedFiles(0), m_dataDir(dataDir), m_files(files)
+    SizeUpdater(string const & dataDir, Platform::FilesList & files, OldDataDirsT const & oldDataDirs)
+      : m_processedFiles(0), m_patches(0), m_dataDir(dataDir), m_files(files), m_oldDataDirs(oldDataDirs)
     {
     }
     ~SizeUpdater()
     {
       LOG(LINFO, (m_processedFiles, "file sizes were updated in the country list"));
+      LOG(LINFO, (m_patches, "patches were made"));
 
       if (!m_files.empty())
         LOG(LWARNING, ("Files left unprocessed:", m_files));
@@ -86,6 +153,10 @@ namespace update
 
         cnt.SetRemoteSizes(static_cast<uint32_t>(szMap),
                            static_cast<uint32_t>(szRouting));
+        cnt.SetRemoteChecksums(GetFileCrc32(cnt, MapOptions::Map),
+                               GetFileCrc32(cnt, MapOptions::CarRouting));
+        MakePatches(cnt, MapOptions::Map, szMap);
+        MakePatches(cnt, MapOptions::CarRouting, szRouting);
 
         string const fName = cnt.GetNameWithExt(MapOptions::Map);
         auto found = find(m_files.begin(), m_files.end(), fName);
@@ -97,8 +168,25 @@ namespace update
     }
   };
 
-  bool UpdateCountries(string const & dataDir)
+  bool UpdateCountries(string const & dataDir, vector<string> const & oldDataDirs)
   {
+    OldDataDirsT oldDirs;
+    for (string const & dir : oldDataDirs)
+    {
+      string name = dir;
+      if (!name.empty() && name.back() == '/')
+        name.pop_back();
+      my::GetNameFromFullPath(name);
+
+      int64_t version;
+      if (!strings::to_int64(name, version))
+      {
+        LOG(LERROR, ("Directory with previous data version should be named by the version:", dir));
+        return false;
+      }
+      oldDirs.push_back(make_pair(version, my::AddSlashIfNeeded(dir)));
+    }
+
     Platform::FilesList mwmFiles;
     GetPlatform().GetFilesByExt(dataDir, DATA_FILE_EXTENSION, mwmFiles);
 
@@ -129,7 +217,7 @@ namespace update
       storage::LoadCountries(jsonBuffer, countries);
 
       // using move semantics for mwmFiles
-      SizeUpdater sizeUpdater(dataDir, mwmFiles);
+      SizeUpdater sizeUpdater(dataDir, mwmFiles, oldDirs);
       countries.ForEachChildren(sizeUpdater);
     }
 
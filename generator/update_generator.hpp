@@ -1,8 +1,12 @@
 #pragma once
 
 #include "std/string.hpp"
+#include "std/vector.hpp"
 
 namespace update
 {
-  bool UpdateCountries(string const & dataDir);
+  /// Updates file sizes and checksums in the countries list and saves it to dataDir.
+  /// @param oldDataDirs directories with files of previous data versions, each one is named by its
+  ///                    version. Patches from these files are saved to dataDir and listed too.
+  bool UpdateCountries(string const & dataDir, vector<string> const & oldDataDirs);
 } // namespace update
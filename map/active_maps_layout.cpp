@@ -350,6 +350,14 @@ void ActiveMapsLayout::CancelDownloading(TIndex const & index)
     item->m_downloadRequest = item->m_options;
 }
 
+void ActiveMapsLayout::PauseDownloading(TIndex const & index)
+{
+  GetStorage().PauseDownloading(index);
+  Item * item = FindItem(index);
+  if (item != nullptr)
+    item->m_downloadRequest = item->m_options;
+}
+
 TIndex ActiveMapsLayout::GetCurrentDownloadingCountryIndex() const
 {
   return GetStorage().GetCurrentDownloadingCountryIndex();
@@ -90,6 +90,8 @@ public:
   bool IsDownloadingActive() const;
   void CancelDownloading(TGroup const & group, int position);
   void CancelDownloading(TIndex const & index);
+  /// Same as CancelDownloading(), but the downloaded part is kept.
+  void PauseDownloading(TIndex const & index);
 
   TIndex GetCurrentDownloadingCountryIndex() const;
 
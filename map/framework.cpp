@@ -100,6 +100,13 @@ namespace
   static const int BM_TOUCH_PIXEL_INCREASE = 20;
   static const int kKeepPedestrianDistanceMeters = 10000;
   char const kRouterTypeKey[] = "router";
+
+  // Interactive search waits for the map to stay still this long, so it's not rerun during panning
+  // and zoom animations.
+  milliseconds const kViewportSettleDelay(400);
+  // Shift of the viewport center, as a fraction of its size, which is searched without waiting.
+  double const kViewportSignificantShift = 0.5;
+  double const kViewportMaxZoomIn = 2.0;
 }
 
 pair<MwmSet::MwmId, MwmSet::RegResult> Framework::RegisterMap(
@@ -200,6 +207,8 @@ Framework::Framework()
     m_bmManager(*this),
     m_balloonManager(*this),
     m_fixedSearchResults(0),
+    m_viewportSearchThrottle(kViewportSignificantShift, kViewportMaxZoomIn),
+    m_viewportSettlePending(false),
     m_locationChangedSlotID(-1)
 {
   // Checking whether we should enable benchmark.
@@ -983,14 +992,65 @@ void Framework::ShowRectFixedAR(m2::AnyRectD const & rect)
 
 void Framework::UpdateUserViewportChanged()
 {
-  if (IsISActive())
+  if (!IsISActive())
+    return;
+
+  m2::RectD const viewport = GetCurrentViewport();
+  if (m_viewportSearchThrottle.IsSignificantChange(viewport))
+  {
+    // Pending search is superseded by this one. The running one is cancelled by the next search.
+    m_viewportSettlePending = false;
+    RunViewportSearch(viewport);
+    return;
+  }
+
+  // Check again when the map settles: viewport can still change, e.g. by zoom animation.
+  m_viewportSettleDeadline = steady_clock::now() + kViewportSettleDelay;
+  m_viewportSettlePending = true;
+  if (!m_viewportSearchTask)
+    ScheduleViewportSettle(kViewportSettleDelay);
+}
+
+void Framework::ScheduleViewportSettle(milliseconds delay)
+{
+  m_viewportSearchTask.reset(new DeferredTask([this]()
   {
-    (void)GetCurrentPosition(m_lastSearch.m_lat, m_lastSearch.m_lon);
-    m_lastSearch.SetSearchMode(search::SearchParams::IN_VIEWPORT_ONLY);
-    m_lastSearch.SetForceSearch(false);
+    GetPlatform().RunOnGuiThread(bind(&Framework::OnViewportSettled, this));
+  }, delay));
+}
+
+void Framework::OnViewportSettled()
+{
+  // The task has already done its work, so its thread is joined immediately.
+  m_viewportSearchTask.reset();
+
+  if (!m_viewportSettlePending || !IsISActive())
+    return;
 
-    (void)GetSearchEngine()->Search(m_lastSearch, GetCurrentViewport());
+  steady_clock::time_point const now = steady_clock::now();
+  if (now < m_viewportSettleDeadline)
+  {
+    // Viewport was changed after the task had been scheduled.
+    ScheduleViewportSettle(duration_cast<milliseconds>(m_viewportSettleDeadline - now) + milliseconds(1));
+    return;
   }
+
+  m_viewportSettlePending = false;
+
+  // Results of the last search are still shown when the viewport is inside the searched one.
+  m2::RectD const viewport = GetCurrentViewport();
+  if (m_viewportSearchThrottle.NeedSearch(viewport))
+    RunViewportSearch(viewport);
+}
+
+void Framework::RunViewportSearch(m2::RectD const & viewport)
+{
+  (void)GetCurrentPosition(m_lastSearch.m_lat, m_lastSearch.m_lon);
+  m_lastSearch.SetSearchMode(search::SearchParams::IN_VIEWPORT_ONLY);
+  m_lastSearch.SetForceSearch(false);
+
+  if (GetSearchEngine()->Search(m_lastSearch, viewport))
+    m_viewportSearchThrottle.OnSearchStarted(viewport);
 }
 
 void Framework::UpdateSearchResults(search::Results const & results)
@@ -1287,6 +1347,17 @@ bool Framework::Search(search::SearchParams const & params)
   return GetSearchEngine()->Search(rParams, GetCurrentViewport());
 }
 
+void Framework::PrefetchSearch(vector<search::SearchParams> const & params)
+{
+  GetSearchEngine()->Prefetch(params, GetCurrentViewport());
+}
+
+void Framework::CancelSearch()
+{
+  if (m_pSearchEngine)
+    m_pSearchEngine->CancelSearch();
+}
+
 bool Framework::GetCurrentPosition(double & lat, double & lon) const
 {
   shared_ptr<State> const & locationState = m_informationDisplay.locationState();
@@ -1464,9 +1535,18 @@ void Framework::FillSearchResultsMarks(search::Results const & results)
   }
 }
 
+void Framework::StartInteractiveSearch(search::SearchParams const & params)
+{
+  m_lastSearch = params;
+  m_viewportSearchThrottle.Reset();
+}
+
 void Framework::CancelInteractiveSearch()
 {
   m_lastSearch.Clear();
+  m_viewportSearchThrottle.Reset();
+  m_viewportSearchTask.reset();
+  m_viewportSettlePending = false;
   m_bmManager.UserMarksClear(UserMarkContainer::SEARCH_MARK);
 
   m_fixedSearchResults = 0;
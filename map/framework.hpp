@@ -32,6 +32,7 @@
 
 #include "search/query_saver.hpp"
 #include "search/search_engine.hpp"
+#include "search/viewport_search_throttle.hpp"
 
 #include "storage/storage.hpp"
 
@@ -47,6 +48,7 @@
 #include "geometry/rect2d.hpp"
 #include "geometry/screenbase.hpp"
 
+#include "base/deferred_task.hpp"
 #include "base/macros.hpp"
 #include "base/strings_bundle.hpp"
 #include "base/thread_checker.hpp"
@@ -323,6 +325,16 @@ private:
   search::Engine * GetSearchEngine() const;
   search::SearchParams m_lastSearch;
   uint8_t m_fixedSearchResults;
+  search::ViewportSearchThrottle m_viewportSearchThrottle;
+  /// Runs interactive search when the map stops moving. While the map moves, viewport changes
+  /// only shift the deadline and a single task is rescheduled when it expires.
+  unique_ptr<DeferredTask> m_viewportSearchTask;
+  steady_clock::time_point m_viewportSettleDeadline;
+  bool m_viewportSettlePending;
+
+  void ScheduleViewportSettle(milliseconds delay);
+  void OnViewportSettled();
+  void RunViewportSearch(m2::RectD const & viewport);
 
   void FillSearchResultsMarks(search::Results const & results);
 
@@ -337,6 +349,10 @@ public:
   /// While it's loading, we can cache features in viewport.
   void PrepareSearch();
   bool Search(search::SearchParams const & params);
+  /// Warms up search results cache for queries around current viewport, see search::Engine::Prefetch.
+  void PrefetchSearch(vector<search::SearchParams> const & params);
+  /// Stops currently running search, if any.
+  void CancelSearch();
   bool GetCurrentPosition(double & lat, double & lon) const;
 
   void LoadSearchResultMetadata(search::Result & res) const;
@@ -345,7 +361,7 @@ public:
   size_t ShowAllSearchResults(search::Results const & results);
   void UpdateSearchResults(search::Results const & results);
 
-  void StartInteractiveSearch(search::SearchParams const & params) { m_lastSearch = params; }
+  void StartInteractiveSearch(search::SearchParams const & params);
   bool IsISActive() const { return !m_lastSearch.m_query.empty(); }
   void CancelInteractiveSearch();
 
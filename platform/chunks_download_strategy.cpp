@@ -7,16 +7,18 @@
 #include "base/logging.hpp"
 
 #include "std/algorithm.hpp"
+#include "std/limits.hpp"
 
 
 namespace downloader
 {
 
 ChunksDownloadStrategy::ChunksDownloadStrategy(vector<string> const & urls)
+  : m_maxChunksInProgress(0)
 {
   // init servers list
   for (size_t i = 0; i < urls.size(); ++i)
-    m_servers.push_back(ServerT(urls[i], SERVER_READY));
+    m_servers.push_back(ServerT(urls[i]));
 }
 
 pair<ChunksDownloadStrategy::ChunkT *, int>
@@ -61,7 +63,7 @@ void ChunksDownloadStrategy::AddChunk(RangeT const & range, ChunkStatusT status)
   m_chunks.push_back(ChunkT(range.second + 1, CHUNK_AUX));
 }
 
-void ChunksDownloadStrategy::SaveChunks(int64_t fileSize, string const & fName)
+bool ChunksDownloadStrategy::SaveChunks(int64_t fileSize, string const & fName)
 {
   if (!m_chunks.empty())
   {
@@ -71,7 +73,7 @@ void ChunksDownloadStrategy::SaveChunks(int64_t fileSize, string const & fName)
       WriteVarInt(w, fileSize);
 
       w.Write(&m_chunks[0], sizeof(ChunkT) * m_chunks.size());
-      return;
+      return true;
     }
     catch (FileWriter::Exception const & e)
     {
@@ -81,6 +83,7 @@ void ChunksDownloadStrategy::SaveChunks(int64_t fileSize, string const & fName)
 
   // Delete if no chunks or some error occured.
   (void)FileWriter::DeleteFileX(fName);
+  return false;
 }
 
 int64_t ChunksDownloadStrategy::LoadOrInitChunks( string const & fName,
@@ -129,36 +132,69 @@ int64_t ChunksDownloadStrategy::LoadOrInitChunks( string const & fName,
   return 0;
 }
 
+int64_t ChunksDownloadStrategy::CompleteChunks(vector<RangeT> ranges)
+{
+  // Merge overlapping and adjacent ranges.
+  sort(ranges.begin(), ranges.end());
+  vector<RangeT> merged;
+  for (size_t i = 0; i < ranges.size(); ++i)
+  {
+    if (!merged.empty() && ranges[i].first <= merged.back().second + 1)
+      merged.back().second = max(merged.back().second, ranges[i].second);
+    else
+      merged.push_back(ranges[i]);
+  }
+
+  int64_t completedSize = 0;
+  for (size_t i = 0; i + 1 < m_chunks.size(); ++i)
+  {
+    ChunkT & chunk = m_chunks[i];
+    if (chunk.m_status == CHUNK_COMPLETE)
+      continue;
+
+    int64_t const chunkEnd = m_chunks[i + 1].m_pos - 1;
+
+    // The last merged range which starts not after the chunk.
+    vector<RangeT>::const_iterator it = upper_bound(merged.begin(), merged.end(),
+                                                    RangeT(chunk.m_pos, numeric_limits<int64_t>::max()));
+    if (it != merged.begin() && (it - 1)->second >= chunkEnd)
+    {
+      chunk.m_status = CHUNK_COMPLETE;
+      completedSize += chunkEnd - chunk.m_pos + 1;
+    }
+  }
+
+  return completedSize;
+}
+
 void ChunksDownloadStrategy::ChunkFinished(bool success, RangeT const & range)
 {
   pair<ChunkT *, int> res = GetChunk(range);
+  if (!res.first)
+    return;
 
   // find server which was downloading this chunk
-  if (res.first)
+  for (size_t s = 0; s < m_servers.size(); ++s)
   {
-    for (size_t s = 0; s < m_servers.size(); ++s)
+    vector<int> & indexes = m_servers[s].m_chunkIndexes;
+    vector<int>::iterator const it = find(indexes.begin(), indexes.end(), res.second);
+    if (it == indexes.end())
+      continue;
+
+    indexes.erase(it);
+    if (!success)
     {
-      if (m_servers[s].m_chunkIndex == res.second)
-      {
-        if (success)
-        {
-          // mark server as free and chunk as ready
-          m_servers[s].m_chunkIndex = SERVER_READY;
-          res.first->m_status = CHUNK_COMPLETE;
-        }
-        else
-        {
-          LOG(LINFO, ("Thread for url", m_servers[s].m_url,
-                      "failed to download chunk number", m_servers[s].m_chunkIndex));
-
-          // remove failed server and mark chunk as free
-          m_servers.erase(m_servers.begin() + s);
-          res.first->m_status = CHUNK_FREE;
-        }
-        break;
-      }
+      LOG(LINFO, ("Thread for url", m_servers[s].m_url,
+                  "failed to download chunk number", res.second));
+
+      // remove failed server
+      m_servers.erase(m_servers.begin() + s);
     }
+    break;
   }
+
+  // Server may be already removed because of another failed chunk.
+  res.first->m_status = (success ? CHUNK_COMPLETE : CHUNK_FREE);
 }
 
 ChunksDownloadStrategy::ResultT
@@ -168,17 +204,17 @@ ChunksDownloadStrategy::NextChunk(string & outUrl, RangeT & range)
   if (m_servers.empty())
     return EDownloadFailed;
 
-  // Find first free server.
+  // Find the least loaded server, if the limit of chunks in progress is not reached.
+  size_t const maxChunks = (m_maxChunksInProgress == 0 ? m_servers.size() : m_maxChunksInProgress);
+  size_t chunksInProgress = 0;
   ServerT * server = 0;
   for (size_t i = 0; i < m_servers.size(); ++i)
   {
-    if (m_servers[i].m_chunkIndex == SERVER_READY)
-    {
+    chunksInProgress += m_servers[i].m_chunkIndexes.size();
+    if (server == 0 || m_servers[i].m_chunkIndexes.size() < server->m_chunkIndexes.size())
       server = &m_servers[i];
-      break;
-    }
   }
-  if (server == 0)
+  if (chunksInProgress >= maxChunks)
     return ENoFreeServers;
 
   bool allChunksDownloaded = true;
@@ -189,7 +225,7 @@ ChunksDownloadStrategy::NextChunk(string & outUrl, RangeT & range)
     switch (m_chunks[i].m_status)
     {
     case CHUNK_FREE:
-      server->m_chunkIndex = static_cast<int>(i);
+      server->m_chunkIndexes.push_back(static_cast<int>(i));
       outUrl = server->m_url;
 
       range.first = m_chunks[i].m_pos;
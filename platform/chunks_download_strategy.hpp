@@ -34,16 +34,18 @@ private:
 
   vector<ChunkT> m_chunks;
 
-  static const int SERVER_READY = -1;
   struct ServerT
   {
     string m_url;
-    int m_chunkIndex;
+    /// Indexes of chunks which are being downloaded from this server.
+    vector<int> m_chunkIndexes;
 
-    ServerT(string const & url, int ind) : m_url(url), m_chunkIndex(ind) {}
+    explicit ServerT(string const & url) : m_url(url) {}
   };
 
   vector<ServerT> m_servers;
+  /// 0 means one chunk per server.
+  size_t m_maxChunksInProgress;
 
   struct LessChunks
   {
@@ -66,13 +68,22 @@ public:
   /// Used in unit tests only!
   void AddChunk(RangeT const & range, ChunkStatusT status);
 
-  void SaveChunks(int64_t fileSize, string const & fName);
+  /// @return false if chunks were not saved.
+  bool SaveChunks(int64_t fileSize, string const & fName);
   /// @return Already downloaded size.
   int64_t LoadOrInitChunks(string const & fName, int64_t fileSize, int64_t chunkSize);
 
+  /// Marks chunks, which are completely covered by given (possibly adjacent) ranges, as downloaded.
+  /// @return Size of newly completed chunks.
+  int64_t CompleteChunks(vector<RangeT> ranges);
+
   /// Should be called for every completed chunk (no matter successful or not).
   void ChunkFinished(bool success, RangeT const & range);
 
+  /// Sets how many chunks can be downloaded at once from all servers together.
+  /// They are spread evenly between servers. By default (count is 0) it's one chunk per server.
+  void SetMaxChunksInProgress(size_t count) { m_maxChunksInProgress = count; }
+
   enum ResultT
   {
     ENextChunk,
@@ -6,9 +6,12 @@
 
 namespace platform
 {
-CountryFile::CountryFile() : m_mapSize(0), m_routingSize(0) {}
+CountryFile::CountryFile() : m_mapSize(0), m_routingSize(0), m_mapCrc32(-1), m_routingCrc32(-1) {}
 
-CountryFile::CountryFile(string const & name) : m_name(name), m_mapSize(0), m_routingSize(0) {}
+CountryFile::CountryFile(string const & name)
+  : m_name(name), m_mapSize(0), m_routingSize(0), m_mapCrc32(-1), m_routingCrc32(-1)
+{
+}
 
 string const & CountryFile::GetNameWithoutExt() const { return m_name; }
 
@@ -42,6 +45,37 @@ uint32_t CountryFile::GetRemoteSize(MapOptions filesMask) const
   return size;
 }
 
+void CountryFile::SetRemoteChecksums(int64_t mapCrc32, int64_t routingCrc32)
+{
+  m_mapCrc32 = mapCrc32;
+  m_routingCrc32 = routingCrc32;
+}
+
+int64_t CountryFile::GetRemoteChecksum(MapOptions file) const
+{
+  ASSERT(file == MapOptions::Map || file == MapOptions::CarRouting, (file));
+  return file == MapOptions::Map ? m_mapCrc32 : m_routingCrc32;
+}
+
+void CountryFile::SetPatchSize(MapOptions file, int64_t fromVersion, uint32_t size)
+{
+  ASSERT(file == MapOptions::Map || file == MapOptions::CarRouting, (file));
+  (file == MapOptions::Map ? m_mapPatchSizes : m_routingPatchSizes)[fromVersion] = size;
+}
+
+uint32_t CountryFile::GetPatchSize(MapOptions file, int64_t fromVersion) const
+{
+  map<int64_t, uint32_t> const & sizes = GetPatchSizes(file);
+  auto const it = sizes.find(fromVersion);
+  return it == sizes.end() ? 0 : it->second;
+}
+
+map<int64_t, uint32_t> const & CountryFile::GetPatchSizes(MapOptions file) const
+{
+  ASSERT(file == MapOptions::Map || file == MapOptions::CarRouting, (file));
+  return file == MapOptions::Map ? m_mapPatchSizes : m_routingPatchSizes;
+}
+
 string DebugPrint(CountryFile const & file)
 {
   ostringstream os;
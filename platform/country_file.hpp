@@ -1,6 +1,8 @@
 #pragma once
 
 #include "platform/country_defines.hpp"
+#include "std/cstdint.hpp"
+#include "std/map.hpp"
 #include "std/string.hpp"
 
 namespace platform
@@ -22,6 +24,17 @@ public:
   void SetRemoteSizes(uint32_t mapSize, uint32_t routingSize);
   uint32_t GetRemoteSize(MapOptions filesMask) const;
 
+  /// Checksums are CRC32 of files or -1 if unknown.
+  void SetRemoteChecksums(int64_t mapCrc32, int64_t routingCrc32);
+  int64_t GetRemoteChecksum(MapOptions file) const;
+
+  /// Patches update a single file (Map or CarRouting) from an older data version.
+  void SetPatchSize(MapOptions file, int64_t fromVersion, uint32_t size);
+  /// @returns size of the patch from fromVersion or 0 if there is no such patch on a server.
+  uint32_t GetPatchSize(MapOptions file, int64_t fromVersion) const;
+  /// @returns map from old data version to patch size.
+  map<int64_t, uint32_t> const & GetPatchSizes(MapOptions file) const;
+
   inline bool operator<(const CountryFile & rhs) const { return m_name < rhs.m_name; }
   inline bool operator==(const CountryFile & rhs) const { return m_name == rhs.m_name; }
   inline bool operator!=(const CountryFile & rhs) const { return !(*this == rhs); }
@@ -33,6 +46,10 @@ private:
   string m_name;
   uint32_t m_mapSize;
   uint32_t m_routingSize;
+  int64_t m_mapCrc32;
+  int64_t m_routingCrc32;
+  map<int64_t, uint32_t> m_mapPatchSizes;
+  map<int64_t, uint32_t> m_routingPatchSizes;
 };
 
 string DebugPrint(CountryFile const & file);
@@ -9,12 +9,20 @@
 #endif
 
 #include "coding/internal/file_data.hpp"
+#include "coding/file_reader.hpp"
 #include "coding/file_writer.hpp"
+#include "coding/reader.hpp"
+#include "coding/write_to_sink.hpp"
 
 #include "base/logging.hpp"
 
+#include "std/atomic.hpp"
+#include "std/map.hpp"
+#include "std/mutex.hpp"
 #include "std/unique_ptr.hpp"
 
+#include <boost/crc.hpp>
+
 
 #ifdef OMIM_OS_IPHONE
 
@@ -68,6 +76,71 @@ class HttpThread;
 namespace downloader
 {
 
+namespace
+{
+
+atomic<size_t> g_maxChunksInProgress(0);
+
+uint32_t Gf2MatrixTimes(uint32_t const * mat, uint32_t vec)
+{
+  uint32_t sum = 0;
+  for (; vec != 0; vec >>= 1, ++mat)
+  {
+    if (vec & 1)
+      sum ^= *mat;
+  }
+  return sum;
+}
+
+void Gf2MatrixSquare(uint32_t * square, uint32_t const * mat)
+{
+  for (int n = 0; n < 32; ++n)
+    square[n] = Gf2MatrixTimes(mat, mat[n]);
+}
+
+} // namespace
+
+uint32_t CombineCrc32(uint32_t crc1, uint32_t crc2, int64_t len2)
+{
+  if (len2 <= 0)
+    return crc1;
+
+  uint32_t even[32];
+  uint32_t odd[32];
+
+  // Operator for one zero bit.
+  odd[0] = 0xEDB88320;
+  uint32_t row = 1;
+  for (int n = 1; n < 32; ++n)
+  {
+    odd[n] = row;
+    row <<= 1;
+  }
+
+  // Operators for two and four zero bits.
+  Gf2MatrixSquare(even, odd);
+  Gf2MatrixSquare(odd, even);
+
+  // Apply len2 zero bytes to crc1, the first square gives operator for one zero byte.
+  do
+  {
+    Gf2MatrixSquare(even, odd);
+    if (len2 & 1)
+      crc1 = Gf2MatrixTimes(even, crc1);
+    len2 >>= 1;
+
+    if (len2 == 0)
+      break;
+
+    Gf2MatrixSquare(odd, even);
+    if (len2 & 1)
+      crc1 = Gf2MatrixTimes(odd, crc1);
+    len2 >>= 1;
+  } while (len2 != 0);
+
+  return crc1 ^ crc2;
+}
+
 /// @return 0 if creation failed
 HttpThread * CreateNativeHttpThread(string const & url,
                                     IHttpThreadCallback & callback,
@@ -145,6 +218,27 @@ class FileHttpRequest : public HttpRequest, public IHttpThreadCallback
 
   string m_filePath;
   unique_ptr<FileWriter> m_writer;
+  /// Guards m_writer and m_writtenParts, because chunks can be written from download threads.
+  mutex m_writerMutex;
+
+  /// Contiguous written part of a chunk in progress.
+  struct WrittenPartT
+  {
+    int64_t m_beg;
+    boost::crc_32_type m_crc;
+  };
+  /// Written parts by their end (exclusive) offset. Chunk can consist of several parts,
+  /// if its range was split between connections.
+  map<int64_t, WrittenPartT> m_writtenParts;
+
+  /// Append-only journal with checksums of ranges completed since the resume file was saved.
+  /// Used from the main thread only.
+  unique_ptr<FileWriter> m_journal;
+
+  /// Checksums of completed ranges: begin -> (end, crc). Used from the main thread only.
+  typedef map<int64_t, pair<int64_t, uint32_t> > RangeChecksumsT;
+  RangeChecksumsT m_rangeChecksums;
+  int64_t m_expectedCrc32;
 
   size_t m_goodChunksCount;
   bool m_doCleanProgressFiles;
@@ -154,6 +248,7 @@ class FileHttpRequest : public HttpRequest, public IHttpThreadCallback
     string url;
     pair<int64_t, int64_t> range;
     ChunksDownloadStrategy::ResultT result;
+    m_strategy.SetMaxChunksInProgress(g_maxChunksInProgress);
     while ((result = m_strategy.NextChunk(url, range)) == ChunksDownloadStrategy::ENextChunk)
     {
       HttpThread * p = CreateNativeHttpThread(url, *this, range.first, range.second, m_progress.second);
@@ -190,15 +285,15 @@ class FileHttpRequest : public HttpRequest, public IHttpThreadCallback
 
   virtual bool OnWrite(int64_t offset, void const * buffer, size_t size)
   {
-#ifdef DEBUG
-    static threads::ThreadID const id = threads::GetCurrentThreadID();
-    ASSERT_EQUAL(id, threads::GetCurrentThreadID(), ("OnWrite called from different threads"));
-#endif
+    lock_guard<mutex> lock(m_writerMutex);
+    if (!m_writer)
+      return false;
 
     try
     {
       m_writer->Seek(offset);
       m_writer->Write(buffer, size);
+      AddWrittenPart(offset, buffer, size);
       return true;
     }
     catch (Writer::Exception const & e)
@@ -208,14 +303,217 @@ class FileHttpRequest : public HttpRequest, public IHttpThreadCallback
     }
   }
 
+  virtual bool IsBackgroundWriteSupported() const { return true; }
+
+  /// Should be called under m_writerMutex.
+  void AddWrittenPart(int64_t offset, void const * buffer, size_t size)
+  {
+    WrittenPartT part;
+    map<int64_t, WrittenPartT>::iterator const it = m_writtenParts.find(offset);
+    if (it == m_writtenParts.end())
+      part.m_beg = offset;
+    else
+    {
+      part = it->second;
+      m_writtenParts.erase(it);
+    }
+
+    part.m_crc.process_bytes(buffer, size);
+    m_writtenParts[offset + size] = part;
+  }
+
+  /// Appends written parts of successfully finished chunk to the journal.
+  /// Parts of failed chunk are dropped, it will be downloaded again from the beginning.
+  void JournalChunk(bool isChunkOk, int64_t begRange, int64_t endRange)
+  {
+    lock_guard<mutex> lock(m_writerMutex);
+
+    vector<pair<pair<int64_t, int64_t>, uint32_t> > records;
+    map<int64_t, WrittenPartT>::iterator it = m_writtenParts.upper_bound(begRange);
+    while (it != m_writtenParts.end() && it->second.m_beg <= endRange)
+    {
+      records.push_back(make_pair(make_pair(it->second.m_beg, it->first - 1), it->second.m_crc.checksum()));
+      m_writtenParts.erase(it++);
+    }
+
+    if (!isChunkOk)
+      return;
+
+    // Range could be partially journaled in previous session, before it was downloaded again.
+    EraseRangeChecksums(begRange, endRange);
+    for (size_t i = 0; i < records.size(); ++i)
+      m_rangeChecksums[records[i].first.first] = make_pair(records[i].first.second, records[i].second);
+
+    if (!m_journal || !m_writer)
+      return;
+
+    try
+    {
+      // Journal records are valid only if data is already in the file.
+      m_writer->Flush();
+
+      for (size_t i = 0; i < records.size(); ++i)
+      {
+        WriteToSink(*m_journal, records[i].first.first);
+        WriteToSink(*m_journal, records[i].first.second);
+        WriteToSink(*m_journal, records[i].second);
+      }
+      m_journal->Flush();
+    }
+    catch (Writer::Exception const & e)
+    {
+      LOG(LWARNING, ("Can't write downloading journal", e.Msg()));
+      m_journal.reset();
+    }
+  }
+
+  void EraseRangeChecksums(int64_t begRange, int64_t endRange)
+  {
+    RangeChecksumsT::iterator it = m_rangeChecksums.upper_bound(begRange);
+    if (it != m_rangeChecksums.begin())
+    {
+      --it;
+      if (it->second.first < begRange)
+        ++it;
+    }
+
+    while (it != m_rangeChecksums.end() && it->first <= endRange)
+      m_rangeChecksums.erase(it++);
+  }
+
+  /// Combines checksums of ranges into the checksum of the whole file.
+  /// Only ranges downloaded in previous sessions without journal are read from the file.
+  uint32_t CalculateFileCrc32() const
+  {
+    FileReader const file(m_filePath + DOWNLOADING_FILE_EXTENSION);
+    uint32_t res = 0;
+    int64_t pos = 0;
+    RangeChecksumsT::const_iterator it = m_rangeChecksums.begin();
+    while (pos < m_progress.second)
+    {
+      if (it != m_rangeChecksums.end() && it->first < pos)
+      {
+        ASSERT(false, ("Overlapped range checksums", it->first, pos));
+        ++it;
+        continue;
+      }
+
+      if (it != m_rangeChecksums.end() && it->first == pos)
+      {
+        res = CombineCrc32(res, it->second.second, it->second.first - pos + 1);
+        pos = it->second.first + 1;
+        ++it;
+        continue;
+      }
+
+      int64_t const gapBeg = pos;
+      int64_t const gapEnd = (it == m_rangeChecksums.end() ? m_progress.second : it->first);
+      boost::crc_32_type crc;
+      vector<char> buffer(static_cast<size_t>(min(gapEnd - gapBeg, static_cast<int64_t>(64 * 1024))));
+      while (pos < gapEnd)
+      {
+        size_t const size = static_cast<size_t>(min(gapEnd - pos, static_cast<int64_t>(buffer.size())));
+        file.Read(pos, &buffer[0], size);
+        crc.process_bytes(&buffer[0], size);
+        pos += size;
+      }
+      res = CombineCrc32(res, crc.checksum(), gapEnd - gapBeg);
+    }
+    return res;
+  }
+
+  bool VerifyFile() const
+  {
+    try
+    {
+      uint32_t const crc = CalculateFileCrc32();
+      if (crc == m_expectedCrc32)
+        return true;
+
+      LOG(LWARNING, ("Invalid checksum of downloaded file", m_filePath, crc, m_expectedCrc32));
+    }
+    catch (Reader::Exception const & e)
+    {
+      LOG(LWARNING, ("Can't read downloaded file", m_filePath, e.Msg()));
+    }
+    return false;
+  }
+
+  /// Starts new journal, previous records should be already saved in the resume file.
+  void ResetJournal()
+  {
+    try
+    {
+      m_journal.reset(new FileWriter(m_filePath + JOURNAL_FILE_EXTENSION));
+      WriteToSink(*m_journal, m_progress.second);
+      m_journal->Flush();
+    }
+    catch (Writer::Exception const & e)
+    {
+      LOG(LWARNING, ("Can't create downloading journal", e.Msg()));
+      m_journal.reset();
+    }
+  }
+
+  /// Reads journal left by the previous download of the same file and checks ranges by their checksums.
+  /// @return Size of chunks, which are completed according to the journal.
+  int64_t LoadJournal(int64_t fileSize)
+  {
+    vector<pair<int64_t, int64_t> > ranges;
+    try
+    {
+      FileReader const journal(m_filePath + JOURNAL_FILE_EXTENSION);
+      ReaderSource<FileReader> src(journal);
+      if (ReadPrimitiveFromSource<int64_t>(src) != fileSize)
+        return 0;
+
+      FileReader const file(m_filePath + DOWNLOADING_FILE_EXTENSION);
+      size_t const recordSize = 2 * sizeof(int64_t) + sizeof(uint32_t);
+      vector<char> buffer;
+      // Last record can be incomplete, if process was killed while writing it.
+      while (src.Size() >= recordSize)
+      {
+        int64_t const beg = ReadPrimitiveFromSource<int64_t>(src);
+        int64_t const end = ReadPrimitiveFromSource<int64_t>(src);
+        uint32_t const crc = ReadPrimitiveFromSource<uint32_t>(src);
+        if (beg < 0 || end < beg || end >= fileSize || static_cast<uint64_t>(end) >= file.Size())
+          continue;
+
+        buffer.resize(end - beg + 1);
+        file.Read(beg, &buffer[0], buffer.size());
+
+        boost::crc_32_type checksum;
+        checksum.process_bytes(&buffer[0], buffer.size());
+        if (checksum.checksum() == crc)
+        {
+          ranges.push_back(make_pair(beg, end));
+          m_rangeChecksums[beg] = make_pair(end, crc);
+        }
+        else
+          LOG(LWARNING, ("Invalid checksum of downloaded range", beg, end, m_filePath));
+      }
+    }
+    catch (RootException const & e)
+    {
+      // Usually - file not exists or Reader::Exception.
+      LOG(LDEBUG, (e.Msg()));
+    }
+
+    return m_strategy.CompleteChunks(ranges);
+  }
+
   void SaveResumeChunks()
   {
     try
     {
       // Flush writer before saving downloaded chunks.
-      m_writer->Flush();
+      {
+        lock_guard<mutex> lock(m_writerMutex);
+        m_writer->Flush();
+      }
 
-      m_strategy.SaveChunks(m_progress.second, m_filePath + RESUME_FILE_EXTENSION);
+      if (m_strategy.SaveChunks(m_progress.second, m_filePath + RESUME_FILE_EXTENSION))
+        ResetJournal();
     }
     catch (Writer::Exception const & e)
     {
@@ -232,6 +530,7 @@ class FileHttpRequest : public HttpRequest, public IHttpThreadCallback
 #endif
 
     bool const isChunkOk = (httpCode == 200);
+    JournalChunk(isChunkOk, begRange, endRange);
     m_strategy.ChunkFinished(isChunkOk, make_pair(begRange, endRange));
 
     // remove completed chunk from the list, beg is the key
@@ -271,10 +570,20 @@ class FileHttpRequest : public HttpRequest, public IHttpThreadCallback
       // 2. Free file handle.
       CloseWriter();
 
-      // 3. Clean up resume file with chunks range on success
+      // 3. Verify the whole file without reading data which was checked while downloading.
+      if (m_status == ECompleted && m_expectedCrc32 >= 0 && !VerifyFile())
+      {
+        m_status = EFailed;
+        (void)my::DeleteFileX(m_filePath + DOWNLOADING_FILE_EXTENSION);
+        (void)my::DeleteFileX(m_filePath + RESUME_FILE_EXTENSION);
+        (void)my::DeleteFileX(m_filePath + JOURNAL_FILE_EXTENSION);
+      }
+
+      // 4. Clean up resume file with chunks range on success
       if (m_status == ECompleted)
       {
         (void)my::DeleteFileX(m_filePath + RESUME_FILE_EXTENSION);
+        (void)my::DeleteFileX(m_filePath + JOURNAL_FILE_EXTENSION);
 
         // Rename finished file to it's original name.
         (void)my::DeleteFileX(m_filePath);
@@ -283,15 +592,17 @@ class FileHttpRequest : public HttpRequest, public IHttpThreadCallback
         DisableBackupForFile(m_filePath);
       }
 
-      // 4. Finish downloading.
+      // 5. Finish downloading.
       m_onFinish(*this);
     }
   }
 
   void CloseWriter()
   {
+    lock_guard<mutex> lock(m_writerMutex);
     try
     {
+      m_journal.reset();
       m_writer.reset();
     }
     catch (Writer::Exception const & e)
@@ -305,9 +616,9 @@ class FileHttpRequest : public HttpRequest, public IHttpThreadCallback
 public:
   FileHttpRequest(vector<string> const & urls, string const & filePath, int64_t fileSize,
                   CallbackT const & onFinish, CallbackT const & onProgress,
-                  int64_t chunkSize, bool doCleanProgressFiles)
+                  int64_t chunkSize, bool doCleanProgressFiles, int64_t expectedCrc32)
     : HttpRequest(onFinish, onProgress), m_strategy(urls), m_filePath(filePath),
-      m_goodChunksCount(0), m_doCleanProgressFiles(doCleanProgressFiles)
+      m_expectedCrc32(expectedCrc32), m_goodChunksCount(0), m_doCleanProgressFiles(doCleanProgressFiles)
   {
     ASSERT ( !urls.empty(), () );
 
@@ -316,11 +627,22 @@ public:
                                                    fileSize, chunkSize);
     m_progress.second = fileSize;
 
+    // Apply chunks completed after the resume file was saved last time.
+    uint64_t size;
+    if (my::GetFileSize(filePath + DOWNLOADING_FILE_EXTENSION, size) && size <= fileSize)
+    {
+      int64_t const journaledSize = LoadJournal(fileSize);
+      if (journaledSize != 0)
+      {
+        m_progress.first += journaledSize;
+        (void)m_strategy.SaveChunks(fileSize, m_filePath + RESUME_FILE_EXTENSION);
+      }
+    }
+
     FileWriter::Op openMode = FileWriter::OP_WRITE_TRUNCATE;
     if (m_progress.first != 0)
     {
       // Check that resume information is correct with existing file.
-      uint64_t size;
       if (my::GetFileSize(filePath + DOWNLOADING_FILE_EXTENSION, size) && size <= fileSize)
         openMode = FileWriter::OP_WRITE_EXISTING;
       else
@@ -335,6 +657,8 @@ public:
     // Assign here, because previous functions can throw an exception.
     m_writer.swap(writer);
 
+    ResetJournal();
+
 #ifdef OMIM_OS_IPHONE
     DisableBackupForFile(filePath + DOWNLOADING_FILE_EXTENSION);
 #endif
@@ -362,6 +686,7 @@ public:
       {
         (void)my::DeleteFileX(m_filePath + DOWNLOADING_FILE_EXTENSION);
         (void)my::DeleteFileX(m_filePath + RESUME_FILE_EXTENSION);
+        (void)my::DeleteFileX(m_filePath + JOURNAL_FILE_EXTENSION);
       }
     }
   }
@@ -410,14 +735,20 @@ namespace
   };
 }
 
+void HttpRequest::SetMaxChunksInProgress(size_t count)
+{
+  g_maxChunksInProgress = count;
+}
+
 HttpRequest * HttpRequest::GetFile(vector<string> const & urls,
                                    string const & filePath, int64_t fileSize,
                                    CallbackT const & onFinish, CallbackT const & onProgress,
-                                   int64_t chunkSize, bool doCleanOnCancel)
+                                   int64_t chunkSize, bool doCleanOnCancel, int64_t expectedCrc32)
 {
   try
   {
-    return new FileHttpRequest(urls, filePath, fileSize, onFinish, onProgress, chunkSize, doCleanOnCancel);
+    return new FileHttpRequest(urls, filePath, fileSize, onFinish, onProgress, chunkSize, doCleanOnCancel,
+                               expectedCrc32);
   }
   catch (FileWriter::Exception const & e)
   {
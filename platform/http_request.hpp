@@ -52,12 +52,23 @@ public:
 
   /// Download file to filePath.
   /// @param[in]  fileSize  Correct file size (needed for resuming and reserving).
+  /// @param[in]  expectedCrc32  CRC32 of the whole file or -1 if unknown. It's calculated from
+  ///                            downloaded data as it is written, download fails if it doesn't match.
   static HttpRequest * GetFile(vector<string> const & urls,
                                string const & filePath, int64_t fileSize,
                                CallbackT const & onFinish,
                                CallbackT const & onProgress = CallbackT(),
                                int64_t chunkSize = 512 * 1024,
-                               bool doCleanOnCancel = true);
+                               bool doCleanOnCancel = true,
+                               int64_t expectedCrc32 = -1);
+
+  /// Sets how many chunks of a file are downloaded at once. By default (count is 0) it's one chunk
+  /// per server. Can be called from any thread, it's applied when the next chunk is started.
+  static void SetMaxChunksInProgress(size_t count);
 };
 
+/// @return CRC32 of two concatenated blocks by their CRC32 values and the length of the second block.
+/// Algorithm is the same as in crc32_combine() from zlib.
+uint32_t CombineCrc32(uint32_t crc1, uint32_t crc2, int64_t len2);
+
 } // namespace downloader
@@ -10,6 +10,10 @@ class IHttpThreadCallback
 public:
   virtual bool OnWrite(int64_t offset, void const * buffer, size_t size) = 0;
   virtual void OnFinish(long httpCode, int64_t begRange, int64_t endRange) = 0;
+
+  /// @return true if OnWrite can be called from download threads, not only from the main one.
+  /// OnFinish is always called from the main thread.
+  virtual bool IsBackgroundWriteSupported() const { return false; }
 };
 
 } // namespace downloader
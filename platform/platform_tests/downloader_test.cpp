@@ -10,6 +10,7 @@
 #include "coding/file_reader.hpp"
 #include "coding/file_writer.hpp"
 #include "coding/internal/file_data.hpp"
+#include "coding/write_to_sink.hpp"
 
 #include "base/logging.hpp"
 #include "base/std_serialization.hpp"
@@ -19,6 +20,8 @@
 
 #include <QtCore/QCoreApplication>
 
+#include <boost/crc.hpp>
+
 
 #define TEST_URL1 "http://localhost:34568/unit_tests/1.txt"
 #define TEST_URL_404 "http://localhost:34568/unit_tests/notexisting_unittest"
@@ -328,6 +331,104 @@ UNIT_TEST(ChunksDownloadStrategyFAIL)
   TEST_EQUAL(strategy.NextChunk(s2, r2), ChunksDownloadStrategy::EDownloadFailed, ());
 }
 
+UNIT_TEST(ChunksDownloadStrategySeveralChunksPerServer)
+{
+  string const S1 = "UrlOfServer1";
+  string const S2 = "UrlOfServer2";
+
+  typedef pair<int64_t, int64_t> RangeT;
+
+  vector<string> servers;
+  servers.push_back(S1);
+  servers.push_back(S2);
+
+  int64_t const FILE_SIZE = 1500;
+  int64_t const CHUNK_SIZE = 250;
+  ChunksDownloadStrategy strategy(servers);
+  strategy.InitChunks(FILE_SIZE, CHUNK_SIZE);
+  strategy.SetMaxChunksInProgress(4);
+
+  // Chunks are spread evenly between servers.
+  string s[4];
+  RangeT r[4];
+  for (size_t i = 0; i < 4; ++i)
+    TEST_EQUAL(strategy.NextChunk(s[i], r[i]), ChunksDownloadStrategy::ENextChunk, (i));
+  TEST_EQUAL(s[0], S1, ());
+  TEST_EQUAL(s[1], S2, ());
+  TEST_EQUAL(s[2], S1, ());
+  TEST_EQUAL(s[3], S2, ());
+
+  string sEmpty;
+  RangeT rEmpty;
+  TEST_EQUAL(strategy.NextChunk(sEmpty, rEmpty), ChunksDownloadStrategy::ENoFreeServers, ());
+
+  // Limit is applied when the next chunk is started.
+  strategy.SetMaxChunksInProgress(3);
+  strategy.ChunkFinished(true, r[0]);
+  TEST_EQUAL(strategy.NextChunk(sEmpty, rEmpty), ChunksDownloadStrategy::ENoFreeServers, ());
+  strategy.SetMaxChunksInProgress(4);
+
+  string s4;
+  RangeT r4;
+  TEST_EQUAL(strategy.NextChunk(s4, r4), ChunksDownloadStrategy::ENextChunk, ());
+  TEST_EQUAL(s4, S1, ());
+  TEST_EQUAL(r4, RangeT(1000, 1249), ());
+
+  // Failed server is removed, but its other chunk is still completed.
+  strategy.ChunkFinished(false, r[1]);
+  strategy.ChunkFinished(true, r[3]);
+
+  string s5;
+  RangeT r5;
+  TEST_EQUAL(strategy.NextChunk(s5, r5), ChunksDownloadStrategy::ENextChunk, ());
+  TEST_EQUAL(s5, S1, ());
+  TEST_EQUAL(r5, r[1], ());
+
+  string s6;
+  RangeT r6;
+  TEST_EQUAL(strategy.NextChunk(s6, r6), ChunksDownloadStrategy::ENextChunk, ());
+  TEST_EQUAL(s6, S1, ());
+  TEST_EQUAL(r6, RangeT(1250, 1499), ());
+
+  strategy.ChunkFinished(true, r[2]);
+  strategy.ChunkFinished(true, r4);
+  strategy.ChunkFinished(true, r5);
+  TEST_EQUAL(strategy.NextChunk(sEmpty, rEmpty), ChunksDownloadStrategy::ENoFreeServers, ());
+  strategy.ChunkFinished(true, r6);
+  TEST_EQUAL(strategy.NextChunk(sEmpty, rEmpty), ChunksDownloadStrategy::EDownloadSucceeded, ());
+}
+
+UNIT_TEST(ChunksDownloadStrategyCompleteChunks)
+{
+  typedef pair<int64_t, int64_t> RangeT;
+
+  vector<string> servers;
+  servers.push_back("UrlOfServer1");
+
+  int64_t const FILE_SIZE = 800;
+  int64_t const CHUNK_SIZE = 250;
+  ChunksDownloadStrategy strategy(servers);
+  strategy.InitChunks(FILE_SIZE, CHUNK_SIZE);
+
+  vector<RangeT> ranges;
+  // The first chunk is written by two connections.
+  ranges.push_back(RangeT(100, 249));
+  ranges.push_back(RangeT(0, 99));
+  // The second one is incomplete.
+  ranges.push_back(RangeT(250, 400));
+  // The last one.
+  ranges.push_back(RangeT(750, 799));
+
+  TEST_EQUAL(strategy.CompleteChunks(ranges), 300, ());
+  // Already completed chunks are not counted again.
+  TEST_EQUAL(strategy.CompleteChunks(ranges), 0, ());
+
+  string s;
+  RangeT r;
+  TEST_EQUAL(strategy.NextChunk(s, r), ChunksDownloadStrategy::ENextChunk, ());
+  TEST_EQUAL(r, RangeT(250, 499), ());
+}
+
 namespace
 {
   string ReadFileAsString(string const & file)
@@ -353,6 +454,7 @@ namespace
     uint64_t size;
     TEST(!my::GetFileSize(file + DOWNLOADING_FILE_EXTENSION, size), ("No downloading file on success"));
     TEST(!my::GetFileSize(file + RESUME_FILE_EXTENSION, size), ("No resume file on success"));
+    TEST(!my::GetFileSize(file + JOURNAL_FILE_EXTENSION, size), ("No journal file on success"));
   }
 
   void FinishDownloadFail(string const & file)
@@ -361,6 +463,7 @@ namespace
     TEST(!my::GetFileSize(file, size), ("No result file on fail"));
 
     (void)my::DeleteFileX(file + DOWNLOADING_FILE_EXTENSION);
+    (void)my::DeleteFileX(file + JOURNAL_FILE_EXTENSION);
 
     TEST(my::DeleteFileX(file + RESUME_FILE_EXTENSION), ("Resume file should present on fail"));
   }
@@ -372,8 +475,9 @@ namespace
   {
     // Remove data from previously failed files.
 
-    // Get regexp like this: (\.downloading3$|\.resume3$)
-    string const regexp = "(\\" RESUME_FILE_EXTENSION "$|\\" DOWNLOADING_FILE_EXTENSION "$)";
+    // Get regexp like this: (\.downloading3$|\.resume3$|\.journal3$)
+    string const regexp = "(\\" RESUME_FILE_EXTENSION "$|\\" DOWNLOADING_FILE_EXTENSION "$|\\"
+                          JOURNAL_FILE_EXTENSION "$)";
 
     Platform::FilesList files;
     Platform::GetFilesByRegExp(".", regexp, files);
@@ -500,6 +604,81 @@ UNIT_TEST(DownloadChunks)
   }
 }
 
+namespace
+{
+  uint32_t Crc32(string const & data)
+  {
+    boost::crc_32_type crc;
+    crc.process_bytes(data.data(), data.size());
+    return crc.checksum();
+  }
+}
+
+UNIT_TEST(CombineCrc32)
+{
+  // Value from zlib's crc32().
+  TEST_EQUAL(CombineCrc32(Crc32("Test"), Crc32("1"), 1), 1265890278, ());
+
+  string const data = "0123456789abcdefghijklmnopqrstuvwxyz";
+  for (size_t split = 0; split <= data.size(); ++split)
+  {
+    string const first = data.substr(0, split);
+    string const second = data.substr(split);
+    TEST_EQUAL(CombineCrc32(Crc32(first), Crc32(second), second.size()), Crc32(data), (split));
+  }
+}
+
+UNIT_TEST(DownloadChunksWithChecksum)
+{
+  string const FILENAME = "some_downloader_test_file";
+  string const SHA256 = "49F7BC24B6137C339DFE2D538EE533C7DC6AF89FACBCCE750D7B682C77D61FB1";
+  int64_t const FILESIZE = 47684;
+  int64_t const CRC32 = 0xEB317D80;
+
+  // remove data from previously failed files
+  DeleteTempDownloadFiles();
+
+  DownloadObserver observer;
+  HttpRequest::CallbackT onFinish = bind(&DownloadObserver::OnDownloadFinish, &observer, _1);
+  HttpRequest::CallbackT onProgress = bind(&DownloadObserver::OnDownloadProgress, &observer, _1);
+
+  vector<string> urls;
+  urls.push_back(TEST_URL_BIG_FILE);
+  urls.push_back(TEST_URL_BIG_FILE);
+  urls.push_back(TEST_URL_BIG_FILE);
+
+  {
+    // 3 threads, checksum of the whole file is combined from chunks - succeeded
+    unique_ptr<HttpRequest> const request(HttpRequest::GetFile(urls, FILENAME, FILESIZE,
+                                                         onFinish, onProgress, 2048,
+                                                         true /* doCleanOnCancel */, CRC32));
+    QCoreApplication::exec();
+
+    observer.TestOk();
+
+    TEST_EQUAL(sha2::digest256(ReadFileAsString(FILENAME)), SHA256, ());
+
+    FinishDownloadSuccess(FILENAME);
+  }
+
+  observer.Reset();
+
+  {
+    // wrong checksum - fail, nothing is kept to resume from
+    unique_ptr<HttpRequest> const request(HttpRequest::GetFile(urls, FILENAME, FILESIZE,
+                                                         onFinish, onProgress, 2048,
+                                                         true /* doCleanOnCancel */, CRC32 + 1));
+    QCoreApplication::exec();
+
+    observer.TestFailed();
+
+    uint64_t size;
+    TEST(!my::GetFileSize(FILENAME, size), ("No result file on fail"));
+    TEST(!my::GetFileSize(FILENAME + DOWNLOADING_FILE_EXTENSION, size), ("No downloading file"));
+    TEST(!my::GetFileSize(FILENAME + RESUME_FILE_EXTENSION, size), ("No resume file"));
+    TEST(!my::GetFileSize(FILENAME + JOURNAL_FILE_EXTENSION, size), ("No journal file"));
+  }
+}
 
 namespace
 {
@@ -603,6 +782,102 @@ UNIT_TEST(DownloadResumeChunks)
   }
 }
 
+UNIT_TEST(DownloadResumeChunksFromJournal)
+{
+  string const FILENAME = "some_test_filename_12345";
+  string const RESUME_FILENAME = FILENAME + RESUME_FILE_EXTENSION;
+  string const DOWNLOADING_FILENAME = FILENAME + DOWNLOADING_FILE_EXTENSION;
+  string const JOURNAL_FILENAME = FILENAME + JOURNAL_FILE_EXTENSION;
+  string const SHA256 = "49F7BC24B6137C339DFE2D538EE533C7DC6AF89FACBCCE750D7B682C77D61FB1";
+
+  // remove data from previously failed files
+  DeleteTempDownloadFiles();
+
+  vector<string> urls;
+  urls.push_back(TEST_URL_BIG_FILE);
+
+  // 1st step - download full file
+  string data;
+  {
+    DownloadObserver observer;
+
+    unique_ptr<HttpRequest> const request(HttpRequest::GetFile(urls, FILENAME, FILESIZE,
+                            bind(&DownloadObserver::OnDownloadFinish, &observer, _1),
+                            bind(&DownloadObserver::OnDownloadProgress, &observer, _1)));
+
+    QCoreApplication::exec();
+
+    observer.TestOk();
+
+    data = ReadFileAsString(FILENAME);
+    TEST_EQUAL(sha2::digest256(data), SHA256, ());
+  }
+
+  // 2nd step - simulate a process killed after some chunks were completed,
+  // but before the resume file was saved again
+  {
+    TEST(my::RenameFileX(FILENAME, DOWNLOADING_FILENAME), ());
+
+    FileWriter f(DOWNLOADING_FILENAME, FileWriter::OP_WRITE_EXISTING);
+    f.Seek(beg1);
+    char b1[end1 - beg1 + 1] = {0};
+    f.Write(b1, ARRAY_SIZE(b1));
+
+    f.Seek(beg2);
+    char b2[end2 - beg2 + 1] = {0};
+    f.Write(b2, ARRAY_SIZE(b2));
+
+    // resume file knows nothing about completed chunks
+    ChunksDownloadStrategy strategy((vector<string>()));
+    strategy.AddChunk(make_pair(int64_t(0), beg1-1), ChunksDownloadStrategy::CHUNK_FREE);
+    strategy.AddChunk(make_pair(beg1, end1), ChunksDownloadStrategy::CHUNK_FREE);
+    strategy.AddChunk(make_pair(end1+1, beg2-1), ChunksDownloadStrategy::CHUNK_FREE);
+    strategy.AddChunk(make_pair(beg2, end2), ChunksDownloadStrategy::CHUNK_FREE);
+
+    strategy.SaveChunks(FILESIZE, RESUME_FILENAME);
+
+    FileWriter journal(JOURNAL_FILENAME);
+    WriteToSink(journal, FILESIZE);
+
+    // the first chunk was written by two parts
+    int64_t const mid1 = beg1 / 2;
+    WriteToSink(journal, int64_t(0));
+    WriteToSink(journal, mid1 - 1);
+    WriteToSink(journal, Crc32(data.substr(0, mid1)));
+    WriteToSink(journal, mid1);
+    WriteToSink(journal, beg1 - 1);
+    WriteToSink(journal, Crc32(data.substr(mid1, beg1 - mid1)));
+
+    WriteToSink(journal, end1 + 1);
+    WriteToSink(journal, beg2 - 1);
+    WriteToSink(journal, Crc32(data.substr(end1 + 1, beg2 - end1 - 1)));
+
+    // data in the file doesn't match the record - range should be downloaded again
+    WriteToSink(journal, beg1);
+    WriteToSink(journal, end1);
+    WriteToSink(journal, Crc32(data.substr(beg1, end1 - beg1 + 1)));
+
+    // incomplete record of killed process
+    WriteToSink(journal, beg2);
+  }
+
+  // 3rd step - check that journaled chunks are not downloaded again
+  {
+    ResumeChecker checker;
+    unique_ptr<HttpRequest> const request(HttpRequest::GetFile(urls, FILENAME, FILESIZE,
+                                                         bind(&ResumeChecker::OnFinish, &checker, _1),
+                                                         bind(&ResumeChecker::OnProgress, &checker, _1)));
+    // completed chunks are restored from the journal before downloading starts
+    TEST_EQUAL(request->Progress(), HttpRequest::ProgressT(beg2 - (end1 - beg1 + 1), FILESIZE), ());
+
+    QCoreApplication::exec();
+
+    TEST_EQUAL(sha2::digest256(ReadFileAsString(FILENAME)), SHA256, ());
+
+    FinishDownloadSuccess(FILENAME);
+  }
+}
+
 // Unit test with forcible canceling of http request
 UNIT_TEST(DownloadResumeChunksWithCancel)
 {
@@ -0,0 +1,161 @@
+#include "results_cache.hpp"
+
+#include "indexer/search_delimiters.hpp"
+#include "indexer/search_string_utils.hpp"
+
+#include "base/stl_add.hpp"
+#include "base/string_utils.hpp"
+
+#include "std/algorithm.hpp"
+#include "std/cmath.hpp"
+#include "std/sstream.hpp"
+#include "std/vector.hpp"
+
+namespace search
+{
+namespace
+{
+// Size of the grid cell in mercator units (about 1 km at the equator) to quantize rank pivot.
+double constexpr kCellSize = 0.01;
+
+int32_t Quantize(double v) { return static_cast<int32_t>(floor(v / kCellSize)); }
+
+void Tokenize(string const & s, vector<strings::UniString> & tokens)
+{
+  SplitUniString(NormalizeAndSimplifyString(s), MakeBackInsertFunctor(tokens), Delimiters());
+}
+
+bool IsPrefix(strings::UniString const & prefix, strings::UniString const & s)
+{
+  return prefix.size() <= s.size() && equal(prefix.begin(), prefix.end(), s.begin());
+}
+}  // namespace
+
+ResultsCache::Key::Key(string const & query, string const & locale, int mode,
+                       m2::PointD const & pivot, m2::RectD const & viewport)
+  : m_query(query)
+  , m_locale(locale)
+  , m_mode(mode)
+  , m_x(Quantize(pivot.x))
+  , m_y(Quantize(pivot.y))
+  , m_scale(static_cast<int32_t>(floor(log2(max(viewport.SizeX(), viewport.SizeY()) + 1e-9))))
+{
+}
+
+bool ResultsCache::Key::IsSameArea(Key const & rhs) const
+{
+  return m_locale == rhs.m_locale && m_mode == rhs.m_mode && m_x == rhs.m_x && m_y == rhs.m_y &&
+         m_scale == rhs.m_scale;
+}
+
+bool ResultsCache::Key::operator==(Key const & rhs) const
+{
+  return m_query == rhs.m_query && IsSameArea(rhs);
+}
+
+double ResultsCache::Stats::GetHitRate() const
+{
+  size_t const total = m_hits + m_prefixHits + m_misses;
+  return total == 0 ? 0.0 : static_cast<double>(m_hits) / total;
+}
+
+ResultsCache::ResultsCache(size_t maxSize) : m_maxSize(maxSize) {}
+
+ResultsCache::LookupResult ResultsCache::Find(Key const & key, Results & results)
+{
+  auto prefixIt = m_entries.end();
+  for (auto it = m_entries.begin(); it != m_entries.end(); ++it)
+  {
+    if (it->first == key)
+    {
+      // Move to the front as the most recently used.
+      m_entries.splice(m_entries.begin(), m_entries, it);
+      results = it->second;
+      ++m_stats.m_hits;
+      return LookupResult::Hit;
+    }
+
+    Key const & cached = it->first;
+    if (cached.IsSameArea(key) && cached.m_query.size() < key.m_query.size() &&
+        strings::StartsWith(key.m_query, cached.m_query.c_str()) &&
+        (prefixIt == m_entries.end() || prefixIt->first.m_query.size() < cached.m_query.size()))
+    {
+      prefixIt = it;
+    }
+  }
+
+  if (prefixIt == m_entries.end())
+  {
+    ++m_stats.m_misses;
+    return LookupResult::Miss;
+  }
+
+  m_entries.splice(m_entries.begin(), m_entries, prefixIt);
+  results.Clear();
+  for (auto it = prefixIt->second.Begin(); it != prefixIt->second.End(); ++it)
+  {
+    if (!it->IsSuggest() && IsNameMatched(key.m_query, it->GetString()))
+      results.AddResultNoChecks(Result(*it));
+  }
+  ++m_stats.m_prefixHits;
+  return LookupResult::PrefixHit;
+}
+
+bool ResultsCache::Contains(Key const & key) const
+{
+  return any_of(m_entries.begin(), m_entries.end(), [&key](TEntry const & e)
+  {
+    return e.first == key;
+  });
+}
+
+void ResultsCache::Put(Key const & key, Results const & results)
+{
+  auto it = find_if(m_entries.begin(), m_entries.end(), [&key](TEntry const & e)
+  {
+    return e.first == key;
+  });
+  if (it != m_entries.end())
+    m_entries.erase(it);
+
+  m_entries.emplace_front(key, results);
+  while (m_entries.size() > m_maxSize)
+  {
+    m_entries.pop_back();
+    ++m_stats.m_evictions;
+  }
+}
+
+void ResultsCache::Clear()
+{
+  m_entries.clear();
+}
+
+bool IsNameMatched(string const & query, string const & name)
+{
+  vector<strings::UniString> queryTokens, nameTokens;
+  Tokenize(query, queryTokens);
+  Tokenize(name, nameTokens);
+
+  for (auto const & token : queryTokens)
+  {
+    if (none_of(nameTokens.begin(), nameTokens.end(), [&token](strings::UniString const & s)
+                {
+                  return IsPrefix(token, s);
+                }))
+    {
+      return false;
+    }
+  }
+  return true;
+}
+
+string DebugPrint(ResultsCache::Stats const & stats)
+{
+  ostringstream os;
+  os << "ResultsCache::Stats [ hits: " << stats.m_hits << ", prefix hits: " << stats.m_prefixHits
+     << ", misses: " << stats.m_misses << ", evictions: " << stats.m_evictions
+     << ", hit rate: " << stats.GetHitRate() << " ]";
+  return os.str();
+}
+}  // namespace search
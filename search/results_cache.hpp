@@ -0,0 +1,83 @@
+#pragma once
+
+#include "search/result.hpp"
+
+#include "geometry/point2d.hpp"
+#include "geometry/rect2d.hpp"
+
+#include "std/list.hpp"
+#include "std/string.hpp"
+#include "std/utility.hpp"
+
+namespace search
+{
+/// LRU cache of finished search queries.
+/// Queries are considered equal when they have the same text and are made around the same place
+/// at about the same map scale, so small map movements don't invalidate results.
+class ResultsCache
+{
+public:
+  struct Key
+  {
+    Key() = default;
+    /// @param[in] pivot point results are ranked around.
+    /// @param[in] viewport current viewport, only its size is taken into account.
+    Key(string const & query, string const & locale, int mode, m2::PointD const & pivot,
+        m2::RectD const & viewport);
+
+    /// @returns true if keys differ in query text only.
+    bool IsSameArea(Key const & rhs) const;
+    bool operator==(Key const & rhs) const;
+
+    string m_query;
+    string m_locale;
+    int m_mode = 0;
+    int32_t m_x = 0;
+    int32_t m_y = 0;
+    int32_t m_scale = 0;
+  };
+
+  struct Stats
+  {
+    double GetHitRate() const;
+
+    size_t m_hits = 0;
+    size_t m_prefixHits = 0;
+    size_t m_misses = 0;
+    size_t m_evictions = 0;
+  };
+
+  enum class LookupResult
+  {
+    Miss,
+    /// Results of the same query are returned.
+    Hit,
+    /// Results of the longest cached query which is a prefix of the requested one are returned,
+    /// filtered to those which still match the requested query by name.
+    PrefixHit
+  };
+
+  explicit ResultsCache(size_t maxSize);
+
+  LookupResult Find(Key const & key, Results & results);
+  /// Doesn't change LRU order and stats.
+  bool Contains(Key const & key) const;
+  void Put(Key const & key, Results const & results);
+  void Clear();
+
+  Stats const & GetStats() const { return m_stats; }
+
+private:
+  using TEntry = pair<Key, Results>;
+
+  /// Most recently used entries go first.
+  list<TEntry> m_entries;
+  size_t const m_maxSize;
+  Stats m_stats;
+};
+
+/// @returns true if each token of the query is a prefix of some token of the name.
+bool IsNameMatched(string const & query, string const & name);
+
+string DebugPrint(ResultsCache::Stats const & stats);
+}  // namespace search
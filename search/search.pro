@@ -23,6 +23,7 @@ HEADERS += \
     params.hpp \
     query_saver.hpp \
     result.hpp \
+    results_cache.hpp \
     retrieval.hpp \
     search_common.hpp \
     search_engine.hpp \
@@ -30,6 +31,7 @@ HEADERS += \
     search_query_factory.hpp \
     search_query_params.hpp \
     search_string_intersection.hpp \
+    viewport_search_throttle.hpp \
 
 SOURCES += \
     approximate_string_match.cpp \
@@ -43,7 +45,9 @@ SOURCES += \
     params.cpp \
     query_saver.cpp \
     result.cpp \
+    results_cache.cpp \
     retrieval.cpp \
     search_engine.cpp \
     search_query.cpp \
     search_query_params.cpp \
+    viewport_search_throttle.cpp \
@@ -14,6 +14,7 @@
 
 #include "geometry/distance_on_sphere.hpp"
 
+#include "base/logging.hpp"
 #include "base/stl_add.hpp"
 
 #include "std/map.hpp"
@@ -77,7 +78,8 @@ public:
 Engine::Engine(IndexType const * pIndex, Reader * pCategoriesR, ModelReaderPtr polyR,
                ModelReaderPtr countryR, string const & locale,
                unique_ptr<SearchQueryFactory> && factory)
-    : m_pFactory(move(factory)), m_pData(new EngineData(pCategoriesR, polyR, countryR))
+    : m_pFactory(move(factory)), m_pData(new EngineData(pCategoriesR, polyR, countryR)),
+      m_resultsCache(RESULTS_CACHE_SIZE), m_prefetchGeneration(0)
 {
   m_isReadyThread.clear();
 
@@ -135,12 +137,21 @@ bool Engine::Search(SearchParams const & params, m2::RectD const & viewport)
     m_viewport = viewport;
   }
 
+  // Stop prefetching, user's query goes first.
+  ++m_prefetchGeneration;
+
   // Run task.
   GetPlatform().RunAsync(bind(&Engine::SearchAsync, this));
 
   return true;
 }
 
+void Engine::CancelSearch()
+{
+  ++m_prefetchGeneration;
+  m_pQuery->Cancel();
+}
+
 void Engine::SetViewportAsync(m2::RectD const & viewport)
 {
   // First of all - cancel previous query.
@@ -156,6 +167,10 @@ void Engine::SetViewportAsync(m2::RectD const & viewport)
 
 void Engine::EmitResults(SearchParams const & params, Results & res)
 {
+  // Prefetched queries have no callback.
+  if (!params.m_callback)
+    return;
+
   // Basic test of our statistics engine.
   alohalytics::LogEvent("searchEmitResults",
                         alohalytics::TStringMap({{params.m_query, strings::to_string(res.GetCount())}}));
@@ -163,20 +178,43 @@ void Engine::EmitResults(SearchParams const & params, Results & res)
   params.m_callback(res);
 }
 
-void Engine::SetRankPivot(SearchParams const & params,
-                          m2::RectD const & viewport, bool viewportSearch)
+m2::PointD Engine::GetRankPivot(SearchParams const & params,
+                                m2::RectD const & viewport, bool viewportSearch) const
 {
   if (!viewportSearch && params.IsValidPosition())
   {
     m2::PointD const pos = MercatorBounds::FromLatLon(params.m_lat, params.m_lon);
     if (m2::Inflate(viewport, viewport.SizeX() / 4.0, viewport.SizeY() / 4.0).IsPointInside(pos))
-    {
-      m_pQuery->SetRankPivot(pos);
-      return;
-    }
+      return pos;
   }
 
-  m_pQuery->SetRankPivot(viewport.Center());
+  return viewport.Center();
+}
+
+m2::PointD Engine::InitQuery(SearchParams const & params, m2::RectD const & viewport, bool viewportSearch)
+{
+  m_pQuery->Init(viewportSearch);
+
+  m2::PointD const pivot = GetRankPivot(params, viewport, viewportSearch);
+  m_pQuery->SetRankPivot(pivot);
+
+  m_pQuery->SetSearchInWorld(params.HasSearchMode(SearchParams::SEARCH_WORLD));
+
+  // Language validity is checked inside
+  m_pQuery->SetInputLocale(params.m_inputLocale);
+
+  ASSERT(!params.m_query.empty(), ());
+  m_pQuery->SetQuery(params.m_query);
+
+  return pivot;
+}
+
+ResultsCache::Key Engine::GetCacheKey(SearchParams const & params, m2::PointD const & pivot,
+                                      m2::RectD const & viewport)
+{
+  int const mode = (params.HasSearchMode(SearchParams::SEARCH_WORLD) ? SearchParams::SEARCH_WORLD : 0) |
+                   (params.HasSearchMode(SearchParams::SEARCH_ADDRESS) ? SearchParams::SEARCH_ADDRESS : 0);
+  return ResultsCache::Key(params.m_query, params.m_inputLocale, mode, pivot, viewport);
 }
 
 void Engine::SearchAsync()
@@ -210,20 +248,50 @@ void Engine::SearchAsync()
   bool const viewportSearch = params.HasSearchMode(SearchParams::IN_VIEWPORT_ONLY);
 
   // Initialize query.
-  m_pQuery->Init(viewportSearch);
+  m2::PointD const pivot = InitQuery(params, viewport, viewportSearch);
 
-  SetRankPivot(params, viewport, viewportSearch);
+  // Viewport results depend on the exact viewport, so only whole world searches are cached.
+  bool const cacheable = !viewportSearch && !oneTimeSearch;
+  ResultsCache::Key const cacheKey = GetCacheKey(params, pivot, viewport);
 
-  m_pQuery->SetSearchInWorld(params.HasSearchMode(SearchParams::SEARCH_WORLD));
+  if (cacheable)
+  {
+    Results cached;
+    ResultsCache::LookupResult lookup;
+    {
+      threads::MutexGuard cacheGuard(m_cacheMutex);
+      lookup = m_resultsCache.Find(cacheKey, cached);
+    }
 
-  // Language validity is checked inside
-  m_pQuery->SetInputLocale(params.m_inputLocale);
+    if (lookup == ResultsCache::LookupResult::Hit)
+    {
+      EmitResults(params, cached);
+      params.m_callback(Results::GetEndMarker(false));
+      return;
+    }
 
-  ASSERT(!params.m_query.empty(), ());
-  m_pQuery->SetQuery(params.m_query);
+    // Show results of the shorter query which still match while the full search is running.
+    if (lookup == ResultsCache::LookupResult::PrefixHit && cached.GetCount() > 0)
+      EmitResults(params, cached);
+  }
 
   Results res;
+  RunQuery(params, viewport, viewportSearch, oneTimeSearch, res);
+
+  bool const cancelled = m_pQuery->IsCancelled();
+  if (cacheable && !cancelled)
+  {
+    threads::MutexGuard cacheGuard(m_cacheMutex);
+    m_resultsCache.Put(cacheKey, res);
+  }
 
+  // Emit finish marker to client.
+  params.m_callback(Results::GetEndMarker(cancelled));
+}
+
+void Engine::RunQuery(SearchParams const & params, m2::RectD viewport, bool viewportSearch,
+                      bool oneTimeSearch, Results & res)
+{
   // Call m_pQuery->IsCanceled() everywhere it needed without storing return value.
   // This flag can be changed from another thread.
 
@@ -283,9 +351,49 @@ void Engine::SearchAsync()
     if (res.GetCount() > count)
       EmitResults(params, res);
   }
+}
 
-  // Emit finish marker to client.
-  params.m_callback(Results::GetEndMarker(m_pQuery->IsCancelled()));
+void Engine::Prefetch(vector<SearchParams> const & params, m2::RectD const & viewport)
+{
+  uint32_t const generation = ++m_prefetchGeneration;
+  GetPlatform().RunAsync(bind(&Engine::PrefetchAsync, this, params, viewport, generation));
+}
+
+void Engine::PrefetchAsync(vector<SearchParams> const & params, m2::RectD const & viewport,
+                           uint32_t generation)
+{
+  for (SearchParams const & p : params)
+  {
+    // Doesn't cancel the current query, so prefetch waits for user's search to finish.
+    threads::MutexGuard searchGuard(m_searchMutex);
+
+    // User's search or a newer prefetch was requested.
+    if (m_prefetchGeneration != generation)
+      return;
+
+    m2::PointD const pivot = InitQuery(p, viewport, false /* viewportSearch */);
+
+    // Init() resets cancellation, so check again: the query could be cancelled by a search
+    // requested after the previous check.
+    if (m_prefetchGeneration != generation)
+      return;
+
+    ResultsCache::Key const cacheKey = GetCacheKey(p, pivot, viewport);
+    {
+      threads::MutexGuard cacheGuard(m_cacheMutex);
+      if (m_resultsCache.Contains(cacheKey))
+        continue;
+    }
+
+    Results res;
+    RunQuery(p, viewport, false /* viewportSearch */, false /* oneTimeSearch */, res);
+
+    if (!m_pQuery->IsCancelled())
+    {
+      threads::MutexGuard cacheGuard(m_cacheMutex);
+      m_resultsCache.Put(cacheKey, res);
+    }
+  }
 }
 
 string Engine::GetCountryFile(m2::PointD const & pt)
@@ -352,6 +460,7 @@ void Engine::ClearViewportsCache()
   threads::MutexGuard guard(m_searchMutex);
 
   m_pQuery->ClearCaches();
+  ClearResultsCache();
 }
 
 void Engine::ClearAllCaches()
@@ -367,6 +476,23 @@ void Engine::ClearAllCaches()
 
     m_searchMutex.Unlock();
   }
+
+  ClearResultsCache();
+}
+
+void Engine::ClearResultsCache()
+{
+  threads::MutexGuard guard(m_cacheMutex);
+
+  LOG(LDEBUG, (m_resultsCache.GetStats()));
+  m_resultsCache.Clear();
+}
+
+ResultsCache::Stats Engine::GetResultsCacheStats() const
+{
+  threads::MutexGuard guard(m_cacheMutex);
+
+  return m_resultsCache.GetStats();
 }
 
 }  // namespace search
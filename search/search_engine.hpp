@@ -2,6 +2,7 @@
 
 #include "params.hpp"
 #include "result.hpp"
+#include "results_cache.hpp"
 #include "search_query_factory.hpp"
 
 #include "geometry/rect2d.hpp"
@@ -14,6 +15,7 @@
 #include "std/string.hpp"
 #include "std/function.hpp"
 #include "std/atomic.hpp"
+#include "std/vector.hpp"
 
 
 class Index;
@@ -41,6 +43,13 @@ public:
 
   void PrepareSearch(m2::RectD const & viewport);
   bool Search(SearchParams const & params, m2::RectD const & viewport);
+  /// Runs queries in background one by one and puts their results to the results cache,
+  /// so Search() with the same params around the same place finishes immediately.
+  /// Queries already cached are skipped. Callbacks of @params are not called.
+  /// Prefetch is stopped by Search(), CancelSearch() or a newer Prefetch().
+  void Prefetch(vector<SearchParams> const & params, m2::RectD const & viewport);
+  /// Stops current query as soon as possible. End marker is emitted as usual.
+  void CancelSearch();
 
   string GetCountryFile(m2::PointD const & pt);
   string GetCountryCode(m2::PointD const & pt);
@@ -60,13 +69,26 @@ public:
   void ClearViewportsCache();
   void ClearAllCaches();
 
+  ResultsCache::Stats GetResultsCacheStats() const;
+
 private:
   static const int RESULTS_COUNT = 30;
+  // Enough for prefetched categories and recent queries.
+  static const int RESULTS_CACHE_SIZE = 48;
 
-  void SetRankPivot(SearchParams const & params,
-                    m2::RectD const & viewport, bool viewportSearch);
+  m2::PointD GetRankPivot(SearchParams const & params,
+                          m2::RectD const & viewport, bool viewportSearch) const;
   void SetViewportAsync(m2::RectD const & viewport);
+  void ClearResultsCache();
+  m2::PointD InitQuery(SearchParams const & params, m2::RectD const & viewport, bool viewportSearch);
+  static ResultsCache::Key GetCacheKey(SearchParams const & params, m2::PointD const & pivot,
+                                       m2::RectD const & viewport);
   void SearchAsync();
+  /// Searches and emits intermediate results through params.m_callback (if any), without end marker.
+  void RunQuery(SearchParams const & params, m2::RectD viewport, bool viewportSearch,
+                bool oneTimeSearch, Results & res);
+  void PrefetchAsync(vector<SearchParams> const & params, m2::RectD const & viewport,
+                     uint32_t generation);
 
   void EmitResults(SearchParams const & params, Results & res);
 
@@ -79,6 +101,13 @@ private:
   unique_ptr<Query> m_pQuery;
   unique_ptr<SearchQueryFactory> m_pFactory;
   unique_ptr<EngineData> const m_pData;
+
+  /// Guards m_resultsCache, it's read (for stats) not only from search thread.
+  mutable threads::Mutex m_cacheMutex;
+  ResultsCache m_resultsCache;
+
+  /// Changed by every request which should stop running prefetch.
+  atomic<uint32_t> m_prefetchGeneration;
 };
 
 }  // namespace search
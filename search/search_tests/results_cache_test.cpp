@@ -0,0 +1,109 @@
+#include "testing/testing.hpp"
+
+#include "search/results_cache.hpp"
+
+#include "std/string.hpp"
+
+namespace search
+{
+namespace
+{
+m2::RectD const kViewport(0.0, 0.0, 1.0, 1.0);
+
+ResultsCache::Key MakeKey(string const & query, m2::PointD const & pivot = m2::PointD(0.5, 0.5))
+{
+  return ResultsCache::Key(query, "en", 0 /* mode */, pivot, kViewport);
+}
+
+Results MakeResults(vector<string> const & names)
+{
+  Results results;
+  for (auto const & name : names)
+    results.AddResultNoChecks(Result(m2::PointD(0.5, 0.5), name, "" /* region */, "building"));
+  return results;
+}
+}  // namespace
+
+UNIT_TEST(ResultsCache_Hit)
+{
+  ResultsCache cache(2);
+  cache.Put(MakeKey("cafe"), MakeResults({"Cafe Central", "Cafe Sacher"}));
+
+  Results results;
+  TEST(cache.Find(MakeKey("cafe"), results) == ResultsCache::LookupResult::Hit, ());
+  TEST_EQUAL(results.GetCount(), 2, ());
+
+  // Slightly moved pivot is in the same cell.
+  TEST(cache.Find(MakeKey("cafe", m2::PointD(0.501, 0.501)), results) == ResultsCache::LookupResult::Hit, ());
+  TEST(cache.Find(MakeKey("cafe", m2::PointD(0.6, 0.6)), results) == ResultsCache::LookupResult::Miss, ());
+  TEST(cache.Find(MakeKey("bar"), results) == ResultsCache::LookupResult::Miss, ());
+
+  TEST_EQUAL(cache.GetStats().m_hits, 2, ());
+  TEST_EQUAL(cache.GetStats().m_misses, 2, ());
+  TEST_ALMOST_EQUAL_ULPS(cache.GetStats().GetHitRate(), 0.5, ());
+}
+
+UNIT_TEST(ResultsCache_PrefixHit)
+{
+  ResultsCache cache(4);
+  cache.Put(MakeKey("res"), MakeResults({"Restaurant Roma", "Rest Area", "Hotel Resort"}));
+  cache.Put(MakeKey("rest"), MakeResults({"Restaurant Roma", "Rest Area"}));
+
+  Results results;
+  // The longest prefix is used.
+  TEST(cache.Find(MakeKey("restau"), results) == ResultsCache::LookupResult::PrefixHit, ());
+  TEST_EQUAL(results.GetCount(), 1, ());
+  TEST_EQUAL(string(results.GetResult(0).GetString()), "Restaurant Roma", ());
+
+  TEST(cache.Find(MakeKey("rest roma"), results) == ResultsCache::LookupResult::PrefixHit, ());
+  TEST_EQUAL(results.GetCount(), 1, ());
+
+  TEST_EQUAL(cache.GetStats().m_prefixHits, 2, ());
+}
+
+UNIT_TEST(ResultsCache_Eviction)
+{
+  ResultsCache cache(2);
+  cache.Put(MakeKey("a"), MakeResults({"a"}));
+  cache.Put(MakeKey("b"), MakeResults({"b"}));
+
+  Results results;
+  // Touch "a", so "b" is the least recently used one.
+  TEST(cache.Find(MakeKey("a"), results) == ResultsCache::LookupResult::Hit, ());
+  cache.Put(MakeKey("c"), MakeResults({"c"}));
+
+  TEST_EQUAL(cache.GetStats().m_evictions, 1, ());
+  TEST(cache.Find(MakeKey("a"), results) == ResultsCache::LookupResult::Hit, ());
+  TEST(cache.Find(MakeKey("b"), results) == ResultsCache::LookupResult::Miss, ());
+  TEST(cache.Find(MakeKey("c"), results) == ResultsCache::LookupResult::Hit, ());
+
+  cache.Clear();
+  TEST(cache.Find(MakeKey("a"), results) == ResultsCache::LookupResult::Miss, ());
+}
+
+UNIT_TEST(ResultsCache_Contains)
+{
+  ResultsCache cache(2);
+  cache.Put(MakeKey("food "), MakeResults({"Cafe Central"}));
+  cache.Put(MakeKey("fuel "), MakeResults({"Shell"}));
+
+  TEST(cache.Contains(MakeKey("food ")), ());
+  TEST(!cache.Contains(MakeKey("food ", m2::PointD(0.6, 0.6))), ());
+  // Prefix of the query doesn't count.
+  TEST(!cache.Contains(MakeKey("food cafe")), ());
+  TEST_EQUAL(cache.GetStats().m_hits + cache.GetStats().m_misses, 0, ());
+
+  // Contains() doesn't make "food " recently used, so it's evicted first.
+  cache.Put(MakeKey("atm "), MakeResults({"Bank"}));
+  TEST(!cache.Contains(MakeKey("food ")), ());
+  TEST(cache.Contains(MakeKey("fuel ")), ());
+}
+
+UNIT_TEST(ResultsCache_NameMatched)
+{
+  TEST(IsNameMatched("caf", "Café Central"), ());
+  TEST(IsNameMatched("central caf", "Café Central"), ());
+  TEST(!IsNameMatched("cafe x", "Café Central"), ());
+  TEST(IsNameMatched("", "Anything"), ());
+}
+}  // namespace search
@@ -23,8 +23,10 @@ SOURCES += \
     latlon_match_test.cpp \
     locality_finder_test.cpp \
     query_saver_tests.cpp \
+    results_cache_test.cpp \
     string_intersection_test.cpp \
     string_match_test.cpp \
+    viewport_search_throttle_test.cpp \
 
 HEADERS += \
     match_cost_mock.hpp \
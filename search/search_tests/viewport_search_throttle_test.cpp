@@ -0,0 +1,58 @@
+#include "testing/testing.hpp"
+
+#include "search/viewport_search_throttle.hpp"
+
+namespace search
+{
+namespace
+{
+double constexpr kSignificantShift = 0.5;
+double constexpr kMaxZoomIn = 2.0;
+}  // namespace
+
+UNIT_TEST(ViewportSearchThrottle_FirstSearch)
+{
+  ViewportSearchThrottle throttle(kSignificantShift, kMaxZoomIn);
+  m2::RectD const viewport(0.0, 0.0, 1.0, 1.0);
+
+  TEST(throttle.NeedSearch(viewport), ());
+  TEST(throttle.IsSignificantChange(viewport), ());
+
+  throttle.OnSearchStarted(viewport);
+  TEST(!throttle.NeedSearch(viewport), ());
+  TEST(!throttle.IsSignificantChange(viewport), ());
+
+  throttle.Reset();
+  TEST(throttle.NeedSearch(viewport), ());
+}
+
+UNIT_TEST(ViewportSearchThrottle_ContainedViewport)
+{
+  ViewportSearchThrottle throttle(kSignificantShift, kMaxZoomIn);
+  throttle.OnSearchStarted(m2::RectD(0.0, 0.0, 1.0, 1.0));
+
+  // Results are reused inside the searched viewport while it's not zoomed in too much.
+  TEST(!throttle.NeedSearch(m2::RectD(0.2, 0.2, 0.8, 0.8)), ());
+  TEST(!throttle.NeedSearch(m2::RectD(0.5, 0.5, 1.0, 1.0)), ());
+  TEST(throttle.NeedSearch(m2::RectD(0.4, 0.4, 0.6, 0.6)), ());
+
+  // Zoomed out or partially outside.
+  TEST(throttle.NeedSearch(m2::RectD(-0.5, -0.5, 1.5, 1.5)), ());
+  TEST(throttle.NeedSearch(m2::RectD(0.1, 0.0, 1.1, 1.0)), ());
+}
+
+UNIT_TEST(ViewportSearchThrottle_SignificantChange)
+{
+  ViewportSearchThrottle throttle(kSignificantShift, kMaxZoomIn);
+  throttle.OnSearchStarted(m2::RectD(0.0, 0.0, 1.0, 1.0));
+
+  // Small shift waits for the map to settle.
+  TEST(!throttle.IsSignificantChange(m2::RectD(0.1, 0.1, 1.1, 1.1)), ());
+  TEST(throttle.IsSignificantChange(m2::RectD(0.6, 0.0, 1.6, 1.0)), ());
+
+  // Zoom more than 2 times.
+  TEST(!throttle.IsSignificantChange(m2::RectD(-0.25, -0.25, 1.25, 1.25)), ());
+  TEST(throttle.IsSignificantChange(m2::RectD(-1.0, -1.0, 2.0, 2.0)), ());
+  TEST(throttle.IsSignificantChange(m2::RectD(0.3, 0.3, 0.7, 0.7)), ());
+}
+}  // namespace search
@@ -0,0 +1,41 @@
+#include "viewport_search_throttle.hpp"
+
+#include "std/algorithm.hpp"
+
+namespace search
+{
+namespace
+{
+// Zooming in or out more than this is a significant change.
+double constexpr kSignificantZoom = 2.0;
+
+double GetSize(m2::RectD const & r) { return max(r.SizeX(), r.SizeY()); }
+}  // namespace
+
+ViewportSearchThrottle::ViewportSearchThrottle(double significantShift, double maxZoomIn)
+  : m_significantShift(significantShift), m_maxZoomIn(maxZoomIn)
+{
+}
+
+bool ViewportSearchThrottle::NeedSearch(m2::RectD const & viewport) const
+{
+  if (!m_searched.IsValid())
+    return true;
+
+  // Detailed features, which weren't found in the bigger viewport, become visible after zooming in.
+  return !m_searched.IsRectInside(viewport) || GetSize(viewport) * m_maxZoomIn < GetSize(m_searched);
+}
+
+bool ViewportSearchThrottle::IsSignificantChange(m2::RectD const & viewport) const
+{
+  if (!m_searched.IsValid())
+    return true;
+
+  double const size = GetSize(viewport);
+  double const searchedSize = GetSize(m_searched);
+  if (size > searchedSize * kSignificantZoom || size * kSignificantZoom < searchedSize)
+    return true;
+
+  return viewport.Center().Length(m_searched.Center()) > m_significantShift * size;
+}
+}  // namespace search
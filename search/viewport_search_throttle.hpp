@@ -0,0 +1,36 @@
+#pragma once
+
+#include "geometry/rect2d.hpp"
+
+namespace search
+{
+/// Decides when viewport (interactive) search should be rerun while the map moves.
+/// Results of the last search are reused while the viewport stays inside the searched one
+/// and isn't zoomed in too much. Small movements wait for the map to settle,
+/// large ones are searched immediately.
+class ViewportSearchThrottle
+{
+public:
+  /// @param[in] significantShift shift of the viewport center, as a fraction of the viewport size,
+  ///                             which needs search without waiting.
+  /// @param[in] maxZoomIn how many times the searched viewport may be zoomed in with its results still reused.
+  ViewportSearchThrottle(double significantShift, double maxZoomIn);
+
+  /// @returns true if results of the last search don't cover the viewport.
+  bool NeedSearch(m2::RectD const & viewport) const;
+
+  /// @returns true if the viewport is too far from the last searched one (or zoomed more than 2 times),
+  /// so search shouldn't wait for the map to settle.
+  bool IsSignificantChange(m2::RectD const & viewport) const;
+
+  void OnSearchStarted(m2::RectD const & viewport) { m_searched = viewport; }
+
+  /// Forgets the last searched viewport, e.g. when the query is changed.
+  void Reset() { m_searched.MakeEmpty(); }
+
+private:
+  double const m_significantShift;
+  double const m_maxZoomIn;
+  m2::RectD m_searched;
+};
+}  // namespace search
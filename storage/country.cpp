@@ -22,6 +22,42 @@ void Country::AddFile(CountryFile const & file) { m_files.push_back(file); }
 
 ////////////////////////////////////////////////////////////////////////
 
+namespace
+{
+/// @returns integer value of the optional field or -1 if it's missing.
+int64_t GetOptionalInteger(json_t * j, char const * name)
+{
+  json_t * value = json_object_get(j, name);
+  return value ? json_integer_value(value) : -1;
+}
+
+/// Patches are stored as array of [old data version, patch size] pairs.
+void LoadPatchSizes(json_t * patches, MapOptions file, CountryFile & countryFile)
+{
+  for (size_t i = 0; i < json_array_size(patches); ++i)
+  {
+    json_t * patch = json_array_get(patches, i);
+    if (json_array_size(patch) != 2)
+      MYTHROW(my::Json::Exception, ("Invalid patch of", countryFile.GetNameWithoutExt()));
+    countryFile.SetPatchSize(file, json_integer_value(json_array_get(patch, 0)),
+                             static_cast<uint32_t>(json_integer_value(json_array_get(patch, 1))));
+  }
+}
+
+json_t * SavePatchSizes(CountryFile const & countryFile, MapOptions file)
+{
+  json_t * patches = json_array();
+  for (auto const & patch : countryFile.GetPatchSizes(file))
+  {
+    json_t * jPatch = json_array();
+    json_array_append_new(jPatch, json_integer(patch.first));
+    json_array_append_new(jPatch, json_integer(patch.second));
+    json_array_append_new(patches, jPatch);
+  }
+  return patches;
+}
+}  // namespace
+
 template <class ToDo>
 void LoadGroupImpl(int depth, json_t * group, ToDo & toDo)
 {
@@ -39,11 +75,16 @@ void LoadGroupImpl(int depth, json_t * group, ToDo & toDo)
     if (!file)
       file = name;
 
+    CountryFile countryFile(file);
+    // We expect what mwm and routing files should be less 2Gb
+    countryFile.SetRemoteSizes(static_cast<uint32_t>(json_integer_value(json_object_get(j, "s"))),
+                               static_cast<uint32_t>(json_integer_value(json_object_get(j, "rs"))));
+    countryFile.SetRemoteChecksums(GetOptionalInteger(j, "crc"), GetOptionalInteger(j, "rcrc"));
+    LoadPatchSizes(json_object_get(j, "p"), MapOptions::Map, countryFile);
+    LoadPatchSizes(json_object_get(j, "rp"), MapOptions::CarRouting, countryFile);
+
     char const * flag = json_string_value(json_object_get(j, "c"));
-    toDo(name, file, flag ? flag : "",
-         // We expect what mwm and routing files should be less 2Gb
-         static_cast<uint32_t>(json_integer_value(json_object_get(j, "s"))),
-         static_cast<uint32_t>(json_integer_value(json_object_get(j, "rs"))), depth);
+    toDo(name, countryFile, flag ? flag : "", depth);
 
     json_t * children = json_object_get(j, "g");
     if (children)
@@ -79,16 +120,12 @@ class DoStoreCountries
 public:
   DoStoreCountries(CountriesContainerT & cont) : m_cont(cont) {}
 
-  void operator()(string const & name, string const & file, string const & flag, uint32_t mapSize,
-                  uint32_t routingSize, int depth)
+  void operator()(string const & name, CountryFile const & countryFile, string const & flag,
+                  int depth)
   {
     Country country(name, flag);
-    if (mapSize)
-    {
-      CountryFile countryFile(file);
-      countryFile.SetRemoteSizes(mapSize, routingSize);
+    if (countryFile.GetRemoteSize(MapOptions::Map))
       country.AddFile(countryFile);
-    }
     m_cont.AddAtDepth(depth, country);
   }
 };
@@ -101,13 +138,15 @@ class DoStoreFile2Info
 public:
   DoStoreFile2Info(map<string, CountryInfo> & file2info) : m_file2info(file2info) {}
 
-  void operator()(string name, string file, string const & flag, uint32_t mapSize, uint32_t, int)
+  void operator()(string name, CountryFile const & countryFile, string const & flag, int)
   {
     if (!flag.empty())
       m_lastFlag = flag;
 
-    if (mapSize)
+    if (countryFile.GetRemoteSize(MapOptions::Map))
     {
+      string file = countryFile.GetNameWithoutExt();
+
       CountryInfo info;
 
       // if 'file' is empty - it's equal to 'name'
@@ -142,9 +181,9 @@ class DoStoreCode2File
 public:
   DoStoreCode2File(multimap<string, string> & code2file) : m_code2file(code2file) {}
 
-  void operator()(string const &, string const & file, string const & flag, uint32_t, uint32_t, int)
+  void operator()(string const &, CountryFile const & countryFile, string const & flag, int)
   {
-    m_code2file.insert(make_pair(flag, file));
+    m_code2file.insert(make_pair(flag, countryFile.GetNameWithoutExt()));
   }
 };
 }
@@ -214,6 +253,16 @@ void SaveImpl(T const & v, json_t * jParent)
       json_object_set_new(jCountry.get(), "s", json_integer(file.GetRemoteSize(MapOptions::Map)));
       json_object_set_new(jCountry.get(), "rs",
                           json_integer(file.GetRemoteSize(MapOptions::CarRouting)));
+      int64_t const mapCrc = file.GetRemoteChecksum(MapOptions::Map);
+      if (mapCrc >= 0)
+        json_object_set_new(jCountry.get(), "crc", json_integer(mapCrc));
+      int64_t const routingCrc = file.GetRemoteChecksum(MapOptions::CarRouting);
+      if (routingCrc >= 0)
+        json_object_set_new(jCountry.get(), "rcrc", json_integer(routingCrc));
+      if (!file.GetPatchSizes(MapOptions::Map).empty())
+        json_object_set_new(jCountry.get(), "p", SavePatchSizes(file, MapOptions::Map));
+      if (!file.GetPatchSizes(MapOptions::CarRouting).empty())
+        json_object_set_new(jCountry.get(), "rp", SavePatchSizes(file, MapOptions::CarRouting));
     }
 
     if (v[i].SiblingsCount())
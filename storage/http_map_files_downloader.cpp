@@ -1,44 +1,118 @@
 #include "storage/http_map_files_downloader.hpp"
+#include "storage/map_patch.hpp"
 
 #include "platform/platform.hpp"
 #include "platform/servers_list.hpp"
 
+#include "coding/internal/file_data.hpp"
+
 #include "base/assert.hpp"
 
+#include "std/atomic.hpp"
 #include "std/bind.hpp"
+#include "std/condition_variable.hpp"
+#include "std/mutex.hpp"
 #include "base/string_utils.hpp"
 
+#include "defines.hpp"
+
 namespace storage
 {
+/// Patch is applied on a background thread, which never touches the downloader itself.
+/// Downloader cancels the task on reset and waits till the thread stops writing the patched file.
+class HttpMapFilesDownloader::PatchTask
+{
+public:
+  explicit PatchTask(string const & path) : m_path(path), m_cancelled(false), m_finished(false) {}
+
+  string const & GetPath() const { return m_path; }
+
+  bool IsCancelled() const { return m_cancelled; }
+
+  void Cancel() { m_cancelled = true; }
+
+  void Finish()
+  {
+    lock_guard<mutex> lock(m_mutex);
+    m_finished = true;
+    m_cv.notify_all();
+  }
+
+  void WaitFinished()
+  {
+    unique_lock<mutex> lock(m_mutex);
+    m_cv.wait(lock, [this]() { return m_finished; });
+  }
+
+  // Accessed on the original thread only.
+  bool m_delivered = false;
+
+private:
+  string const m_path;
+  atomic<bool> m_cancelled;
+
+  mutex m_mutex;
+  condition_variable m_cv;
+  bool m_finished;
+};
+
 HttpMapFilesDownloader::~HttpMapFilesDownloader()
 {
   ASSERT(m_checker.CalledOnOriginalThread(), ());
+  ResetRequest(false /* keepProgressFiles */);
+  CancelPatching();
 }
 
 void HttpMapFilesDownloader::GetServersList(int64_t const mapVersion, string const & mapFileName,
                                             TServersListCallback const & callback)
 {
   ASSERT(m_checker.CalledOnOriginalThread(), ());
+  ResetRequest(false /* keepProgressFiles */);
   m_request.reset(downloader::HttpRequest::PostJson(
       GetPlatform().MetaServerUrl(), strings::to_string(mapVersion) + '/' + mapFileName,
       bind(&HttpMapFilesDownloader::OnServersListDownloaded, this, callback, _1)));
 }
 
 void HttpMapFilesDownloader::DownloadMapFile(vector<string> const & urls, string const & path,
-                                             int64_t size,
+                                             int64_t size, int64_t expectedCrc32,
                                              TFileDownloadedCallback const & onDownloaded,
                                              TDownloadingProgressCallback const & onProgress)
 {
   ASSERT(m_checker.CalledOnOriginalThread(), ());
+  m_patchSize = 0;
+  ResetRequest(false /* keepProgressFiles */);
+  m_mapFilePath = path;
   m_request.reset(downloader::HttpRequest::GetFile(
       urls, path, size, bind(&HttpMapFilesDownloader::OnMapFileDownloaded, this, onDownloaded, _1),
-      bind(&HttpMapFilesDownloader::OnMapFileDownloadingProgress, this, onProgress, _1)));
+      bind(&HttpMapFilesDownloader::OnMapFileDownloadingProgress, this, onProgress, _1),
+      512 * 1024 /* chunkSize */, false /* doCleanOnCancel */, expectedCrc32));
+}
+
+void HttpMapFilesDownloader::DownloadMapPatch(vector<string> const & urls, string const & oldPath,
+                                              string const & path, int64_t size, int64_t patchSize,
+                                              TFileDownloadedCallback const & onDownloaded,
+                                              TDownloadingProgressCallback const & onProgress)
+{
+  ASSERT(m_checker.CalledOnOriginalThread(), ());
+  ASSERT_GREATER(patchSize, 0, ());
+  m_patchSize = patchSize;
+  m_patchedFileSize = size;
+
+  // If patch file can't be created, failure is reported right from GetFile() and the whole file
+  // download may be started already, so the result is assigned only if it's not null.
+  ResetRequest(false /* keepProgressFiles */);
+  downloader::HttpRequest * request = downloader::HttpRequest::GetFile(
+      urls, path + PATCH_FILE_EXTENSION, patchSize,
+      bind(&HttpMapFilesDownloader::OnMapPatchDownloaded, this, oldPath, path, size, onDownloaded, _1),
+      bind(&HttpMapFilesDownloader::OnMapPatchDownloadingProgress, this, onProgress, _1));
+  if (request != nullptr)
+    m_request.reset(request);
 }
 
 MapFilesDownloader::TProgress HttpMapFilesDownloader::GetDownloadingProgress()
 {
   ASSERT(m_checker.CalledOnOriginalThread(), ());
-  return m_request->Progress();
+  return GetRequestProgress();
 }
 
 bool HttpMapFilesDownloader::IsIdle()
@@ -50,7 +124,54 @@ bool HttpMapFilesDownloader::IsIdle()
 void HttpMapFilesDownloader::Reset()
 {
   ASSERT(m_checker.CalledOnOriginalThread(), ());
+  ResetRequest(false /* keepProgressFiles */);
+  m_patchSize = 0;
+  CancelPatching();
+}
+
+void HttpMapFilesDownloader::Pause()
+{
+  ASSERT(m_checker.CalledOnOriginalThread(), ());
+  ResetRequest(true /* keepProgressFiles */);
+  m_patchSize = 0;
+  CancelPatching();
+}
+
+void HttpMapFilesDownloader::ResetRequest(bool keepProgressFiles)
+{
+  // Finished request has already deleted or kept its files for resuming after a failure.
+  bool const cancelled = m_request && m_request->Status() == downloader::HttpRequest::EInProgress;
   m_request.reset();
+
+  if (cancelled && !keepProgressFiles && !m_mapFilePath.empty())
+  {
+    (void)my::DeleteFileX(m_mapFilePath + DOWNLOADING_FILE_EXTENSION);
+    (void)my::DeleteFileX(m_mapFilePath + RESUME_FILE_EXTENSION);
+    (void)my::DeleteFileX(m_mapFilePath + JOURNAL_FILE_EXTENSION);
+  }
+  m_mapFilePath.clear();
+}
+
+MapFilesDownloader::TProgress HttpMapFilesDownloader::GetRequestProgress() const
+{
+  TProgress progress = m_request->Progress();
+  if (m_patchSize != 0)
+    progress = TProgress(progress.first * m_patchedFileSize / m_patchSize, m_patchedFileSize);
+  return progress;
+}
+
+void HttpMapFilesDownloader::CancelPatching()
+{
+  if (!m_patchTask)
+    return;
+
+  // Waiting is short, as patching checks cancellation before each buffer. Then patched file can be
+  // safely deleted, so that nothing is left for the next download to the same path.
+  m_patchTask->Cancel();
+  m_patchTask->WaitFinished();
+  if (!m_patchTask->m_delivered)
+    (void)my::DeleteFileX(m_patchTask->GetPath());
+  m_patchTask.reset();
 }
 
 void HttpMapFilesDownloader::OnServersListDownloaded(TServersListCallback const & callback,
@@ -76,4 +197,46 @@ void HttpMapFilesDownloader::OnMapFileDownloadingProgress(
   ASSERT(m_checker.CalledOnOriginalThread(), ());
   onProgress(request.Progress());
 }
+
+void HttpMapFilesDownloader::OnMapPatchDownloadingProgress(
+    TDownloadingProgressCallback const & onProgress, downloader::HttpRequest & request)
+{
+  ASSERT(m_checker.CalledOnOriginalThread(), ());
+  onProgress(GetRequestProgress());
+}
+
+void HttpMapFilesDownloader::OnMapPatchDownloaded(string const & oldPath, string const & path,
+                                                  int64_t size,
+                                                  TFileDownloadedCallback const & onDownloaded,
+                                                  downloader::HttpRequest & request)
+{
+  ASSERT(m_checker.CalledOnOriginalThread(), ());
+  if (request.Status() == downloader::HttpRequest::EFailed)
+  {
+    onDownloaded(false, TProgress(0, size));
+    return;
+  }
+
+  // Patching reads and writes the whole map file, so it's done in background.
+  // Request is kept until the result is reported, so downloader stays busy.
+  string const patchPath = request.Data();
+  shared_ptr<PatchTask> const task = make_shared<PatchTask>(path);
+  m_patchTask = task;
+  GetPlatform().RunAsync([task, oldPath, patchPath, size, onDownloaded]()
+  {
+    bool const success = ApplyMapPatch(oldPath, patchPath, task->GetPath(), size,
+                                       [task]() { return task->IsCancelled(); });
+    (void)my::DeleteFileX(patchPath);
+    task->Finish();
+
+    GetPlatform().RunOnGuiThread([task, success, size, onDownloaded]()
+    {
+      // Downloader was reset or destroyed meanwhile.
+      if (task->IsCancelled())
+        return;
+      task->m_delivered = true;
+      onDownloaded(success, TProgress(success ? size : 0, size));
+    });
+  });
+}
 }  // namespace storage
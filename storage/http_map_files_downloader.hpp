@@ -3,6 +3,7 @@
 #include "storage/map_files_downloader.hpp"
 #include "platform/http_request.hpp"
 #include "base/thread_checker.hpp"
+#include "std/shared_ptr.hpp"
 #include "std/unique_ptr.hpp"
 
 namespace storage
@@ -19,21 +20,43 @@ public:
   // MapFilesDownloader overrides:
   void GetServersList(int64_t const mapVersion, string const & mapFileName, TServersListCallback const & callback) override;
   void DownloadMapFile(vector<string> const & urls, string const & path, int64_t size,
-                       TFileDownloadedCallback const & onDownloaded,
+                       int64_t expectedCrc32, TFileDownloadedCallback const & onDownloaded,
                        TDownloadingProgressCallback const & onProgress) override;
+  void DownloadMapPatch(vector<string> const & urls, string const & oldPath, string const & path,
+                        int64_t size, int64_t patchSize, TFileDownloadedCallback const & onDownloaded,
+                        TDownloadingProgressCallback const & onProgress) override;
   TProgress GetDownloadingProgress() override;
   bool IsIdle() override;
   void Reset() override;
+  void Pause() override;
 
 private:
+  class PatchTask;
+
   void OnServersListDownloaded(TServersListCallback const & callback,
                                downloader::HttpRequest & request);
   void OnMapFileDownloaded(TFileDownloadedCallback const & onDownloaded,
                            downloader::HttpRequest & request);
   void OnMapFileDownloadingProgress(TDownloadingProgressCallback const & onProgress,
                                     downloader::HttpRequest & request);
+  void OnMapPatchDownloaded(string const & oldPath, string const & path, int64_t size,
+                            TFileDownloadedCallback const & onDownloaded,
+                            downloader::HttpRequest & request);
+  void OnMapPatchDownloadingProgress(TDownloadingProgressCallback const & onProgress,
+                                     downloader::HttpRequest & request);
+  TProgress GetRequestProgress() const;
+  void ResetRequest(bool keepProgressFiles);
+  void CancelPatching();
 
   unique_ptr<downloader::HttpRequest> m_request;
+  // Path of the map file which is downloaded by m_request. Its progress files are
+  // deleted by the downloader, so that they can be kept on pause.
+  string m_mapFilePath;
+  // Patch download progress is scaled to the size of the patched file.
+  int64_t m_patchSize = 0;
+  int64_t m_patchedFileSize = 0;
+  // Patch applied in background, shared with the patching thread.
+  shared_ptr<PatchTask> m_patchTask;
 
   ThreadChecker m_checker;
 };
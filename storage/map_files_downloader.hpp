@@ -30,10 +30,25 @@ public:
   /// Asynchronously downloads a map file, periodically invokes
   /// onProgress callback and finally invokes onDownloaded
   /// callback. Both callbacks will be invoked on the original thread.
+  /// Download fails if expectedCrc32 is not -1 and doesn't match the file.
   virtual void DownloadMapFile(vector<string> const & urls, string const & path, int64_t size,
+                               int64_t expectedCrc32,
                                TFileDownloadedCallback const & onDownloaded,
                                TDownloadingProgressCallback const & onProgress) = 0;
 
+  /// Asynchronously downloads a patch of patchSize bytes and applies
+  /// it to the map file of previous version oldPath, writing the result
+  /// to path. Progress is reported relative to the result size. Both
+  /// callbacks will be invoked on the original thread. Patching is
+  /// optional, so by default it fails immediately.
+  virtual void DownloadMapPatch(vector<string> const & urls, string const & oldPath,
+                                string const & path, int64_t size, int64_t patchSize,
+                                TFileDownloadedCallback const & onDownloaded,
+                                TDownloadingProgressCallback const & onProgress)
+  {
+    onDownloaded(false, TProgress(0, size));
+  }
+
   /// Returns current downloading progress.
   virtual TProgress GetDownloadingProgress() = 0;
 
@@ -42,5 +57,10 @@ public:
 
   /// Resets downloader to the idle state.
   virtual void Reset() = 0;
+
+  /// Resets downloader to the idle state, but keeps partially downloaded
+  /// map file, so that the next download of the same file continues
+  /// from the same place. By default nothing is kept.
+  virtual void Pause() { Reset(); }
 };
 }  // namespace storage
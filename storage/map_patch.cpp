@@ -0,0 +1,339 @@
+#include "storage/map_patch.hpp"
+
+#include "coding/file_reader.hpp"
+#include "coding/file_writer.hpp"
+#include "coding/internal/file_data.hpp"
+#include "coding/varint.hpp"
+
+#include "base/logging.hpp"
+
+#include "std/algorithm.hpp"
+#include "std/cstring.hpp"
+#include "std/unordered_map.hpp"
+#include "std/vector.hpp"
+
+#include <boost/crc.hpp>
+
+namespace storage
+{
+namespace
+{
+char const kPatchMagic[] = "MWMP";
+uint64_t const kPatchFormatVersion = 1;
+size_t const kCopyBufferSize = 64 * 1024;
+// Old file is indexed by blocks of this size, so shorter common parts are inserted.
+size_t const kPatchBlockSize = 64;
+uint64_t const kHashBase = 1099511628211ULL;
+
+enum PatchCommand
+{
+  ECopy = 0,
+  EInsert = 1
+};
+
+/// Reads patch file with bounds checking, as patch comes from network.
+class PatchSource
+{
+public:
+  explicit PatchSource(string const & path) : m_reader(path), m_size(m_reader.Size()), m_pos(0) {}
+
+  bool IsEnd() const { return m_pos == m_size; }
+
+  bool Read(void * p, uint64_t size)
+  {
+    if (size > m_size - m_pos)
+      return false;
+    m_reader.Read(m_pos, p, static_cast<size_t>(size));
+    m_pos += size;
+    return true;
+  }
+
+  bool ReadVarUint(uint64_t & value)
+  {
+    value = 0;
+    for (int shift = 0; shift < 64 && m_pos < m_size; shift += 7)
+    {
+      uint8_t b;
+      m_reader.Read(m_pos++, &b, 1);
+      value |= static_cast<uint64_t>(b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return true;
+    }
+    return false;
+  }
+
+private:
+  FileReader const m_reader;
+  uint64_t const m_size;
+  uint64_t m_pos;
+};
+
+class PatchWriter
+{
+public:
+  explicit PatchWriter(string const & path) : m_writer(path), m_size(0) {}
+
+  void Write(char const * p, size_t size)
+  {
+    m_writer.Write(p, size);
+    m_crc.process_bytes(p, size);
+    m_size += size;
+  }
+
+  uint64_t Size() const { return m_size; }
+  uint32_t Checksum() const { return m_crc.checksum(); }
+
+private:
+  FileWriter m_writer;
+  boost::crc_32_type m_crc;
+  uint64_t m_size;
+};
+
+bool Apply(string const & oldPath, PatchSource & src, string const & newPath, uint64_t expectedSize,
+           function<bool()> const & isCancelled)
+{
+  char magic[sizeof(kPatchMagic) - 1];
+  uint64_t version, newSize;
+  if (!src.Read(magic, sizeof(magic)) || memcmp(magic, kPatchMagic, sizeof(magic)) != 0 ||
+      !src.ReadVarUint(version) || version != kPatchFormatVersion || !src.ReadVarUint(newSize))
+  {
+    LOG(LWARNING, ("Invalid patch header"));
+    return false;
+  }
+
+  if (newSize != expectedSize)
+  {
+    LOG(LWARNING, ("Patch produces file of size", newSize, "instead of", expectedSize));
+    return false;
+  }
+
+  uint8_t crc[4];
+  if (!src.Read(crc, sizeof(crc)))
+    return false;
+  uint32_t newCrc = 0;
+  for (int i = 3; i >= 0; --i)
+    newCrc = (newCrc << 8) | crc[i];
+
+  FileReader const oldFile(oldPath);
+  uint64_t const oldSize = oldFile.Size();
+  PatchWriter writer(newPath);
+  vector<char> buffer(kCopyBufferSize);
+
+  // Checked before each buffer, as a single command can copy the whole file.
+  auto const cancelled = [&]()
+  {
+    if (!isCancelled || !isCancelled())
+      return false;
+    LOG(LINFO, ("Patching is cancelled", newPath));
+    return true;
+  };
+
+  while (!src.IsEnd())
+  {
+    uint64_t command, length;
+    if (!src.ReadVarUint(command))
+      return false;
+
+    if (command == ECopy)
+    {
+      uint64_t offset;
+      if (!src.ReadVarUint(offset) || !src.ReadVarUint(length) ||
+          offset > oldSize || length > oldSize - offset)
+      {
+        LOG(LWARNING, ("Invalid copy command in patch"));
+        return false;
+      }
+
+      while (length > 0)
+      {
+        if (cancelled())
+          return false;
+        size_t const size = static_cast<size_t>(min(length, static_cast<uint64_t>(buffer.size())));
+        oldFile.Read(offset, &buffer[0], size);
+        writer.Write(&buffer[0], size);
+        offset += size;
+        length -= size;
+      }
+    }
+    else if (command == EInsert)
+    {
+      if (!src.ReadVarUint(length))
+      {
+        LOG(LWARNING, ("Invalid insert command in patch"));
+        return false;
+      }
+
+      while (length > 0)
+      {
+        if (cancelled())
+          return false;
+        size_t const size = static_cast<size_t>(min(length, static_cast<uint64_t>(buffer.size())));
+        if (!src.Read(&buffer[0], size))
+        {
+          LOG(LWARNING, ("Invalid insert command in patch"));
+          return false;
+        }
+        writer.Write(&buffer[0], size);
+        length -= size;
+      }
+    }
+    else
+    {
+      LOG(LWARNING, ("Unknown patch command", command));
+      return false;
+    }
+
+    if (writer.Size() > newSize)
+    {
+      LOG(LWARNING, ("Patch produces too big file"));
+      return false;
+    }
+  }
+
+  if (writer.Size() != newSize || writer.Checksum() != newCrc)
+  {
+    LOG(LWARNING, ("Patched file doesn't match checksum", newPath));
+    return false;
+  }
+
+  return true;
+}
+/// Polynomial hash of kPatchBlockSize bytes, which can be rolled by one byte.
+uint64_t HashBlock(char const * p)
+{
+  uint64_t h = 0;
+  for (size_t i = 0; i < kPatchBlockSize; ++i)
+    h = h * kHashBase + static_cast<uint8_t>(p[i]);
+  return h;
+}
+
+void WriteInsert(FileWriter & w, char const * p, size_t size)
+{
+  if (size == 0)
+    return;
+  WriteVarUint(w, static_cast<uint64_t>(EInsert));
+  WriteVarUint(w, static_cast<uint64_t>(size));
+  w.Write(p, size);
+}
+
+void WriteCopy(FileWriter & w, uint64_t offset, uint64_t length)
+{
+  WriteVarUint(w, static_cast<uint64_t>(ECopy));
+  WriteVarUint(w, offset);
+  WriteVarUint(w, length);
+}
+
+void Make(string const & oldData, string const & newData, FileWriter & w)
+{
+  w.Write(kPatchMagic, sizeof(kPatchMagic) - 1);
+  WriteVarUint(w, kPatchFormatVersion);
+  WriteVarUint(w, static_cast<uint64_t>(newData.size()));
+
+  boost::crc_32_type crc;
+  crc.process_bytes(newData.data(), newData.size());
+  uint32_t const checksum = crc.checksum();
+  for (int i = 0; i < 4; ++i)
+  {
+    uint8_t const b = static_cast<uint8_t>(checksum >> (8 * i));
+    w.Write(&b, 1);
+  }
+
+  // The first block with such hash is used.
+  unordered_map<uint64_t, size_t> blocks;
+  for (size_t pos = 0; pos + kPatchBlockSize <= oldData.size(); pos += kPatchBlockSize)
+    blocks.insert(make_pair(HashBlock(&oldData[pos]), pos));
+
+  uint64_t topPower = 1;
+  for (size_t i = 1; i < kPatchBlockSize; ++i)
+    topPower *= kHashBase;
+
+  // Bytes from insertBeg till the current position are not matched yet.
+  size_t insertBeg = 0;
+  size_t pos = 0;
+  uint64_t hash = 0;
+  bool hashValid = false;
+  while (pos + kPatchBlockSize <= newData.size())
+  {
+    if (!hashValid)
+    {
+      hash = HashBlock(&newData[pos]);
+      hashValid = true;
+    }
+
+    auto const it = blocks.find(hash);
+    if (it != blocks.end() && memcmp(&oldData[it->second], &newData[pos], kPatchBlockSize) == 0)
+    {
+      // Extend match to both sides.
+      size_t oldBeg = it->second;
+      size_t newBeg = pos;
+      while (newBeg > insertBeg && oldBeg > 0 && oldData[oldBeg - 1] == newData[newBeg - 1])
+      {
+        --oldBeg;
+        --newBeg;
+      }
+      size_t length = pos + kPatchBlockSize - newBeg;
+      while (newBeg + length < newData.size() && oldBeg + length < oldData.size() &&
+             oldData[oldBeg + length] == newData[newBeg + length])
+      {
+        ++length;
+      }
+
+      WriteInsert(w, newData.data() + insertBeg, newBeg - insertBeg);
+      WriteCopy(w, oldBeg, length);
+      pos = insertBeg = newBeg + length;
+      hashValid = false;
+      continue;
+    }
+
+    if (pos + kPatchBlockSize < newData.size())
+    {
+      hash = (hash - static_cast<uint8_t>(newData[pos]) * topPower) * kHashBase +
+             static_cast<uint8_t>(newData[pos + kPatchBlockSize]);
+    }
+    ++pos;
+  }
+
+  WriteInsert(w, newData.data() + insertBeg, newData.size() - insertBeg);
+}
+}  // namespace
+
+bool ApplyMapPatch(string const & oldPath, string const & patchPath, string const & newPath,
+                   uint64_t expectedSize, function<bool()> const & isCancelled)
+{
+  bool ok = false;
+  try
+  {
+    PatchSource src(patchPath);
+    ok = Apply(oldPath, src, newPath, expectedSize, isCancelled);
+  }
+  catch (RootException const & e)
+  {
+    LOG(LWARNING, ("Can't apply patch", oldPath, e.Msg()));
+  }
+
+  if (!ok)
+    (void)my::DeleteFileX(newPath);
+  return ok;
+}
+
+bool MakeMapPatch(string const & oldPath, string const & newPath, string const & patchPath)
+{
+  try
+  {
+    string oldData, newData;
+    FileReader(oldPath).ReadAsString(oldData);
+    FileReader(newPath).ReadAsString(newData);
+
+    FileWriter w(patchPath);
+    Make(oldData, newData, w);
+    return true;
+  }
+  catch (RootException const & e)
+  {
+    LOG(LWARNING, ("Can't make patch", patchPath, e.Msg()));
+  }
+
+  (void)my::DeleteFileX(patchPath);
+  return false;
+}
+}  // namespace storage
@@ -0,0 +1,30 @@
+#pragma once
+
+#include "std/cstdint.hpp"
+#include "std/function.hpp"
+#include "std/string.hpp"
+
+namespace storage
+{
+/// Patch transforms a map file of the previous data version to the current one.
+/// All numbers are varuints, except checksum:
+///   "MWMP", format version,
+///   new file size, new file CRC32 (4 bytes, little endian),
+///   sequence of commands till the end of the patch:
+///     0, offset in old file, length - copy bytes from old file;
+///     1, length, bytes          - insert bytes from the patch.
+///
+/// Applies patch file reading old file and writing new one sequentially.
+/// @param expectedSize size of the new file known from countries list.
+/// @param isCancelled is checked periodically, cancelled patching fails.
+/// @returns false if patch is corrupted, result doesn't match size and checksum
+///          or patching is cancelled, in this case new file is deleted.
+bool ApplyMapPatch(string const & oldPath, string const & patchPath, string const & newPath,
+                   uint64_t expectedSize, function<bool()> const & isCancelled = function<bool()>());
+
+/// Makes patch which transforms old file to the new one. Both files are read into memory.
+/// Parts of the new file are found in the old one by hashes of the old file blocks,
+/// everything else is inserted.
+/// @returns false if files can't be read or patch can't be written, in this case patch is deleted.
+bool MakeMapPatch(string const & oldPath, string const & newPath, string const & patchPath);
+}  // namespace storage
@@ -415,6 +415,30 @@ bool Storage::DeleteFromDownloader(TIndex const & index)
   return true;
 }
 
+bool Storage::PauseDownloading(TIndex const & index)
+{
+  QueuedCountry * queuedCountry = FindCountryInQueue(index);
+  if (!queuedCountry)
+    return false;
+
+  if (IsCountryFirstInQueue(index))
+  {
+    m_downloader->Pause();
+
+    // Otherwise they would be downloaded again.
+    MapOptions const downloadedFiles = queuedCountry->GetDownloadedFiles();
+    if (downloadedFiles != MapOptions::Nothing)
+      OnMapDownloadFinished(index, true /* success */, downloadedFiles);
+  }
+
+  m_queue.erase(find(m_queue.begin(), m_queue.end(), index));
+  NotifyStatusChanged(index);
+
+  if (!m_queue.empty() && m_downloader->IsIdle())
+    DownloadNextCountryFromQueue();
+  return true;
+}
+
 bool Storage::IsDownloadInProgress() const { return !m_queue.empty(); }
 
 TIndex Storage::GetCurrentDownloadingCountryIndex() const { return IsDownloadInProgress() ? m_queue.front().GetIndex() : storage::TIndex(); }
@@ -498,6 +522,53 @@ void Storage::OnServerListDownloaded(vector<string> const & urls)
   TIndex const & index = queuedCountry.GetIndex();
   MapOptions const file = queuedCountry.GetCurrentFile();
 
+  // Try to update outdated file with a patch, which is much smaller than the whole file.
+  TLocalFilePtr const localFile = GetLatestLocalFile(index);
+  uint32_t const patchSize =
+      localFile ? GetCountryFile(index).GetPatchSize(file, localFile->GetVersion()) : 0;
+  if (patchSize != 0 && localFile->GetVersion() < GetCurrentDataVersion() &&
+      HasOptions(localFile->GetFiles(), file))
+  {
+    vector<string> patchUrls;
+    patchUrls.reserve(urls.size());
+    for (string const & url : urls)
+      patchUrls.push_back(GetFilePatchUrl(url, index, file, localFile->GetVersion()));
+
+    m_downloader->DownloadMapPatch(patchUrls, localFile->GetPath(file),
+                                   GetFileDownloadPath(index, file),
+                                   GetDownloadSize(queuedCountry), patchSize,
+                                   bind(&Storage::OnMapPatchDownloaded, this, urls, _1, _2),
+                                   bind(&Storage::OnMapFileDownloadProgress, this, _1));
+    return;
+  }
+
+  DownloadCurrentFile(urls);
+}
+
+void Storage::OnMapPatchDownloaded(vector<string> const & urls, bool success,
+                                   MapFilesDownloader::TProgress const & progress)
+{
+  // Queue can be empty because countries were deleted from queue.
+  if (m_queue.empty())
+    return;
+
+  if (success)
+  {
+    OnMapFileDownloadFinished(true, progress);
+    return;
+  }
+
+  LOG(LINFO, ("Can't update", GetCountryFile(m_queue.front().GetIndex()),
+              "with patch, downloading the whole file"));
+  DownloadCurrentFile(urls);
+}
+
+void Storage::DownloadCurrentFile(vector<string> const & urls)
+{
+  QueuedCountry const & queuedCountry = m_queue.front();
+  TIndex const & index = queuedCountry.GetIndex();
+  MapOptions const file = queuedCountry.GetCurrentFile();
+
   vector<string> fileUrls;
   fileUrls.reserve(urls.size());
   for (string const & url : urls)
@@ -505,6 +576,7 @@ void Storage::OnServerListDownloaded(vector<string> const & urls)
 
   string const filePath = GetFileDownloadPath(index, file);
   m_downloader->DownloadMapFile(fileUrls, filePath, GetDownloadSize(queuedCountry),
+                                GetCountryFile(index).GetRemoteChecksum(file),
                                 bind(&Storage::OnMapFileDownloadFinished, this, _1, _2),
                                 bind(&Storage::OnMapFileDownloadProgress, this, _1));
 }
@@ -595,6 +667,14 @@ string Storage::GetFileDownloadUrl(string const & baseUrl, TIndex const & index,
   return GetFileDownloadUrl(baseUrl, countryFile.GetNameWithExt(file));
 }
 
+string Storage::GetFilePatchUrl(string const & baseUrl, TIndex const & index, MapOptions file,
+                                int64_t oldVersion) const
+{
+  CountryFile const & countryFile = GetCountryFile(index);
+  return GetFileDownloadUrl(baseUrl, countryFile.GetNameWithExt(file) + "." +
+                                         strings::to_string(oldVersion) + PATCH_FILE_EXTENSION);
+}
+
 string Storage::GetFileDownloadUrl(string const & baseUrl, string const & fName) const
 {
   return baseUrl + OMIM_OS_NAME "/" + strings::to_string(GetCurrentDataVersion()) + "/" +
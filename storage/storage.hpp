@@ -87,6 +87,14 @@ private:
   /// suitable servers is received.
   void OnServerListDownloaded(vector<string> const & urls);
 
+  /// Called on the main thread by MapFilesDownloader when patch for
+  /// the outdated map file is applied or failed. In the last case
+  /// the whole file is downloaded from urls.
+  void OnMapPatchDownloaded(vector<string> const & urls, bool success,
+                            MapFilesDownloader::TProgress const & progress);
+
+  void DownloadCurrentFile(vector<string> const & urls);
+
   /// Called on the main thread by MapFilesDownloader when
   /// downloading of a map file succeeds/fails.
   void OnMapFileDownloadFinished(bool success, MapFilesDownloader::TProgress const & progress);
@@ -162,6 +170,11 @@ public:
   /// \return True iff country denoted by index was successfully
   ///          deleted from the downloader's queue.
   bool DeleteFromDownloader(TIndex const & index);
+  /// Removes country from the downloader's queue like DeleteFromDownloader(), but keeps
+  /// partially downloaded file, so that the next download of the country continues from the
+  /// same place. Files of the country which are completely downloaded are registered.
+  /// \return True iff country was in the downloader's queue.
+  bool PauseDownloading(TIndex const & index);
   bool IsDownloadInProgress() const;
 
   TIndex GetCurrentDownloadingCountryIndex() const;
@@ -172,6 +185,9 @@ public:
   string GetFileDownloadUrl(string const & baseUrl, TIndex const & index, MapOptions file) const;
   /// get download url by base url & file name
   string GetFileDownloadUrl(string const & baseUrl, string const & fName) const;
+  /// get url of the patch from oldVersion to the current one by base url & options
+  string GetFilePatchUrl(string const & baseUrl, TIndex const & index, MapOptions file,
+                         int64_t oldVersion) const;
 
   /// @param[out] res Populated with oudated countries.
   void GetOutdatedCountries(vector<Country const *> & countries) const;
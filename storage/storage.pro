@@ -18,6 +18,7 @@ HEADERS += \
   http_map_files_downloader.hpp \
   index.hpp \
   map_files_downloader.hpp \
+  map_patch.hpp \
   queued_country.hpp \
   simple_tree.hpp \
   storage.hpp \
@@ -29,6 +30,7 @@ SOURCES += \
   country_info.cpp \
   http_map_files_downloader.cpp \
   index.cpp \
+  map_patch.cpp \
   queued_country.cpp \
   storage.cpp \
   storage_defines.cpp \
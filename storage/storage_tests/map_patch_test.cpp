@@ -0,0 +1,186 @@
+#include "testing/testing.hpp"
+
+#include "storage/map_patch.hpp"
+
+#include "platform/platform.hpp"
+#include "platform/platform_tests_support/scoped_file.hpp"
+
+#include "coding/file_reader.hpp"
+#include "coding/internal/file_data.hpp"
+#include "coding/varint.hpp"
+#include "coding/writer.hpp"
+
+#include "base/scope_guard.hpp"
+#include "base/string_utils.hpp"
+
+#include <boost/crc.hpp>
+
+using namespace platform::tests_support;
+
+namespace storage
+{
+namespace
+{
+string const kOldFile = "map_patch_test_old.mwm";
+string const kNewFile = "map_patch_test_new.mwm";
+string const kPatchFile = "map_patch_test.mwmpatch";
+string const kResultFile = "map_patch_test_result.mwm";
+
+class PatchBuilder
+{
+public:
+  PatchBuilder(string const & result, uint64_t size) : m_writer(m_patch)
+  {
+    m_writer.Write("MWMP", 4);
+    WriteVarUint(m_writer, static_cast<uint64_t>(1));
+    WriteVarUint(m_writer, size);
+
+    boost::crc_32_type crc;
+    crc.process_bytes(result.data(), result.size());
+    uint32_t const checksum = crc.checksum();
+    for (int i = 0; i < 4; ++i)
+    {
+      uint8_t const b = static_cast<uint8_t>(checksum >> (8 * i));
+      m_writer.Write(&b, 1);
+    }
+  }
+
+  PatchBuilder & Copy(uint64_t offset, uint64_t length)
+  {
+    WriteVarUint(m_writer, static_cast<uint64_t>(0));
+    WriteVarUint(m_writer, offset);
+    WriteVarUint(m_writer, length);
+    return *this;
+  }
+
+  PatchBuilder & Insert(string const & data)
+  {
+    WriteVarUint(m_writer, static_cast<uint64_t>(1));
+    WriteVarUint(m_writer, static_cast<uint64_t>(data.size()));
+    m_writer.Write(data.data(), data.size());
+    return *this;
+  }
+
+  string const & Get() const { return m_patch; }
+
+private:
+  string m_patch;
+  MemWriter<string> m_writer;
+};
+
+string ReadFile(string const & path)
+{
+  string res;
+  FileReader(path).ReadAsString(res);
+  return res;
+}
+
+bool ApplyPatch(ScopedFile const & oldFile, string const & patch, string const & newPath,
+                uint64_t expectedSize, function<bool()> const & isCancelled = function<bool()>())
+{
+  ScopedFile const patchFile(kPatchFile, patch);
+  return ApplyMapPatch(oldFile.GetFullPath(), patchFile.GetFullPath(), newPath, expectedSize,
+                       isCancelled);
+}
+}  // namespace
+
+UNIT_TEST(MapPatch_Apply)
+{
+  ScopedFile const oldFile(kOldFile, "0123456789abcdef");
+  string const newPath = GetPlatform().WritablePathForFile(kNewFile);
+  MY_SCOPE_GUARD(deleteNewFile, bind(&my::DeleteFileX, newPath));
+
+  string const expected = "456789XYZ0123cdef";
+  PatchBuilder patch(expected, expected.size());
+  patch.Copy(4, 6).Insert("XYZ").Copy(0, 4).Copy(12, 4);
+  TEST(ApplyPatch(oldFile, patch.Get(), newPath, expected.size()), ());
+  TEST_EQUAL(expected, ReadFile(newPath), ());
+}
+
+UNIT_TEST(MapPatch_Corrupted)
+{
+  ScopedFile const oldFile(kOldFile, "0123456789abcdef");
+  string const newPath = GetPlatform().WritablePathForFile(kNewFile);
+  MY_SCOPE_GUARD(deleteNewFile, bind(&my::DeleteFileX, newPath));
+
+  string const expected = "0123XYZ";
+
+  {
+    // Wrong content.
+    PatchBuilder patch(expected, expected.size());
+    patch.Copy(0, 4).Insert("XYW");
+    TEST(!ApplyPatch(oldFile, patch.Get(), newPath, expected.size()), ());
+    TEST(!GetPlatform().IsFileExistsByFullPath(newPath), ());
+  }
+
+  {
+    // Copy outside of the old file.
+    PatchBuilder patch(expected, expected.size());
+    patch.Copy(14, 4).Insert("XYZ");
+    TEST(!ApplyPatch(oldFile, patch.Get(), newPath, expected.size()), ());
+    TEST(!GetPlatform().IsFileExistsByFullPath(newPath), ());
+  }
+
+  {
+    // Truncated patch.
+    PatchBuilder patch(expected, expected.size());
+    patch.Copy(0, 4).Insert("XYZ");
+    string const truncated = patch.Get().substr(0, patch.Get().size() - 2);
+    TEST(!ApplyPatch(oldFile, truncated, newPath, expected.size()), ());
+  }
+
+  {
+    // Size doesn't match the countries list.
+    PatchBuilder patch(expected, expected.size());
+    patch.Copy(0, 4).Insert("XYZ");
+    TEST(!ApplyPatch(oldFile, patch.Get(), newPath, expected.size() + 1), ());
+  }
+}
+
+UNIT_TEST(MapPatch_Cancelled)
+{
+  ScopedFile const oldFile(kOldFile, "0123456789abcdef");
+  string const newPath = GetPlatform().WritablePathForFile(kNewFile);
+  MY_SCOPE_GUARD(deleteNewFile, bind(&my::DeleteFileX, newPath));
+
+  string const expected = "0123456789abcdef";
+  PatchBuilder patch(expected, expected.size());
+  patch.Copy(0, 8).Copy(8, 8);
+
+  int checks = 0;
+  TEST(!ApplyPatch(oldFile, patch.Get(), newPath, expected.size(), [&checks]()
+  {
+    return ++checks > 1;
+  }), ());
+  TEST(!GetPlatform().IsFileExistsByFullPath(newPath), ());
+}
+
+UNIT_TEST(MapPatch_Make)
+{
+  string oldData;
+  for (int i = 0; i < 1000; ++i)
+    oldData += strings::to_string(i * 7919) + ",";
+
+  // Parts of the old file are moved, changed and removed.
+  string modified = oldData.substr(2000, 1000) + "inserted" + oldData.substr(0, 1500) +
+                    oldData.substr(3100);
+  modified[100] = 'X';
+
+  string const patchPath = GetPlatform().WritablePathForFile(kPatchFile);
+  string const resultPath = GetPlatform().WritablePathForFile(kResultFile);
+  MY_SCOPE_GUARD(deletePatchFile, bind(&my::DeleteFileX, patchPath));
+  MY_SCOPE_GUARD(deleteResultFile, bind(&my::DeleteFileX, resultPath));
+
+  ScopedFile const oldFile(kOldFile, oldData);
+  for (string const & newData : {oldData, modified, string("unrelated"), string()})
+  {
+    ScopedFile const newFile(kNewFile, newData);
+    TEST(MakeMapPatch(oldFile.GetFullPath(), newFile.GetFullPath(), patchPath), ());
+    TEST(ApplyMapPatch(oldFile.GetFullPath(), patchPath, resultPath, newData.size()), ());
+    TEST_EQUAL(newData, ReadFile(resultPath), ());
+
+    if (newData.size() > oldData.size() / 2)
+      TEST_LESS(ReadFile(patchPath).size(), newData.size() / 10, ());
+  }
+}
+}  // namespace storage
@@ -154,6 +154,41 @@ protected:
   TaskRunner & m_runner;
 };
 
+class PauseDownloadingWhenRoutingStartedChecker : public CountryDownloaderChecker
+{
+public:
+  PauseDownloadingWhenRoutingStartedChecker(Storage & storage, TIndex const & index,
+                                            TaskRunner & runner)
+      : CountryDownloaderChecker(storage, index, MapOptions::MapWithCarRouting,
+                                 vector<TStatus>{TStatus::ENotDownloaded, TStatus::EDownloading,
+                                                 TStatus::EOnDisk}),
+        m_runner(runner),
+        m_paused(false)
+  {
+  }
+
+protected:
+  // CountryDownloaderChecker overrides:
+  void OnCountryDownloadingProgress(TIndex const & index,
+                                    LocalAndRemoteSizeT const & progress) override
+  {
+    CountryDownloaderChecker::OnCountryDownloadingProgress(index, progress);
+
+    // Pause downloading when map file is downloaded and routing file is being downloaded.
+    if (!m_paused && progress.first > m_countryFile.GetRemoteSize(MapOptions::Map))
+    {
+      m_paused = true;
+      m_runner.PostTask([&]()
+                        {
+                          TEST(m_storage.PauseDownloading(m_index), (m_countryFile));
+                        });
+    }
+  }
+
+  TaskRunner & m_runner;
+  bool m_paused;
+};
+
 // Checks following state transitions:
 // NotDownloaded -> Downloading -> OnDisk.
 unique_ptr<CountryDownloaderChecker> AbsentCountryDownloaderChecker(Storage & storage,
@@ -587,6 +622,40 @@ UNIT_TEST(StorageTest_CancelDownloadingWhenAlmostDone)
   TEST(!file, (*file));
 }
 
+UNIT_TEST(StorageTest_PauseDownloadingWhenRoutingStarted)
+{
+  Storage storage;
+  TaskRunner runner;
+  InitStorage(storage, runner);
+
+  TIndex const index = storage.FindIndexByFile("Uruguay");
+  TEST(index.IsValid(), ());
+  storage.DeleteCountry(index, MapOptions::MapWithCarRouting);
+  MY_SCOPE_GUARD(cleanupFiles,
+                 bind(&Storage::DeleteCountry, &storage, index, MapOptions::MapWithCarRouting));
+
+  // Downloaded map file should be kept after pause.
+  {
+    PauseDownloadingWhenRoutingStartedChecker checker(storage, index, runner);
+    checker.StartDownload();
+    runner.Run();
+  }
+  TLocalFilePtr fileA = storage.GetLatestLocalFile(index);
+  TEST(fileA.get(), ());
+  TEST_EQUAL(MapOptions::Map, fileA->GetFiles(), ());
+
+  // Only routing file should be downloaded after pause.
+  {
+    unique_ptr<CountryDownloaderChecker> checker =
+        PresentCountryDownloaderChecker(storage, index, MapOptions::MapWithCarRouting);
+    checker->StartDownload();
+    runner.Run();
+  }
+  TLocalFilePtr fileB = storage.GetLatestLocalFile(index);
+  TEST(fileB.get(), ());
+  TEST_EQUAL(MapOptions::MapWithCarRouting, fileB->GetFiles(), ());
+}
+
 UNIT_TEST(StorageTest_DeleteCountry)
 {
   Storage storage;
@@ -23,6 +23,7 @@ SOURCES += \
   ../../testing/testingmain.cpp \
   country_info_test.cpp \
   fake_map_files_downloader.cpp \
+  map_patch_test.cpp \
   queued_country_tests.cpp \
   simple_tree_test.cpp \
   storage_tests.cpp \
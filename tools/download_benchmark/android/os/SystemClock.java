@@ -0,0 +1,14 @@
+package android.os;
+
+/**
+ * Replaces the framework class for benchmarks run on a desktop JVM.
+ */
+public final class SystemClock
+{
+  private SystemClock() {}
+
+  public static long elapsedRealtime()
+  {
+    return System.nanoTime() / 1000000;
+  }
+}
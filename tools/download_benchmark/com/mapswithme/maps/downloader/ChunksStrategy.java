@@ -0,0 +1,74 @@
+package com.mapswithme.maps.downloader;
+
+/**
+ * Native ChunksDownloadStrategy, which gives out ranges of a file to download as FileHttpRequest gets them.
+ * Should be used from one thread.
+ */
+class ChunksStrategy
+{
+  // Values of ChunksDownloadStrategy::ResultT.
+  static final int NEXT_CHUNK = 0;
+  static final int NO_FREE_SERVERS = 1;
+  static final int DOWNLOAD_FAILED = 2;
+  static final int DOWNLOAD_SUCCEEDED = 3;
+
+  private final long mPtr;
+  // Begin, end and server index of the last range.
+  private final long[] mRange = new long[3];
+
+  ChunksStrategy(String[] urls, long fileSize, long chunkSize)
+  {
+    mPtr = nativeCreate(urls, fileSize, chunkSize);
+  }
+
+  /**
+   * Same as AdaptiveDownloadExecutor does, 0 means one range per server.
+   */
+  static void setMaxChunksInProgress(int count)
+  {
+    nativeSetMaxChunksInProgress(count);
+  }
+
+  /**
+   * @return one of result constants, range is filled for NEXT_CHUNK only.
+   */
+  int nextChunk()
+  {
+    return nativeNextChunk(mPtr, mRange);
+  }
+
+  long getBegin()
+  {
+    return mRange[0];
+  }
+
+  long getEnd()
+  {
+    return mRange[1];
+  }
+
+  int getServer()
+  {
+    return (int) mRange[2];
+  }
+
+  void chunkFinished(boolean success, long beg, long end)
+  {
+    nativeChunkFinished(mPtr, success, beg, end);
+  }
+
+  void destroy()
+  {
+    nativeDestroy(mPtr);
+  }
+
+  private static native long nativeCreate(String[] urls, long fileSize, long chunkSize);
+
+  private static native void nativeDestroy(long ptr);
+
+  private static native void nativeSetMaxChunksInProgress(int count);
+
+  private static native int nativeNextChunk(long ptr, long[] range);
+
+  private static native void nativeChunkFinished(long ptr, boolean success, long beg, long end);
+}
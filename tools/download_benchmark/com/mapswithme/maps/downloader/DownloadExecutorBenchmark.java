@@ -0,0 +1,371 @@
+package com.mapswithme.maps.downloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compares download executors on a file downloaded by ranges from a local server, which throttles each connection
+ * and all of them together. Ranges are given out by native ChunksDownloadStrategy as FileHttpRequest does it:
+ * on start and when a range is finished, from two servers.
+ * <ul>
+ *   <li>fixed pool of 4 threads, one range per server, which is the native default;</li>
+ *   <li>fixed pool of 4 threads and 4 ranges at once;</li>
+ *   <li>AdaptiveDownloadExecutor, which sets the number of ranges at once to its pool size.</li>
+ * </ul>
+ * Splitting of slow ranges is done by DownloadChunkTask, which needs Android, and isn't measured here.
+ * <p/>
+ * Build and run from this directory:
+ * <pre>
+ *   javac -sourcepath .:../../android/src -d /tmp/bench com/mapswithme/maps/downloader/DownloadExecutorBenchmark.java
+ *   g++ -std=c++11 -shared -fPIC -DRELEASE -DOMIM_OS_LINUX -I../.. -I../../3party/boost \
+ *       -I$JAVA_HOME/include -I$JAVA_HOME/include/linux jni/download_benchmark.cpp \
+ *       ../../platform/chunks_download_strategy.cpp ../../coding/file_reader.cpp ../../coding/file_writer.cpp \
+ *       ../../coding/internal/file_data.cpp ../../base/internal/message.cpp \
+ *       ../../base/{base,exception,logging,lower_case,normalize_unicode,src_point,string_utils,thread,timer}.cpp \
+ *       -o /tmp/bench/libdownload_benchmark.so
+ *   java -cp /tmp/bench -Djava.library.path=/tmp/bench com.mapswithme.maps.downloader.DownloadExecutorBenchmark
+ * </pre>
+ */
+public class DownloadExecutorBenchmark
+{
+  private static final int KB = 1024;
+  private static final int MB = 1024 * KB;
+  // Default chunk size of HttpRequest::GetFile().
+  private static final int RANGE_SIZE = 512 * KB;
+  private static final int FIXED_THREADS = 4;
+  private static final int SERVERS = 2;
+
+  private enum Mode
+  {
+    ONE_PER_SERVER("fixed 4, 1 range per server"),
+    FIXED("fixed 4, 4 ranges"),
+    ADAPTIVE("adaptive");
+
+    final String name;
+
+    Mode(String name)
+    {
+      this.name = name;
+    }
+  }
+
+  private static class Scenario
+  {
+    final String name;
+    final int fileSize;
+    // Bytes per second.
+    final int connectionRate;
+    final int totalRate;
+    // Connections above this number reduce total rate by congestionLoss each, as packet loss does.
+    final int congestionStart;
+    final double congestionLoss;
+
+    Scenario(String name, int fileSize, int connectionRate, int totalRate, int congestionStart, double congestionLoss)
+    {
+      this.name = name;
+      this.fileSize = fileSize;
+      this.connectionRate = connectionRate;
+      this.totalRate = totalRate;
+      this.congestionStart = congestionStart;
+      this.congestionLoss = congestionLoss;
+    }
+
+    double getTotalRate(int connections)
+    {
+      final int extra = Math.max(0, connections - congestionStart);
+      return totalRate * Math.max(0.2, 1.0 - extra * congestionLoss);
+    }
+  }
+
+  /**
+   * Serves zeroes for "Range: bytes=beg-end" requests, a connection per request.
+   */
+  private static class ThrottledServer extends Thread
+  {
+    private static final int PIECE_SIZE = 8 * KB;
+
+    private final ServerSocket mSocket;
+    private final Scenario mScenario;
+    private final AtomicInteger mConnections = new AtomicInteger();
+    private int mMaxConnections;
+    // Time in nanoseconds when the link is free to send the next piece.
+    private long mLinkFree;
+
+    ThrottledServer(Scenario scenario) throws IOException
+    {
+      mSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+      mScenario = scenario;
+      setDaemon(true);
+    }
+
+    String getUrl()
+    {
+      return "http://127.0.0.1:" + mSocket.getLocalPort() + "/";
+    }
+
+    synchronized int getMaxConnections()
+    {
+      return mMaxConnections;
+    }
+
+    void close() throws IOException
+    {
+      mSocket.close();
+    }
+
+    private synchronized long reserveLink(int bytes)
+    {
+      final long now = System.nanoTime();
+      if (mLinkFree < now)
+        mLinkFree = now;
+      mLinkFree += (long) (bytes * 1e9 / mScenario.getTotalRate(mConnections.get()));
+      return mLinkFree;
+    }
+
+    private static void sleepUntil(long nanos)
+    {
+      long left;
+      while ((left = nanos - System.nanoTime()) > 0)
+        LockSupport.parkNanos(left);
+    }
+
+    @Override
+    public void run()
+    {
+      try
+      {
+        while (true)
+        {
+          final Socket client = mSocket.accept();
+          final Thread handler = new Thread()
+          {
+            @Override
+            public void run()
+            {
+              serve(client);
+            }
+          };
+          handler.setDaemon(true);
+          handler.start();
+        }
+      } catch (IOException ignored)
+      {
+        // Server is closed.
+      }
+    }
+
+    private static String readHeaders(InputStream in) throws IOException
+    {
+      final StringBuilder sb = new StringBuilder();
+      int matched = 0;
+      while (matched < 4)
+      {
+        final int c = in.read();
+        if (c < 0)
+          throw new IOException("Unexpected end of request");
+        sb.append((char) c);
+        matched = (c == (matched % 2 == 0 ? '\r' : '\n') ? matched + 1 : 0);
+      }
+      return sb.toString();
+    }
+
+    private void serve(Socket client)
+    {
+      final int connections = mConnections.incrementAndGet();
+      synchronized (this)
+      {
+        mMaxConnections = Math.max(mMaxConnections, connections);
+      }
+
+      try (Socket socket = client)
+      {
+        final String headers = readHeaders(socket.getInputStream());
+        final int pos = headers.indexOf("bytes=");
+        final int dash = headers.indexOf('-', pos);
+        final long beg = Long.parseLong(headers.substring(pos + 6, dash));
+        final long end = Long.parseLong(headers.substring(dash + 1, headers.indexOf('\r', dash)).trim());
+        final int size = (int) (end - beg + 1);
+
+        final OutputStream out = socket.getOutputStream();
+        out.write(("HTTP/1.1 206 Partial Content\r\nContent-Length: " + size +
+                   "\r\nContent-Range: bytes " + beg + "-" + end + "/" + mScenario.fileSize +
+                   "\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"));
+
+        final byte[] data = new byte[PIECE_SIZE];
+        final long nanosPerByte = 1000000000L / mScenario.connectionRate;
+        long ownFree = System.nanoTime();
+        int sent = 0;
+        while (sent < size)
+        {
+          final int piece = Math.min(data.length, size - sent);
+          ownFree = Math.max(ownFree, System.nanoTime()) + piece * nanosPerByte;
+          sleepUntil(Math.max(ownFree, reserveLink(piece)));
+          out.write(data, 0, piece);
+          out.flush();
+          sent += piece;
+        }
+      } catch (IOException | RuntimeException ignored)
+      {
+        // Client gave up or sent unexpected request.
+      } finally
+      {
+        mConnections.decrementAndGet();
+      }
+    }
+  }
+
+  private static class RangeTask implements Runnable
+  {
+    private final String mUrl;
+    private final long mBeg;
+    private final long mEnd;
+    // Null for the fixed pool.
+    private final AdaptiveDownloadExecutor mAdaptive;
+    private final BlockingQueue<RangeTask> mFinished;
+    private boolean mSuccess;
+
+    RangeTask(String url, long beg, long end, AdaptiveDownloadExecutor adaptive, BlockingQueue<RangeTask> finished)
+    {
+      mUrl = url;
+      mBeg = beg;
+      mEnd = end;
+      mAdaptive = adaptive;
+      mFinished = finished;
+    }
+
+    @Override
+    public void run()
+    {
+      final long start = System.nanoTime();
+      long bytes = 0;
+      try
+      {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(mUrl).openConnection();
+        connection.setRequestProperty("Range", "bytes=" + mBeg + "-" + mEnd);
+        try (InputStream in = connection.getInputStream())
+        {
+          final byte[] buffer = new byte[64 * KB];
+          int read;
+          while ((read = in.read(buffer)) > 0)
+          {
+            bytes += read;
+            if (mAdaptive != null)
+              mAdaptive.onBytesRead(read);
+          }
+        } finally
+        {
+          connection.disconnect();
+        }
+      } catch (IOException ignored)
+      {
+        // Range is reported as failed.
+      }
+
+      mSuccess = (bytes == mEnd - mBeg + 1);
+      if (mAdaptive != null)
+        mAdaptive.onRangeRead(bytes, (System.nanoTime() - start) / 1000000);
+      mFinished.add(this);
+    }
+  }
+
+  /**
+   * Starts ranges given out by the strategy, as FileHttpRequest::StartThreads() does.
+   */
+  private static int startRanges(ChunksStrategy strategy, String[] urls, Executor executor,
+                                 AdaptiveDownloadExecutor adaptive, BlockingQueue<RangeTask> finished)
+  {
+    int res;
+    while ((res = strategy.nextChunk()) == ChunksStrategy.NEXT_CHUNK)
+      executor.execute(new RangeTask(urls[strategy.getServer()], strategy.getBegin(), strategy.getEnd(),
+                                     adaptive, finished));
+    return res;
+  }
+
+  private static String run(Scenario scenario, Mode mode) throws IOException, InterruptedException
+  {
+    final ThrottledServer server = new ThrottledServer(scenario);
+    server.start();
+    final String[] urls = new String[SERVERS];
+    for (int i = 0; i < SERVERS; i++)
+      urls[i] = server.getUrl() + i;
+
+    final boolean adaptive = (mode == Mode.ADAPTIVE);
+    final ExecutorService fixed = (adaptive ? null : Executors.newFixedThreadPool(FIXED_THREADS));
+    // Adaptive executor sets the number of ranges itself.
+    ChunksStrategy.setMaxChunksInProgress(mode == Mode.FIXED ? FIXED_THREADS : 0);
+    final AdaptiveDownloadExecutor adaptiveExecutor = (adaptive ? new AdaptiveDownloadExecutor() : null);
+    final Executor executor = (adaptive ? adaptiveExecutor : fixed);
+
+    final ChunksStrategy strategy = new ChunksStrategy(urls, scenario.fileSize, RANGE_SIZE);
+    final BlockingQueue<RangeTask> finished = new LinkedBlockingQueue<>();
+    int failed = 0;
+
+    // Sample the pool size to report how it was tuned.
+    final StringBuilder poolSizes = new StringBuilder();
+    final long start = System.nanoTime();
+    long nextSample = start;
+    int res = startRanges(strategy, urls, executor, adaptiveExecutor, finished);
+    while (res != ChunksStrategy.DOWNLOAD_SUCCEEDED && res != ChunksStrategy.DOWNLOAD_FAILED)
+    {
+      if (adaptive && System.nanoTime() >= nextSample)
+      {
+        poolSizes.append(adaptiveExecutor.getPoolSize());
+        nextSample += 1000000000L;
+      }
+
+      final RangeTask task = finished.poll(100, TimeUnit.MILLISECONDS);
+      if (task == null)
+        continue;
+
+      if (!task.mSuccess)
+        failed++;
+      strategy.chunkFinished(task.mSuccess, task.mBeg, task.mEnd);
+      res = startRanges(strategy, urls, executor, adaptiveExecutor, finished);
+    }
+    final long millis = (System.nanoTime() - start) / 1000000;
+
+    strategy.destroy();
+    if (fixed != null)
+      fixed.shutdown();
+    server.close();
+
+    return String.format(Locale.US, "%-24s %-28s %6d ms %6.0f KB/s  max %d connections%s%s",
+                         scenario.name, mode.name, millis,
+                         scenario.fileSize / KB * 1000.0 / millis, server.getMaxConnections(),
+                         adaptive ? "  pool per second: " + poolSizes : "",
+                         res == ChunksStrategy.DOWNLOAD_FAILED ? "  FAILED" :
+                             (failed > 0 ? "  failed ranges: " + failed : ""));
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException
+  {
+    final Scenario[] scenarios = {
+        // Server or route limits each connection, more connections are faster.
+        new Scenario("128 KB/s per connection", 12 * MB, 128 * KB, 4 * MB, Integer.MAX_VALUE, 0),
+        // Link is saturated by 2 connections, more don't matter.
+        new Scenario("1 MB/s link", 12 * MB, 512 * KB, MB, Integer.MAX_VALUE, 0),
+        // Link is saturated by 2 connections, each extra one loses 15% of it.
+        new Scenario("congested 2 MB/s link", 24 * MB, MB, 2 * MB, 2, 0.15),
+    };
+
+    System.loadLibrary("download_benchmark");
+    for (Scenario scenario : scenarios)
+      for (Mode mode : Mode.values())
+        System.out.println(run(scenario, mode));
+  }
+}
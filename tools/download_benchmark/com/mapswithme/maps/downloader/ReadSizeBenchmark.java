@@ -0,0 +1,247 @@
+package com.mapswithme.maps.downloader;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Locale;
+
+/**
+ * Compares fixed read size ladder (64, 32, 1 KB on timeouts) with AdaptiveReadSize
+ * reading a range from a local server which throttles and stalls the response.
+ * <p/>
+ * Build and run from this directory:
+ * <pre>
+ *   javac -sourcepath .:../../android/src -d /tmp/bench com/mapswithme/maps/downloader/ReadSizeBenchmark.java
+ *   java -cp /tmp/bench com.mapswithme.maps.downloader.ReadSizeBenchmark
+ * </pre>
+ */
+public class ReadSizeBenchmark
+{
+  private static final int KB = 1024;
+  private static final int RANGE_SIZE = 4 * 1024 * KB;
+  private static final int READ_TIMEOUT_MILLIS = 1000;
+
+  private static class Scenario
+  {
+    final String name;
+    // Bytes per second, 0 - unlimited.
+    final int rate;
+    // Pause which is longer than read timeout, made after each stallEvery bytes.
+    final int stallEvery;
+    final int stallMillis;
+
+    Scenario(String name, int rate, int stallEvery, int stallMillis)
+    {
+      this.name = name;
+      this.rate = rate;
+      this.stallEvery = stallEvery;
+      this.stallMillis = stallMillis;
+    }
+  }
+
+  private interface Reader
+  {
+    int size();
+
+    void onRead(int requested, int read, long millis);
+
+    // Returns false if reading should be given up.
+    boolean onTimeout();
+  }
+
+  private static class LadderReader implements Reader
+  {
+    private final int[] mSizes = {64 * KB, 32 * KB, KB};
+    private int mIndex;
+
+    @Override
+    public int size()
+    {
+      return mSizes[mIndex];
+    }
+
+    @Override
+    public void onRead(int requested, int read, long millis) {}
+
+    @Override
+    public boolean onTimeout()
+    {
+      return (++mIndex < mSizes.length);
+    }
+  }
+
+  private static class AdaptiveReader implements Reader
+  {
+    private final AdaptiveReadSize mSize = new AdaptiveReadSize(64 * KB, 64 * KB);
+    private int mTimeouts;
+
+    @Override
+    public int size()
+    {
+      return mSize.get();
+    }
+
+    @Override
+    public void onRead(int requested, int read, long millis)
+    {
+      mTimeouts = 0;
+      mSize.onRead(requested, read, millis);
+    }
+
+    @Override
+    public boolean onTimeout()
+    {
+      mSize.onTimeout();
+      return (++mTimeouts <= 2);
+    }
+  }
+
+  private static class ThrottledServer extends Thread
+  {
+    private final ServerSocket mSocket;
+    private final Scenario mScenario;
+
+    ThrottledServer(Scenario scenario) throws IOException
+    {
+      mSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+      mScenario = scenario;
+      setDaemon(true);
+    }
+
+    int getPort()
+    {
+      return mSocket.getLocalPort();
+    }
+
+    @Override
+    public void run()
+    {
+      try (Socket client = mSocket.accept())
+      {
+        final InputStream in = client.getInputStream();
+        // Skip request headers.
+        int matched = 0;
+        while (matched < 4)
+        {
+          final int c = in.read();
+          if (c < 0)
+            return;
+          matched = (c == (matched % 2 == 0 ? '\r' : '\n') ? matched + 1 : 0);
+        }
+
+        final OutputStream out = client.getOutputStream();
+        out.write(("HTTP/1.1 206 Partial Content\r\nContent-Length: " + RANGE_SIZE +
+                   "\r\nContent-Range: bytes 0-" + (RANGE_SIZE - 1) + "/" + RANGE_SIZE + "\r\n\r\n").getBytes("US-ASCII"));
+
+        final byte[] data = new byte[4 * KB];
+        final long start = System.nanoTime();
+        int sent = 0;
+        int nextStall = (mScenario.stallEvery > 0 ? mScenario.stallEvery : Integer.MAX_VALUE);
+        long stalled = 0;
+        while (sent < RANGE_SIZE)
+        {
+          final int size = Math.min(data.length, RANGE_SIZE - sent);
+          out.write(data, 0, size);
+          out.flush();
+          sent += size;
+
+          if (sent >= nextStall)
+          {
+            nextStall += mScenario.stallEvery;
+            Thread.sleep(mScenario.stallMillis);
+            stalled += mScenario.stallMillis;
+          }
+
+          if (mScenario.rate > 0)
+          {
+            final long due = (long) sent * 1000 / mScenario.rate + stalled;
+            final long elapsed = (System.nanoTime() - start) / 1000000;
+            if (due > elapsed)
+              Thread.sleep(due - elapsed);
+          }
+        }
+      } catch (IOException | InterruptedException ignored)
+      {
+        // Client gave up.
+      }
+    }
+  }
+
+  private static String run(Scenario scenario, Reader reader) throws IOException
+  {
+    final ThrottledServer server = new ThrottledServer(scenario);
+    server.start();
+
+    final HttpURLConnection connection =
+        (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + "/").openConnection();
+    connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+    connection.setRequestProperty("Range", "bytes=0-" + (RANGE_SIZE - 1));
+
+    final long start = System.nanoTime();
+    final byte[] buffer = new byte[64 * KB];
+    int total = 0;
+    int reads = 0;
+    int timeouts = 0;
+    boolean failed = false;
+    try (InputStream in = new BufferedInputStream(connection.getInputStream(), 64 * KB))
+    {
+      while (total < RANGE_SIZE)
+      {
+        final int size = Math.min(reader.size(), RANGE_SIZE - total);
+        final long readStart = System.nanoTime();
+        final int read;
+        try
+        {
+          read = in.read(buffer, 0, size);
+        } catch (SocketTimeoutException ex)
+        {
+          timeouts++;
+          if (!reader.onTimeout())
+          {
+            failed = true;
+            break;
+          }
+          continue;
+        }
+
+        if (read < 0)
+          break;
+
+        reads++;
+        total += read;
+        reader.onRead(size, read, (System.nanoTime() - readStart) / 1000000);
+      }
+    }
+    finally
+    {
+      connection.disconnect();
+    }
+
+    final long millis = (System.nanoTime() - start) / 1000000;
+    return String.format(Locale.US, "%-9s %-8s %6d ms %7d reads %3d timeouts %s",
+                         scenario.name, reader instanceof LadderReader ? "ladder" : "adaptive",
+                         millis, reads, timeouts, failed ? "FAILED at " + total : "");
+  }
+
+  public static void main(String[] args) throws IOException
+  {
+    final Scenario[] scenarios = {
+        new Scenario("local", 0, 0, 0),
+        new Scenario("1 MB/s", 1024 * KB, 0, 0),
+        new Scenario("stalls", 1024 * KB, 512 * KB, 1200),
+    };
+
+    for (Scenario scenario : scenarios)
+    {
+      System.out.println(run(scenario, new LadderReader()));
+      System.out.println(run(scenario, new AdaptiveReader()));
+    }
+  }
+}
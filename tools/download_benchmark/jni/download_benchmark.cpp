@@ -0,0 +1,96 @@
+// Native part of DownloadExecutorBenchmark: real ChunksDownloadStrategy and the native method
+// of AdaptiveDownloadExecutor, which normally lives in android/jni/com/mapswithme/platform/HttpThread.cpp.
+
+#include "platform/chunks_download_strategy.hpp"
+
+#include "std/algorithm.hpp"
+#include "std/atomic.hpp"
+#include "std/string.hpp"
+#include "std/vector.hpp"
+
+#include <jni.h>
+
+namespace
+{
+
+// The same as in platform/http_request.cpp.
+atomic<size_t> g_maxChunksInProgress(0);
+
+struct Strategy
+{
+  Strategy(vector<string> const & urls) : m_urls(urls), m_strategy(urls) {}
+
+  vector<string> m_urls;
+  downloader::ChunksDownloadStrategy m_strategy;
+};
+
+} // namespace
+
+extern "C"
+{
+  JNIEXPORT void JNICALL
+  Java_com_mapswithme_maps_downloader_AdaptiveDownloadExecutor_nativeSetMaxChunksInProgress(JNIEnv * env, jclass clazz,
+      jint count)
+  {
+    g_maxChunksInProgress = static_cast<size_t>(count);
+  }
+
+  JNIEXPORT jlong JNICALL
+  Java_com_mapswithme_maps_downloader_ChunksStrategy_nativeCreate(JNIEnv * env, jclass clazz,
+      jobjectArray urls, jlong fileSize, jlong chunkSize)
+  {
+    vector<string> v;
+    for (jsize i = 0; i < env->GetArrayLength(urls); ++i)
+    {
+      jstring url = static_cast<jstring>(env->GetObjectArrayElement(urls, i));
+      char const * chars = env->GetStringUTFChars(url, 0);
+      v.push_back(chars);
+      env->ReleaseStringUTFChars(url, chars);
+      env->DeleteLocalRef(url);
+    }
+
+    Strategy * res = new Strategy(v);
+    res->m_strategy.InitChunks(fileSize, chunkSize);
+    return reinterpret_cast<jlong>(res);
+  }
+
+  JNIEXPORT void JNICALL
+  Java_com_mapswithme_maps_downloader_ChunksStrategy_nativeDestroy(JNIEnv * env, jclass clazz, jlong ptr)
+  {
+    delete reinterpret_cast<Strategy *>(ptr);
+  }
+
+  JNIEXPORT void JNICALL
+  Java_com_mapswithme_maps_downloader_ChunksStrategy_nativeSetMaxChunksInProgress(JNIEnv * env, jclass clazz,
+      jint count)
+  {
+    g_maxChunksInProgress = static_cast<size_t>(count);
+  }
+
+  JNIEXPORT jint JNICALL
+  Java_com_mapswithme_maps_downloader_ChunksStrategy_nativeNextChunk(JNIEnv * env, jclass clazz, jlong ptr,
+      jlongArray out)
+  {
+    Strategy * strategy = reinterpret_cast<Strategy *>(ptr);
+    // As FileHttpRequest::StartThreads() does.
+    strategy->m_strategy.SetMaxChunksInProgress(g_maxChunksInProgress);
+
+    string url;
+    pair<int64_t, int64_t> range;
+    downloader::ChunksDownloadStrategy::ResultT const res = strategy->m_strategy.NextChunk(url, range);
+    if (res == downloader::ChunksDownloadStrategy::ENextChunk)
+    {
+      jlong const values[] = {range.first, range.second,
+                              find(strategy->m_urls.begin(), strategy->m_urls.end(), url) - strategy->m_urls.begin()};
+      env->SetLongArrayRegion(out, 0, 3, values);
+    }
+    return res;
+  }
+
+  JNIEXPORT void JNICALL
+  Java_com_mapswithme_maps_downloader_ChunksStrategy_nativeChunkFinished(JNIEnv * env, jclass clazz, jlong ptr,
+      jboolean success, jlong beg, jlong end)
+  {
+    reinterpret_cast<Strategy *>(ptr)->m_strategy.ChunkFinished(success, make_pair(beg, end));
+  }
+}
@@ -0,0 +1,42 @@
+package com.mapswithme.maps.location;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Converts a trace readable by {@link LocationFilterReplay} (binary or text) to binary {@link GpsTrace},
+ * e.g. to push it to the device for {@code ReplayLocationProvider}:
+ * <pre>
+ *   javac -sourcepath .:../../android/src -d /tmp/replay com/mapswithme/maps/location/GpsTraceConvert.java
+ *   java -cp /tmp/replay com.mapswithme.maps.location.GpsTraceConvert trace.csv replay.mwmtrace
+ *   adb push replay.mwmtrace &lt;maps folder&gt;/gps_traces/
+ * </pre>
+ */
+public class GpsTraceConvert
+{
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length != 2)
+    {
+      System.err.println("Usage: GpsTraceConvert <input trace> <output" + GpsTrace.EXTENSION + ">");
+      System.exit(1);
+    }
+
+    final List<LocationFilterReplay.Fix> fixes = LocationFilterReplay.readTrace(args[0]);
+    if (fixes.isEmpty())
+    {
+      System.err.println("No fixes in " + args[0]);
+      System.exit(1);
+    }
+
+    final GpsTrace.Writer writer = new GpsTrace.Writer(new BufferedOutputStream(new FileOutputStream(args[1])),
+                                                       fixes.get(0).time);
+    for (LocationFilterReplay.Fix fix : fixes)
+      writer.write(fix.time, fix.lat, fix.lon, fix.accuracy, fix.speed, fix.bearing);
+    writer.close();
+
+    System.out.println("Written " + fixes.size() + " fixes to " + args[1]);
+  }
+}
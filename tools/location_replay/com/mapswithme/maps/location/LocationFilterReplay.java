@@ -0,0 +1,333 @@
+package com.mapswithme.maps.location;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Replays GPS traces through LocationFilter and the dead reckoning it replaced
+ * (last fix moved by its speed and bearing, as Framework::PredictLocation does).
+ * <p/>
+ * Trace is either a binary {@link GpsTrace} written by the app or a text file with a fix per line:
+ * "timeMillis,lat,lon,accuracy,speed,bearing", where speed and bearing are negative if unknown;
+ * lines starting with '#' are skipped.
+ * Without arguments a synthetic drive with known true positions is generated.
+ * <p/>
+ * Reported for each trace:
+ * <ul>
+ * <li>one step error: distance from the position predicted for the time of the next fix to that fix;</li>
+ * <li>display error (synthetic trace only): distance from the true position to the shown one,
+ *     which is the fix itself (filtered by LocationFilter) and then the predictions made
+ *     every {@link #DISPLAY_INTERVAL} until the next fix;</li>
+ * <li>CPU time per fix, including the filtered fix and predictions between fixes.</li>
+ * </ul>
+ * Build and run from this directory:
+ * <pre>
+ *   javac -sourcepath .:../../android/src -d /tmp/replay com/mapswithme/maps/location/LocationFilterReplay.java
+ *   java -cp /tmp/replay com.mapswithme.maps.location.LocationFilterReplay [trace.csv ...]
+ * </pre>
+ */
+public class LocationFilterReplay
+{
+  private static final double EARTH_RADIUS = 6378137.0;
+  private static final long DISPLAY_INTERVAL = 100;
+  private static final long MAX_PREDICTION_MILLIS = 4000;
+  private static final int CPU_RUNS = 200;
+
+  static class Fix
+  {
+    final long time;
+    final double lat;
+    final double lon;
+    final double accuracy;
+    final double speed;
+    final double bearing;
+
+    Fix(long time, double lat, double lon, double accuracy, double speed, double bearing)
+    {
+      this.time = time;
+      this.lat = lat;
+      this.lon = lon;
+      this.accuracy = accuracy;
+      this.speed = speed;
+      this.bearing = bearing;
+    }
+
+    boolean hasVelocity()
+    {
+      return speed >= 0 && bearing >= 0;
+    }
+  }
+
+  private interface Truth
+  {
+    // Returns {lat, lon} at the time.
+    double[] get(long time);
+  }
+
+  private interface Predictor
+  {
+    void update(Fix fix);
+
+    // Returns {lat, lon} or null.
+    double[] predict(long time);
+  }
+
+  private static class FilterPredictor implements Predictor
+  {
+    private final LocationFilter mFilter = new LocationFilter();
+
+    @Override
+    public void update(Fix fix)
+    {
+      mFilter.update(fix.time, fix.lat, fix.lon, fix.accuracy, fix.hasVelocity(), fix.speed, fix.bearing);
+    }
+
+    @Override
+    public double[] predict(long time)
+    {
+      return mFilter.predict(time) ? new double[] {mFilter.getLatitude(), mFilter.getLongitude()} : null;
+    }
+  }
+
+  private static class DeadReckoning implements Predictor
+  {
+    private Fix mLast;
+
+    @Override
+    public void update(Fix fix)
+    {
+      mLast = fix;
+    }
+
+    @Override
+    public double[] predict(long time)
+    {
+      if (mLast == null)
+        return null;
+
+      if (!mLast.hasVelocity())
+        return new double[] {mLast.lat, mLast.lon};
+
+      return move(mLast.lat, mLast.lon, mLast.bearing, mLast.speed * (time - mLast.time) / 1000.0);
+    }
+  }
+
+  private static class Errors
+  {
+    private final List<Double> mValues = new ArrayList<>();
+
+    void add(double v)
+    {
+      mValues.add(v);
+    }
+
+    @Override
+    public String toString()
+    {
+      if (mValues.isEmpty())
+        return "-";
+
+      final double[] v = new double[mValues.size()];
+      double sum = 0;
+      for (int i = 0; i < v.length; i++)
+      {
+        v[i] = mValues.get(i);
+        sum += v[i];
+      }
+      Arrays.sort(v);
+      return String.format(Locale.US, "mean %6.2f m  p95 %6.2f m", sum / v.length, v[(int) (v.length * 0.95)]);
+    }
+  }
+
+  static double[] move(double lat, double lon, double bearing, double meters)
+  {
+    final double b = Math.toRadians(bearing);
+    final double dLat = meters * Math.cos(b) / EARTH_RADIUS;
+    final double dLon = meters * Math.sin(b) / (EARTH_RADIUS * Math.cos(Math.toRadians(lat)));
+    return new double[] {lat + Math.toDegrees(dLat), lon + Math.toDegrees(dLon)};
+  }
+
+  static double distance(double[] a, double lat, double lon)
+  {
+    final double dLat = Math.toRadians(lat - a[0]);
+    final double dLon = Math.toRadians(lon - a[1]) * Math.cos(Math.toRadians(lat));
+    return EARTH_RADIUS * Math.hypot(dLat, dLon);
+  }
+
+  static List<Fix> readTrace(String path) throws IOException
+  {
+    final List<Fix> res = new ArrayList<>();
+    try (InputStream in = new BufferedInputStream(new FileInputStream(path)))
+    {
+      if (GpsTrace.isTrace(in))
+      {
+        for (GpsTrace.Fix f : GpsTrace.read(in))
+          res.add(new Fix(f.time, f.lat, f.lon, f.accuracy, f.speed, f.bearing));
+        return res;
+      }
+
+      final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#"))
+          continue;
+
+        final String[] f = line.split(",");
+        res.add(new Fix(Long.parseLong(f[0]), Double.parseDouble(f[1]), Double.parseDouble(f[2]),
+                        Double.parseDouble(f[3]), Double.parseDouble(f[4]), Double.parseDouble(f[5])));
+      }
+    }
+    return res;
+  }
+
+  /**
+   * City drive: accelerations, stops and turns; fixes every second with 5 m noise.
+   */
+  private static class SyntheticDrive implements Truth
+  {
+    private static final long STEP = 10;
+    private final List<double[]> mPoints = new ArrayList<>();
+    final List<Fix> fixes = new ArrayList<>();
+
+    SyntheticDrive(long seed, int seconds)
+    {
+      final Random random = new Random(seed);
+      double lat = 55.75;
+      double lon = 37.62;
+      double speed = 0;
+      double bearing = 90;
+      double targetSpeed = 14;
+      double turnRate = 0;
+
+      for (long t = 0; t <= seconds * 1000L; t += STEP)
+      {
+        if (t % 5000 == 0)
+        {
+          targetSpeed = random.nextInt(5) == 0 ? 0 : 8 + random.nextDouble() * 12;
+          turnRate = random.nextInt(3) == 0 ? (random.nextBoolean() ? 1 : -1) * (10 + random.nextDouble() * 20) : 0;
+        }
+
+        final double dt = STEP / 1000.0;
+        speed += Math.max(-3 * dt, Math.min(2 * dt, targetSpeed - speed));
+        if (speed > 1)
+          bearing = (bearing + turnRate * dt + 360) % 360;
+
+        final double[] p = move(lat, lon, bearing, speed * dt);
+        lat = p[0];
+        lon = p[1];
+        mPoints.add(new double[] {lat, lon});
+
+        if (t % 1000 == 0)
+        {
+          final double accuracy = 5;
+          double[] noisy = move(lat, lon, 0, random.nextGaussian() * accuracy);
+          noisy = move(noisy[0], noisy[1], 90, random.nextGaussian() * accuracy);
+          final double noisySpeed = Math.max(0, speed + random.nextGaussian() * 0.5);
+          final double noisyBearing = (bearing + random.nextGaussian() * 3 + 360) % 360;
+          fixes.add(new Fix(t, noisy[0], noisy[1], accuracy, noisySpeed, speed > 1 ? noisyBearing : -1));
+        }
+      }
+    }
+
+    @Override
+    public double[] get(long time)
+    {
+      return mPoints.get((int) Math.min(mPoints.size() - 1, time / STEP));
+    }
+  }
+
+  private static void replay(String name, Predictor predictor, List<Fix> fixes, Truth truth)
+  {
+    final Errors oneStep = new Errors();
+    final Errors display = new Errors();
+
+    for (int i = 0; i < fixes.size(); i++)
+    {
+      final Fix fix = fixes.get(i);
+      if (i > 0)
+      {
+        final double[] p = predictor.predict(fix.time);
+        if (p != null && fix.time - fixes.get(i - 1).time <= MAX_PREDICTION_MILLIS)
+          oneStep.add(distance(p, fix.lat, fix.lon));
+      }
+
+      predictor.update(fix);
+
+      if (truth == null || i + 1 == fixes.size())
+        continue;
+
+      final long end = Math.min(fixes.get(i + 1).time, fix.time + MAX_PREDICTION_MILLIS);
+      for (long t = fix.time; t < end; t += DISPLAY_INTERVAL)
+      {
+        final double[] p = predictor.predict(t);
+        final double[] real = truth.get(t);
+        display.add(distance(p, real[0], real[1]));
+      }
+    }
+
+    System.out.println(String.format(Locale.US, "  %-15s one step: %s   display: %s", name, oneStep, display));
+  }
+
+  private static void measureCpu(List<Fix> fixes)
+  {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    double sink = 0;
+    long cpu = 0;
+    // The first half warms up.
+    for (int run = 0; run < 2 * CPU_RUNS; run++)
+    {
+      final LocationFilter filter = new LocationFilter();
+      final long start = bean.getCurrentThreadCpuTime();
+      for (int i = 0; i < fixes.size(); i++)
+      {
+        final Fix fix = fixes.get(i);
+        filter.update(fix.time, fix.lat, fix.lon, fix.accuracy, fix.hasVelocity(), fix.speed, fix.bearing);
+        final long end = (i + 1 < fixes.size() ? fixes.get(i + 1).time : fix.time + 1000);
+        for (long t = fix.time; t < end && t - fix.time <= MAX_PREDICTION_MILLIS; t += DISPLAY_INTERVAL)
+        {
+          filter.predict(t);
+          sink += filter.getLatitude();
+        }
+      }
+      if (run >= CPU_RUNS)
+        cpu += bean.getCurrentThreadCpuTime() - start;
+    }
+
+    System.out.println(String.format(Locale.US, "  CPU per fix with predictions every %d ms: %.2f us  (%d)",
+                                     DISPLAY_INTERVAL, cpu / 1000.0 / CPU_RUNS / fixes.size(), (long) sink % 10));
+  }
+
+  private static void run(String name, List<Fix> fixes, Truth truth)
+  {
+    System.out.println(name + ", " + fixes.size() + " fixes:");
+    replay("Kalman filter", new FilterPredictor(), fixes, truth);
+    replay("dead reckoning", new DeadReckoning(), fixes, truth);
+    measureCpu(fixes);
+  }
+
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length == 0)
+    {
+      final SyntheticDrive drive = new SyntheticDrive(1, 1800);
+      run("Synthetic city drive", drive.fixes, drive);
+      return;
+    }
+
+    for (String path : args)
+      run(path, readTrace(path), null);
+  }
+}
@@ -0,0 +1,189 @@
+package com.mapswithme.maps.location;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Replays GPS traces through LocationPowerManager and compares its adaptive update rate with
+ * the fixed {@link LocationPowerManager#FIXED_INTERVAL} used before.
+ * <p/>
+ * Trace format is the same as for {@link LocationFilterReplay}, fixes should go at the receiver rate (usually 1 Hz).
+ * Updates are requested at the interval of the current mode and get the latest fix of the trace.
+ * Reported for each trace:
+ * <ul>
+ * <li>fixes delivered, as the receiver never gives more than the trace has;</li>
+ * <li>staleness: distance from each trace fix to the last delivered one, the price of rarer updates;</li>
+ * <li>time spent in each mode.</li>
+ * </ul>
+ * Without arguments a synthetic day is generated: standing, walking, driving with traffic lights.
+ * With "-routing" all traces are replayed as if route following was active.
+ * <p/>
+ * Build and run from this directory:
+ * <pre>
+ *   javac -sourcepath .:../../android/src -d /tmp/replay com/mapswithme/maps/location/LocationPowerReplay.java
+ *   java -cp /tmp/replay com.mapswithme.maps.location.LocationPowerReplay [-routing] [trace.csv ...]
+ * </pre>
+ */
+public class LocationPowerReplay
+{
+  private static class Result
+  {
+    int fixes;
+    final List<Double> staleness = new ArrayList<>();
+    LocationPowerManager manager;
+
+    String formatStaleness()
+    {
+      final double[] v = new double[staleness.size()];
+      double sum = 0;
+      for (int i = 0; i < v.length; i++)
+      {
+        v[i] = staleness.get(i);
+        sum += v[i];
+      }
+      Arrays.sort(v);
+      return String.format(Locale.US, "mean %6.2f m  p95 %6.2f m", sum / v.length, v[(int) (v.length * 0.95)]);
+    }
+  }
+
+  private static Result replayFixed(List<LocationFilterReplay.Fix> fixes)
+  {
+    final Result res = new Result();
+    // Receiver delivers every fix of the trace, it is not faster than the fixed interval.
+    res.fixes = fixes.size();
+    for (int i = 0; i < fixes.size(); i++)
+      res.staleness.add(0.0);
+    return res;
+  }
+
+  private static Result replayAdaptive(List<LocationFilterReplay.Fix> fixes, boolean routing)
+  {
+    final Result res = new Result();
+    final LocationPowerManager manager = new LocationPowerManager();
+    res.manager = manager;
+
+    final long start = fixes.get(0).time;
+    final long end = fixes.get(fixes.size() - 1).time;
+    manager.setRoutingActive(start, routing);
+
+    // Times of requests which delivered a new fix and indexes of those fixes.
+    final List<long[]> deliveries = new ArrayList<>();
+    int current = 0;
+    for (long t = start; t <= end; )
+    {
+      while (current + 1 < fixes.size() && fixes.get(current + 1).time <= t)
+        current++;
+
+      if (deliveries.isEmpty() || deliveries.get(deliveries.size() - 1)[1] != current)
+      {
+        final LocationFilterReplay.Fix fix = fixes.get(current);
+        manager.onLocation(t, fix.speed >= 0, fix.speed, routing);
+        deliveries.add(new long[] {t, current});
+      }
+
+      t += manager.getMode().interval;
+    }
+    res.fixes = deliveries.size();
+
+    // Position shown at the time of each trace fix is the last delivered one.
+    int delivered = 0;
+    for (LocationFilterReplay.Fix fix : fixes)
+    {
+      while (delivered + 1 < deliveries.size() && deliveries.get(delivered + 1)[0] <= fix.time)
+        delivered++;
+
+      final LocationFilterReplay.Fix shown = fixes.get((int) deliveries.get(delivered)[1]);
+      res.staleness.add(LocationFilterReplay.distance(new double[] {shown.lat, shown.lon}, fix.lat, fix.lon));
+    }
+
+    return res;
+  }
+
+  private static void print(String name, Result r)
+  {
+    System.out.println(String.format(Locale.US, "  %-9s fixes %6d   staleness: %s", name, r.fixes,
+                                     r.formatStaleness()));
+  }
+
+  private static void run(String name, List<LocationFilterReplay.Fix> fixes, boolean routing)
+  {
+    final long end = fixes.get(fixes.size() - 1).time;
+    System.out.println(String.format(Locale.US, "%s, %d fixes, %.1f min%s:", name, fixes.size(),
+                                     (end - fixes.get(0).time) / 60000.0, routing ? ", routing" : ""));
+    print("fixed", replayFixed(fixes));
+
+    final Result adaptive = replayAdaptive(fixes, routing);
+    print("adaptive", adaptive);
+
+    final StringBuilder modes = new StringBuilder("  time in modes:");
+    for (LocationPowerManager.Mode mode : LocationPowerManager.Mode.values())
+    {
+      final long duration = adaptive.manager.getDuration(mode, end);
+      if (duration > 0)
+        modes.append(String.format(Locale.US, " %s %.1f min", mode.name().toLowerCase(Locale.US), duration / 60000.0));
+    }
+    System.out.println(modes);
+  }
+
+  /**
+   * Fixes every second, 5 m position noise and 0.3 m/s speed noise.
+   * Segments are {seconds, speed in m/s}, driving segments stop at traffic lights.
+   */
+  private static List<LocationFilterReplay.Fix> generateDay(long seed)
+  {
+    final double[][] segments = {{300, 0}, {600, 1.4}, {120, 0}, {900, 12}, {300, 1.4}, {600, 0}, {600, 12}, {180, 0}};
+    final Random random = new Random(seed);
+    final List<LocationFilterReplay.Fix> res = new ArrayList<>();
+    double lat = 55.75;
+    double lon = 37.62;
+    double bearing = 0;
+    long t = 0;
+
+    for (double[] segment : segments)
+    {
+      final boolean driving = segment[1] > 5;
+      bearing = (bearing + 90) % 360;
+      for (int s = 0; s < segment[0]; s++, t += 1000)
+      {
+        // Red light: 30 seconds of every 2 minutes.
+        final double speed = (driving && s % 120 >= 90 ? 0 : segment[1]);
+        final double[] p = LocationFilterReplay.move(lat, lon, bearing, speed);
+        lat = p[0];
+        lon = p[1];
+
+        double[] noisy = LocationFilterReplay.move(lat, lon, 0, random.nextGaussian() * 5);
+        noisy = LocationFilterReplay.move(noisy[0], noisy[1], 90, random.nextGaussian() * 5);
+        final double noisySpeed = Math.abs(speed + random.nextGaussian() * 0.3);
+        res.add(new LocationFilterReplay.Fix(t, noisy[0], noisy[1], 5, noisySpeed, speed > 1 ? bearing : -1));
+      }
+    }
+
+    return res;
+  }
+
+  public static void main(String[] args) throws IOException
+  {
+    boolean routing = false;
+    final List<String> paths = new ArrayList<>();
+    for (String arg : args)
+    {
+      if ("-routing".equals(arg))
+        routing = true;
+      else
+        paths.add(arg);
+    }
+
+    if (paths.isEmpty())
+    {
+      run("Synthetic day", generateDay(1), routing);
+      return;
+    }
+
+    for (String path : paths)
+      run(path, LocationFilterReplay.readTrace(path), routing);
+  }
+}
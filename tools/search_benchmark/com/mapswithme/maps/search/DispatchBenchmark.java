@@ -0,0 +1,251 @@
+package com.mapswithme.maps.search;
+
+import com.mapswithme.util.Listeners;
+import com.mapswithme.util.Proc;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares posting a new Runnable to UI thread for each native search callback with ResultsDispatcher.
+ * Single thread executor plays UI thread, each delivery to a listener takes {@link #BIND_MICROS} (list rebind).
+ * Native thread sends a burst of updates and the end marker.
+ * <p/>
+ * Build and run from this directory:
+ * <pre>
+ *   javac -sourcepath .:../../android/src -d /tmp/bench com/mapswithme/maps/search/DispatchBenchmark.java
+ *   java -cp /tmp/bench com.mapswithme.maps.search.DispatchBenchmark
+ * </pre>
+ */
+public class DispatchBenchmark
+{
+  private static final int LISTENERS = 2;
+  private static final long BIND_MICROS = 500;
+  private static final long TIMESTAMP = 1;
+
+  private interface Listener
+  {
+    void onUpdate(Object[] results, long timestamp);
+
+    void onEnd(long timestamp);
+  }
+
+  private static class CountingListener implements Listener
+  {
+    int updates;
+    CountDownLatch done;
+
+    @Override
+    public void onUpdate(Object[] results, long timestamp)
+    {
+      updates++;
+      final long end = System.nanoTime() + BIND_MICROS * 1000;
+      while (System.nanoTime() < end)
+        ;
+    }
+
+    @Override
+    public void onEnd(long timestamp)
+    {
+      done.countDown();
+    }
+  }
+
+  private interface Engine
+  {
+    void onResultsUpdate(Object[] results, long timestamp);
+
+    void onResultsEnd(long timestamp);
+  }
+
+  // Previous implementation: new Runnable for each callback, listeners in ArrayList.
+  private static class PostEach implements Engine
+  {
+    private final ExecutorService mUi;
+    private final List<Listener> mListeners = new ArrayList<>();
+
+    PostEach(ExecutorService ui, List<? extends Listener> listeners)
+    {
+      mUi = ui;
+      mListeners.addAll(listeners);
+    }
+
+    @Override
+    public void onResultsUpdate(final Object[] results, final long timestamp)
+    {
+      mUi.execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for (Listener listener : mListeners)
+            listener.onUpdate(results, timestamp);
+        }
+      });
+    }
+
+    @Override
+    public void onResultsEnd(final long timestamp)
+    {
+      mUi.execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for (Listener listener : mListeners)
+            listener.onEnd(timestamp);
+        }
+      });
+    }
+  }
+
+  private static class Coalescing implements Engine
+  {
+    private final Listeners<Listener> mListeners = new Listeners<>();
+    private Object[] mDelivered;
+    private long mTimestamp;
+
+    private final Proc<Listener> mUpdateProc = new Proc<Listener>()
+    {
+      @Override
+      public void invoke(Listener listener)
+      {
+        listener.onUpdate(mDelivered, mTimestamp);
+      }
+    };
+
+    private final Proc<Listener> mEndProc = new Proc<Listener>()
+    {
+      @Override
+      public void invoke(Listener listener)
+      {
+        listener.onEnd(mTimestamp);
+      }
+    };
+
+    private final ResultsDispatcher<Object[]> mDispatcher;
+
+    Coalescing(final ExecutorService ui, List<? extends Listener> listeners)
+    {
+      for (Listener listener : listeners)
+        mListeners.add(listener);
+
+      mDispatcher = new ResultsDispatcher<Object[]>()
+      {
+        @Override
+        protected void post(Runnable task)
+        {
+          ui.execute(task);
+        }
+
+        @Override
+        protected boolean isStale(long timestamp)
+        {
+          return false;
+        }
+
+        @Override
+        protected void deliverUpdate(Object[] results, long timestamp)
+        {
+          mDelivered = results;
+          mTimestamp = timestamp;
+          mListeners.forEach(mUpdateProc);
+        }
+
+        @Override
+        protected void deliverEnd(long timestamp)
+        {
+          mTimestamp = timestamp;
+          mListeners.forEach(mEndProc);
+        }
+      };
+    }
+
+    @Override
+    public void onResultsUpdate(Object[] results, long timestamp)
+    {
+      mDispatcher.update(results, timestamp);
+    }
+
+    @Override
+    public void onResultsEnd(long timestamp)
+    {
+      mDispatcher.end(timestamp);
+    }
+  }
+
+  private static long allocatedBytes()
+  {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+  }
+
+  private static String run(String name, boolean coalescing, int callbacks, long intervalMicros)
+      throws InterruptedException
+  {
+    final ExecutorService ui = Executors.newSingleThreadExecutor();
+    final List<CountingListener> listeners = new ArrayList<>();
+    final CountDownLatch done = new CountDownLatch(LISTENERS);
+    for (int i = 0; i < LISTENERS; i++)
+    {
+      final CountingListener listener = new CountingListener();
+      listener.done = done;
+      listeners.add(listener);
+    }
+
+    final Engine engine = (coalescing ? new Coalescing(ui, listeners) : new PostEach(ui, listeners));
+    final Object[][] batches = new Object[callbacks][];
+    for (int i = 0; i < callbacks; i++)
+      batches[i] = new Object[i + 1];
+
+    final long start = System.nanoTime();
+    final long allocatedStart = allocatedBytes();
+    for (int i = 0; i < callbacks; i++)
+    {
+      engine.onResultsUpdate(batches[i], TIMESTAMP);
+      if (intervalMicros > 0)
+      {
+        final long end = System.nanoTime() + intervalMicros * 1000;
+        while (System.nanoTime() < end)
+          ;
+      }
+    }
+    engine.onResultsEnd(TIMESTAMP);
+    final long allocated = allocatedBytes() - allocatedStart;
+
+    done.await();
+    final long millis = (System.nanoTime() - start) / 1000000;
+    ui.shutdown();
+    ui.awaitTermination(1, TimeUnit.SECONDS);
+
+    return String.format(Locale.US, "%-22s %-10s %5d ms to end, %4d deliveries, %6d bytes allocated by native thread",
+                         name, coalescing ? "coalescing" : "post each", millis, listeners.get(0).updates, allocated);
+  }
+
+  public static void main(String[] args) throws InterruptedException
+  {
+    // Warm up.
+    for (int i = 0; i < 5; i++)
+    {
+      run("", false, 200, 0);
+      run("", true, 200, 0);
+    }
+
+    final int[] bursts = {100, 200, 500};
+    for (int callbacks : bursts)
+    {
+      final String name = callbacks + " back to back";
+      System.out.println(run(name, false, callbacks, 0));
+      System.out.println(run(name, true, callbacks, 0));
+    }
+
+    // Updates slower than delivery are mostly delivered one by one.
+    System.out.println(run("100, 2 ms apart", false, 100, 2000));
+    System.out.println(run("100, 2 ms apart", true, 100, 2000));
+  }
+}
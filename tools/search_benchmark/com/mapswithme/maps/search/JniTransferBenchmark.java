@@ -0,0 +1,152 @@
+package com.mapswithme.maps.search;
+
+import java.util.Locale;
+
+/**
+ * Compares passing a batch of search results through JNI as an object per result
+ * (with nested description, strings and highlight array) with one packed array decoded by PackedSearchResults.
+ * Packed batch is measured twice: with decoding of the first screen only (as the list does)
+ * and with decoding of all results.
+ * <p/>
+ * Build and run from this directory:
+ * <pre>
+ *   g++ -std=c++11 -O2 -shared -fPIC -I$JAVA_HOME/include -I$JAVA_HOME/include/linux -I../.. \
+ *       jni/jni_transfer_benchmark.cpp -o /tmp/bench/libjni_transfer_benchmark.so
+ *   javac -sourcepath .:../../android/src -d /tmp/bench com/mapswithme/maps/search/JniTransferBenchmark.java
+ *   java -Djava.library.path=/tmp/bench -cp /tmp/bench com.mapswithme.maps.search.JniTransferBenchmark
+ * </pre>
+ */
+public class JniTransferBenchmark
+{
+  private static final int VISIBLE_ROWS = 10;
+  private static final long RUN_NANOS = 1000L * 1000 * 1000;
+
+  @SuppressWarnings("unused")
+  static class ObjectDescription
+  {
+    final String featureType;
+    final String region;
+    final String distance;
+    final String cuisine;
+    final int stars;
+    final boolean closedNow;
+
+    ObjectDescription(String featureType, String region, String distance, String cuisine, int stars, boolean closedNow)
+    {
+      this.featureType = featureType;
+      this.region = region;
+      this.distance = distance;
+      this.cuisine = cuisine;
+      this.stars = stars;
+      this.closedNow = closedNow;
+    }
+  }
+
+  @SuppressWarnings("unused")
+  static class ObjectResult
+  {
+    final String name;
+    final ObjectDescription description;
+    final int[] highlightRanges;
+
+    ObjectResult(String name, ObjectDescription description, int[] highlightRanges)
+    {
+      this.name = name;
+      this.description = description;
+      this.highlightRanges = highlightRanges;
+    }
+  }
+
+  private interface Path
+  {
+    // Returns something derived from the results, so JIT can't drop the work.
+    int run(int count);
+  }
+
+  private static final Path OBJECTS = new Path()
+  {
+    @Override
+    public int run(int count)
+    {
+      final Object[] results = nativeBuildObjects(count);
+      return results.length;
+    }
+  };
+
+  private static int decode(PackedSearchResults results, int rows)
+  {
+    int res = 0;
+    for (int i = 0; i < rows; i++)
+    {
+      res += results.getString(i, PackedSearchResults.NAME).length();
+      res += results.getString(i, PackedSearchResults.FEATURE_TYPE).length();
+      res += results.getString(i, PackedSearchResults.REGION).length();
+      res += results.getString(i, PackedSearchResults.DISTANCE).length();
+      res += results.getString(i, PackedSearchResults.CUISINE).length();
+      res += results.getInt(i, PackedSearchResults.STARS);
+      res += results.getHighlightRanges(i).length;
+    }
+    return res;
+  }
+
+  private static final Path PACKED_VISIBLE = new Path()
+  {
+    @Override
+    public int run(int count)
+    {
+      final PackedSearchResults results = new PackedSearchResults(nativeBuildPacked(count));
+      return decode(results, Math.min(VISIBLE_ROWS, results.getCount()));
+    }
+  };
+
+  private static final Path PACKED_ALL = new Path()
+  {
+    @Override
+    public int run(int count)
+    {
+      final PackedSearchResults results = new PackedSearchResults(nativeBuildPacked(count));
+      return decode(results, results.getCount());
+    }
+  };
+
+  private static String measure(String name, Path path, int count)
+  {
+    // Warm up.
+    long sink = 0;
+    for (int i = 0; i < 200; i++)
+      sink += path.run(count);
+
+    int batches = 0;
+    final long start = System.nanoTime();
+    long elapsed;
+    do
+    {
+      sink += path.run(count);
+      batches++;
+      elapsed = System.nanoTime() - start;
+    } while (elapsed < RUN_NANOS);
+
+    return String.format(Locale.US, "%4d results  %-22s %8.1f us per batch  (%d)",
+                         count, name, elapsed / 1000.0 / batches, sink % 10);
+  }
+
+  public static void main(String[] args)
+  {
+    System.loadLibrary("jni_transfer_benchmark");
+    nativeInit();
+
+    final int[] counts = {30, 100, 500};
+    for (int count : counts)
+    {
+      System.out.println(measure("object per result", OBJECTS, count));
+      System.out.println(measure("packed, first screen", PACKED_VISIBLE, count));
+      System.out.println(measure("packed, all decoded", PACKED_ALL, count));
+    }
+  }
+
+  private static native void nativeInit();
+
+  private static native Object[] nativeBuildObjects(int count);
+
+  private static native byte[] nativeBuildPacked(int count);
+}
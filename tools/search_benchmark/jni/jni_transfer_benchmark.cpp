@@ -0,0 +1,123 @@
+// Native part of JniTransferBenchmark: builds the same fake search results either as Java objects
+// (as SearchEngine.cpp did before) or packed with android::SearchResultsPacker.
+
+#include <jni.h>
+
+#include "android/jni/com/mapswithme/maps/SearchResultsPacker.hpp"
+
+#include "std/string.hpp"
+#include "std/vector.hpp"
+
+namespace
+{
+jclass g_resultClass;
+jmethodID g_resultConstructor;
+jclass g_descriptionClass;
+jmethodID g_descriptionConstructor;
+
+struct FakeResult
+{
+  string m_name;
+  string m_type = "Restaurant";
+  string m_region = "Moscow, Russia";
+  string m_distance;
+  string m_cuisine = "italian";
+  int m_stars = 0;
+  bool m_closed = false;
+};
+
+FakeResult MakeResult(int i)
+{
+  FakeResult res;
+  res.m_name = "Restaurant number " + std::to_string(i);
+  res.m_distance = std::to_string(i % 10) + ".5 km";
+  res.m_stars = i % 6;
+  res.m_closed = (i % 3 == 0);
+  return res;
+}
+
+jobject ToJavaResult(JNIEnv * env, FakeResult const & result)
+{
+  jintArray ranges = env->NewIntArray(2);
+  jint * rawArr = env->GetIntArrayElements(ranges, nullptr);
+  rawArr[0] = 0;
+  rawArr[1] = 5;
+  env->ReleaseIntArrayElements(ranges, rawArr, 0);
+
+  jstring featureType = env->NewStringUTF(result.m_type.c_str());
+  jstring region = env->NewStringUTF(result.m_region.c_str());
+  jstring dist = env->NewStringUTF(result.m_distance.c_str());
+  jstring cuisine = env->NewStringUTF(result.m_cuisine.c_str());
+  jobject desc = env->NewObject(g_descriptionClass, g_descriptionConstructor, featureType, region, dist, cuisine,
+                                result.m_stars, result.m_closed);
+  env->DeleteLocalRef(featureType);
+  env->DeleteLocalRef(region);
+  env->DeleteLocalRef(dist);
+  env->DeleteLocalRef(cuisine);
+
+  jstring name = env->NewStringUTF(result.m_name.c_str());
+  jobject ret = env->NewObject(g_resultClass, g_resultConstructor, name, desc, ranges);
+  env->DeleteLocalRef(name);
+  env->DeleteLocalRef(desc);
+  env->DeleteLocalRef(ranges);
+  return ret;
+}
+}  // namespace
+
+extern "C"
+{
+JNIEXPORT void JNICALL
+Java_com_mapswithme_maps_search_JniTransferBenchmark_nativeInit(JNIEnv * env, jclass clazz)
+{
+  g_resultClass = static_cast<jclass>(env->NewGlobalRef(
+      env->FindClass("com/mapswithme/maps/search/JniTransferBenchmark$ObjectResult")));
+  g_resultConstructor = env->GetMethodID(
+      g_resultClass, "<init>",
+      "(Ljava/lang/String;Lcom/mapswithme/maps/search/JniTransferBenchmark$ObjectDescription;[I)V");
+  g_descriptionClass = static_cast<jclass>(env->NewGlobalRef(
+      env->FindClass("com/mapswithme/maps/search/JniTransferBenchmark$ObjectDescription")));
+  g_descriptionConstructor = env->GetMethodID(
+      g_descriptionClass, "<init>", "(Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;IZ)V");
+}
+
+JNIEXPORT jobjectArray JNICALL
+Java_com_mapswithme_maps_search_JniTransferBenchmark_nativeBuildObjects(JNIEnv * env, jclass clazz, jint count)
+{
+  jobjectArray const jResults = env->NewObjectArray(count, g_resultClass, 0);
+  for (int i = 0; i < count; i++)
+  {
+    jobject jRes = ToJavaResult(env, MakeResult(i));
+    env->SetObjectArrayElement(jResults, i, jRes);
+    env->DeleteLocalRef(jRes);
+  }
+  return jResults;
+}
+
+JNIEXPORT jbyteArray JNICALL
+Java_com_mapswithme_maps_search_JniTransferBenchmark_nativeBuildPacked(JNIEnv * env, jclass clazz, jint count)
+{
+  using android::SearchResultsPacker;
+
+  SearchResultsPacker packer;
+  for (int i = 0; i < count; i++)
+  {
+    FakeResult const result = MakeResult(i);
+    packer.Add(SearchResultsPacker::TYPE_RESULT);
+    packer.SetString(SearchResultsPacker::NAME, result.m_name);
+    packer.SetString(SearchResultsPacker::FEATURE_TYPE, result.m_type);
+    packer.SetString(SearchResultsPacker::REGION, result.m_region);
+    packer.SetString(SearchResultsPacker::DISTANCE, result.m_distance);
+    packer.SetString(SearchResultsPacker::CUISINE, result.m_cuisine);
+    packer.Set(SearchResultsPacker::STARS, result.m_stars);
+    packer.Set(SearchResultsPacker::CLOSED, result.m_closed ? 1 : 0);
+    packer.AddRange(0, 5);
+  }
+
+  vector<uint8_t> data;
+  packer.Serialize(data);
+
+  jbyteArray const jResults = env->NewByteArray(data.size());
+  env->SetByteArrayRegion(jResults, 0, data.size(), reinterpret_cast<jbyte const *>(data.data()));
+  return jResults;
+}
+}  // extern "C"
@@ -408,10 +408,13 @@ if [ "$MODE" == "resources" ]; then
     for file in "$TARGET"/World*.mwm "$TARGET"/*.ttf; do
       if [[ "$file" != *roboto* ]]; then
         if [ "$UNAME" == "Darwin" ]; then
-          stat -f "%N %z" "$file" | sed 's#^.*/##' >> "$EXT_RES"
+          SIZE="$(stat -f "%z" "$file")"
         else
-          stat -c "%n %s" "$file" | sed 's#^.*/##' >> "$EXT_RES"
+          SIZE="$(stat -c "%s" "$file")"
         fi
+        # CRC32 of the file is stored in the gzip trailer (little endian)
+        CRC32="$(gzip -c "$file" | tail -c 8 | od -An -tu4 -N4 | tr -d ' ')"
+        echo "$(basename "$file") $SIZE $CRC32" >> "$EXT_RES"
       fi
     done
     chmod 0666 "$EXT_RES"